@@ -0,0 +1,73 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import com.javydreamercsw.testng.ci.StringBufferStreamConsumer;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.apache.maven.shared.utils.cli.CommandLineUtils;
+import org.apache.maven.shared.utils.cli.Commandline;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Change detection against the target branch, the way the mojo runs it through the git CLI. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChangeDetectionBenchmark {
+  @Param({"5000"})
+  private int classCount;
+
+  @Param({"10", "100", "1000"})
+  private int changedFiles;
+
+  private Path root;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, GitAPIException {
+    root = Files.createTempDirectory("testng-ci-git");
+    new SyntheticProject(classCount, 4, 4).writeRepository(root, changedFiles);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ScanBenchmark.delete(root);
+  }
+
+  @Benchmark
+  public String gitDiff() throws CommandLineException {
+    Commandline cmd = new Commandline();
+    cmd.setExecutable("git");
+    cmd.addArguments(new String[] {"diff", "--name-only", SyntheticProject.TARGET_BRANCH});
+    cmd.setWorkingDirectory(root.toFile());
+    StringBufferStreamConsumer out = new StringBufferStreamConsumer();
+    StringBufferStreamConsumer err = new StringBufferStreamConsumer();
+    if (CommandLineUtils.executeCommandLine(cmd, out, err) != 0) {
+      throw new IllegalStateException(err.getOutput());
+    }
+    return out.getOutput();
+  }
+}
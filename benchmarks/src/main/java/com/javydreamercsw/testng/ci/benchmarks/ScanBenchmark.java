@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import com.javydreamercsw.testng.ci.BytecodeIndex;
+import com.javydreamercsw.testng.ci.TypeGraph;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Hierarchy and dependency scanning of a test output directory: reading the bytecode versus loading
+ * every class, which is what the hierarchy scan of the mojo does.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ScanBenchmark {
+  @Param({"1000", "10000"})
+  private int classCount;
+
+  @Param({"4"})
+  private int depth;
+
+  @Param({"4"})
+  private int fanOut;
+
+  private Path root;
+  private Path classes;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    root = Files.createTempDirectory("testng-ci-scan");
+    classes = root.resolve("test-classes");
+    new SyntheticProject(classCount, depth, fanOut).writeClasses(classes);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    delete(root);
+  }
+
+  @Benchmark
+  public BytecodeIndex bytecodeScan() throws IOException {
+    return BytecodeIndex.scan(classes);
+  }
+
+  @Benchmark
+  public TypeGraph classLoadingScan() throws Exception {
+    TypeGraph.Builder builder = TypeGraph.builder();
+    List<String> classNames;
+    try (Stream<Path> files = Files.walk(classes)) {
+      classNames =
+          files
+              .filter(f -> f.toString().endsWith(".class"))
+              .map(f -> classes.relativize(f).toString())
+              .map(f -> f.substring(0, f.lastIndexOf('.')).replace(File.separatorChar, '.'))
+              .collect(Collectors.toList());
+    }
+    try (URLClassLoader loader =
+        new URLClassLoader(new URL[] {classes.toUri().toURL()}, getClass().getClassLoader())) {
+      for (String className : classNames) {
+        Class<?> c = loader.loadClass(className);
+        builder.addEdge(c.getName(), c.getSuperclass().getName());
+      }
+    }
+    return builder.build();
+  }
+
+  static void delete(Path root) throws IOException {
+    if (root != null && Files.exists(root)) {
+      try (Stream<Path> files = Files.walk(root)) {
+        for (Path f : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+          Files.delete(f);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import com.javydreamercsw.testng.ci.TypeGraph;
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Selection set computation: impacted closure of the changed types over the type graph. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SelectionBenchmark {
+  @Param({"10000", "100000"})
+  private int classCount;
+
+  @Param({"4"})
+  private int depth;
+
+  @Param({"8"})
+  private int fanOut;
+
+  @Param({"1", "100", "5000"})
+  private int changedTypes;
+
+  private SyntheticProject project;
+  private TypeGraph graph;
+  private BitSet seeds;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    project = new SyntheticProject(classCount, depth, fanOut);
+    graph = project.typeGraph();
+    seeds = new BitSet(graph.size());
+    int step = Math.max(1, classCount / changedTypes);
+    for (int i = 0; i < classCount && seeds.cardinality() < changedTypes; i += step) {
+      seeds.set(graph.idOf(project.className(i)));
+    }
+  }
+
+  @Benchmark
+  public TypeGraph buildGraph() {
+    return project.typeGraph();
+  }
+
+  @Benchmark
+  public BitSet descendants() {
+    return graph.descendants(seeds);
+  }
+}
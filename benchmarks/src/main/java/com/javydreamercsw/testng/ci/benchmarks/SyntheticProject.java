@@ -0,0 +1,202 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import com.javydreamercsw.testng.ci.TypeGraph;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Generates synthetic test projects: test classes laid out as a forest of complete trees with a
+ * given depth and fan-out, their sources, their compiled bytecode and a git history where a number
+ * of those sources changed in a branch.
+ *
+ * <p>In every tree the class at position {@code p > 0} extends the one at {@code (p - 1) / fanOut},
+ * so the hierarchy can be computed without storing it.
+ */
+public class SyntheticProject {
+  public static final String PACKAGE = "synthetic";
+  public static final String TARGET_BRANCH = "master";
+  public static final String FEATURE_BRANCH = "feature";
+  private static final int CLASSES_PER_PACKAGE = 500;
+  private static final int RESOURCES = 100;
+  private static final PersonIdent IDENTITY =
+      new PersonIdent("Benchmark", "benchmark@example.org");
+
+  private final int classCount;
+  private final int depth;
+  private final int fanOut;
+  private final int treeSize;
+
+  /**
+   * @param classCount number of test classes.
+   * @param depth depth of each hierarchy tree.
+   * @param fanOut children per class.
+   */
+  public SyntheticProject(int classCount, int depth, int fanOut) {
+    this.classCount = classCount;
+    this.depth = depth;
+    this.fanOut = fanOut;
+    int size = 0;
+    for (int level = 0, width = 1; level < depth; level++, width *= fanOut) {
+      size += width;
+    }
+    this.treeSize = Math.max(1, size);
+  }
+
+  public int getClassCount() {
+    return classCount;
+  }
+
+  /**
+   * @param i class index.
+   * @return index of the super class or -1 if it extends {@link Object}.
+   */
+  public int parentOf(int i) {
+    int position = i % treeSize;
+    return position == 0 ? -1 : i - position + (position - 1) / fanOut;
+  }
+
+  /**
+   * @param i class index.
+   * @return binary name of the class.
+   */
+  public String className(int i) {
+    return PACKAGE + ".p" + (i / CLASSES_PER_PACKAGE) + ".C" + i + "Test";
+  }
+
+  /**
+   * @param i class index.
+   * @return source path of the class relative to the project root.
+   */
+  public String sourcePath(int i) {
+    return "src/test/java/" + className(i).replace('.', '/') + ".java";
+  }
+
+  /**
+   * @param i class index.
+   * @return classpath resource referenced by the class.
+   */
+  public String resourcePath(int i) {
+    return PACKAGE + "/resource-" + (i % RESOURCES) + ".txt";
+  }
+
+  /**
+   * @return the hierarchy of the project as a {@link TypeGraph}.
+   */
+  public TypeGraph typeGraph() {
+    TypeGraph.Builder builder = TypeGraph.builder();
+    for (int i = 0; i < classCount; i++) {
+      int parent = parentOf(i);
+      builder.addEdge(className(i), parent < 0 ? "java.lang.Object" : className(parent));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Writes the compiled test classes.
+   *
+   * @param outputDirectory test class output directory.
+   * @throws IOException if a class can't be written.
+   */
+  public void writeClasses(Path outputDirectory) throws IOException {
+    for (int i = 0; i < classCount; i++) {
+      Path classFile = outputDirectory.resolve(className(i).replace('.', '/') + ".class");
+      Files.createDirectories(classFile.getParent());
+      Files.write(classFile, classBytes(i));
+    }
+  }
+
+  private byte[] classBytes(int i) {
+    String name = className(i).replace('.', '/');
+    int parent = parentOf(i);
+    String superName = parent < 0 ? "java/lang/Object" : className(parent).replace('.', '/');
+    ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+    writer.visit(Opcodes.V11, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+    MethodVisitor init = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+    init.visitCode();
+    init.visitVarInsn(Opcodes.ALOAD, 0);
+    init.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+    init.visitInsn(Opcodes.RETURN);
+    init.visitMaxs(0, 0);
+    init.visitEnd();
+    MethodVisitor test =
+        writer.visitMethod(Opcodes.ACC_PUBLIC, "resource", "()Ljava/lang/String;", null, null);
+    test.visitCode();
+    test.visitLdcInsn("/" + resourcePath(i));
+    test.visitInsn(Opcodes.ARETURN);
+    test.visitMaxs(0, 0);
+    test.visitEnd();
+    writer.visitEnd();
+    return writer.toByteArray();
+  }
+
+  /**
+   * Writes the test sources and creates a git repository with them committed in {@link
+   * #TARGET_BRANCH}, plus a {@link #FEATURE_BRANCH} (checked out) where {@code changedFiles}
+   * sources, spread evenly over the project, were modified.
+   *
+   * @param root project root.
+   * @param changedFiles number of sources changed in the feature branch.
+   * @return the paths of the changed sources.
+   * @throws IOException if the files can't be written.
+   * @throws GitAPIException if git fails.
+   */
+  public List<String> writeRepository(Path root, int changedFiles)
+      throws IOException, GitAPIException {
+    for (int i = 0; i < classCount; i++) {
+      Path source = root.resolve(sourcePath(i));
+      Files.createDirectories(source.getParent());
+      int parent = parentOf(i);
+      String simpleName = className(i).substring(className(i).lastIndexOf('.') + 1);
+      Files.write(
+          source,
+          String.format(
+                  "package %s;%n%npublic class %s%s {}%n",
+                  className(i).substring(0, className(i).lastIndexOf('.')),
+                  simpleName,
+                  parent < 0 ? "" : " extends " + className(parent))
+              .getBytes(StandardCharsets.UTF_8));
+    }
+    List<String> changed = new ArrayList<>();
+    try (Git git = Git.init().setDirectory(root.toFile()).setInitialBranch(TARGET_BRANCH).call()) {
+      git.add().addFilepattern(".").call();
+      git.commit().setAuthor(IDENTITY).setCommitter(IDENTITY).setMessage("Initial").call();
+      git.checkout().setCreateBranch(true).setName(FEATURE_BRANCH).call();
+      int step = Math.max(1, classCount / Math.max(1, changedFiles));
+      for (int i = 0; i < classCount && changed.size() < changedFiles; i += step) {
+        try (BufferedWriter writer =
+            Files.newBufferedWriter(
+                root.resolve(sourcePath(i)), StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+          writer.write("// Changed");
+          writer.newLine();
+        }
+        changed.add(sourcePath(i));
+      }
+      git.commit()
+          .setAll(true)
+          .setAuthor(IDENTITY)
+          .setCommitter(IDENTITY)
+          .setMessage("Change")
+          .call();
+    }
+    return changed;
+  }
+}
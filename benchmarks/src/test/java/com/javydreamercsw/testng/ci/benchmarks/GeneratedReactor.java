@@ -0,0 +1,227 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Generates a multi-module Maven reactor with TestNG tests, publishes it to a local bare git
+ * remote with a {@link SyntheticProject#FEATURE_BRANCH} changing some of the tests, and clones
+ * working copies of that branch.
+ *
+ * <p>Within a module test {@code j > 0} extends test {@code (j - 1) / fanOut}, so changes in the
+ * first classes of a module impact more tests than changes in the last ones.
+ */
+public class GeneratedReactor {
+  private static final PersonIdent IDENTITY =
+      new PersonIdent("Benchmark", "benchmark@example.org");
+  private static final String TESTNG_VERSION = "7.7.1";
+  private static final String SUREFIRE_VERSION = "3.0.0";
+
+  private final int modules;
+  private final int testsPerModule;
+  private final int fanOut;
+
+  /**
+   * @param modules number of modules.
+   * @param testsPerModule test classes in each module.
+   * @param fanOut subclasses per test class.
+   */
+  public GeneratedReactor(int modules, int testsPerModule, int fanOut) {
+    this.modules = modules;
+    this.testsPerModule = testsPerModule;
+    this.fanOut = fanOut;
+  }
+
+  /**
+   * @return total number of test classes.
+   */
+  public int getTestCount() {
+    return modules * testsPerModule;
+  }
+
+  private static String moduleName(int module) {
+    return "module-" + module;
+  }
+
+  private String testPath(int module, int test) {
+    return moduleName(module) + "/src/test/java/perf/m" + module + "/Service" + test + "Test.java";
+  }
+
+  /**
+   * Creates the bare remote holding the reactor.
+   *
+   * @param remote directory of the bare repository.
+   * @param work scratch directory used to build the history.
+   * @param changedTests number of tests, spread over all modules, changed in the feature branch.
+   * @return paths of the changed tests.
+   * @throws IOException if the files can't be written.
+   * @throws GitAPIException if git fails.
+   */
+  public List<String> publish(Path remote, Path work, int changedTests)
+      throws IOException, GitAPIException {
+    writeSources(work);
+    List<String> changed = new ArrayList<>();
+    Git.init().setBare(true).setDirectory(remote.toFile()).call().close();
+    try (Git git =
+        Git.init()
+            .setDirectory(work.toFile())
+            .setInitialBranch(SyntheticProject.TARGET_BRANCH)
+            .call()) {
+      git.add().addFilepattern(".").call();
+      git.commit().setAuthor(IDENTITY).setCommitter(IDENTITY).setMessage("Initial").call();
+      git.checkout().setCreateBranch(true).setName(SyntheticProject.FEATURE_BRANCH).call();
+      int step = Math.max(1, getTestCount() / Math.max(1, changedTests));
+      for (int i = 0; i < getTestCount() && changed.size() < changedTests; i += step) {
+        String path = testPath(i % modules, i / modules);
+        try (BufferedWriter writer =
+            Files.newBufferedWriter(
+                work.resolve(path), StandardCharsets.UTF_8, StandardOpenOption.APPEND)) {
+          writer.write("// Changed");
+          writer.newLine();
+        }
+        changed.add(path);
+      }
+      git.commit()
+          .setAll(true)
+          .setAuthor(IDENTITY)
+          .setCommitter(IDENTITY)
+          .setMessage("Change")
+          .call();
+      git.push()
+          .setRemote(remote.toUri().toString())
+          .add(SyntheticProject.TARGET_BRANCH)
+          .add(SyntheticProject.FEATURE_BRANCH)
+          .call();
+    }
+    return changed;
+  }
+
+  /**
+   * Clones the remote with the target branch available locally and the feature branch checked
+   * out, as a CI runner would.
+   *
+   * @param remote bare repository created by {@link #publish(Path, Path, int)}.
+   * @param directory destination of the working copy.
+   * @throws GitAPIException if git fails.
+   */
+  public static void checkout(Path remote, Path directory) throws GitAPIException {
+    try (Git git =
+        Git.cloneRepository()
+            .setURI(remote.toUri().toString())
+            .setDirectory(directory.toFile())
+            .setBranch(SyntheticProject.TARGET_BRANCH)
+            .call()) {
+      git.checkout()
+          .setCreateBranch(true)
+          .setName(SyntheticProject.FEATURE_BRANCH)
+          .setStartPoint("origin/" + SyntheticProject.FEATURE_BRANCH)
+          .call();
+    }
+  }
+
+  private void writeSources(Path root) throws IOException {
+    StringBuilder moduleList = new StringBuilder();
+    for (int module = 0; module < modules; module++) {
+      moduleList.append(String.format("    <module>%s</module>%n", moduleName(module)));
+    }
+    write(
+        root.resolve("pom.xml"),
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+            + "  <modelVersion>4.0.0</modelVersion>\n"
+            + "  <groupId>perf</groupId>\n"
+            + "  <artifactId>perf-root</artifactId>\n"
+            + "  <version>1.0.0-SNAPSHOT</version>\n"
+            + "  <packaging>pom</packaging>\n"
+            + "  <modules>\n"
+            + moduleList
+            + "  </modules>\n"
+            + "  <properties>\n"
+            + "    <maven.compiler.source>11</maven.compiler.source>\n"
+            + "    <maven.compiler.target>11</maven.compiler.target>\n"
+            + "    <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n"
+            + "  </properties>\n"
+            + "  <dependencies>\n"
+            + "    <dependency>\n"
+            + "      <groupId>org.testng</groupId>\n"
+            + "      <artifactId>testng</artifactId>\n"
+            + "      <version>"
+            + TESTNG_VERSION
+            + "</version>\n"
+            + "      <scope>test</scope>\n"
+            + "    </dependency>\n"
+            + "  </dependencies>\n"
+            + "  <build>\n"
+            + "    <plugins>\n"
+            + "      <plugin>\n"
+            + "        <groupId>org.apache.maven.plugins</groupId>\n"
+            + "        <artifactId>maven-surefire-plugin</artifactId>\n"
+            + "        <version>"
+            + SUREFIRE_VERSION
+            + "</version>\n"
+            + "      </plugin>\n"
+            + "    </plugins>\n"
+            + "  </build>\n"
+            + "</project>\n");
+    write(root.resolve(".gitignore"), "target/\n");
+    for (int module = 0; module < modules; module++) {
+      Path moduleDir = root.resolve(moduleName(module));
+      write(
+          moduleDir.resolve("pom.xml"),
+          "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+              + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+              + "  <modelVersion>4.0.0</modelVersion>\n"
+              + "  <parent>\n"
+              + "    <groupId>perf</groupId>\n"
+              + "    <artifactId>perf-root</artifactId>\n"
+              + "    <version>1.0.0-SNAPSHOT</version>\n"
+              + "  </parent>\n"
+              + "  <artifactId>"
+              + moduleName(module)
+              + "</artifactId>\n"
+              + "</project>\n");
+      String pkg = "perf.m" + module;
+      for (int test = 0; test < testsPerModule; test++) {
+        write(
+            moduleDir.resolve("src/main/java/perf/m" + module + "/Service" + test + ".java"),
+            String.format(
+                "package %s;%n%npublic class Service%d {%n"
+                    + "  public int compute(int value) {%n    return value + %d;%n  }%n}%n",
+                pkg, test, test));
+        String parent = test == 0 ? "" : " extends Service" + ((test - 1) / fanOut) + "Test";
+        write(
+            root.resolve(testPath(module, test)),
+            String.format(
+                "package %s;%n%nimport org.testng.Assert;%nimport org.testng.annotations.Test;%n%n"
+                    + "public class Service%dTest%s {%n  @Test%n  public void compute%d() {%n"
+                    + "    Assert.assertEquals(new Service%d().compute(1), %d);%n  }%n}%n",
+                pkg, test, parent, test, test, test + 1));
+      }
+    }
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    File parent = file.getParent().toFile();
+    if (!parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("Unable to create " + parent);
+    }
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.Data;
+
+/**
+ * Measurements of the end to end scenarios, keyed by scenario name. The stored baseline is the
+ * output of a previous run on the reference runner; numbers are only comparable on the same kind
+ * of machine.
+ */
+@Data
+public class PerformanceBaseline {
+  private Map<String, Measurement> scenarios = new TreeMap<>();
+
+  /** What a scenario measured. */
+  @Data
+  public static class Measurement {
+    /** Wall time of {@code test-changes}. */
+    private long wallMillis;
+    /** Wall time of a plain {@code mvn test} on the same repository. */
+    private long plainTestWallMillis;
+    /** Peak resident set size of the {@code test-changes} process tree, -1 if unknown. */
+    private long peakRssBytes = -1;
+    /** Wall time of {@code test-changes} without changes, given the target branch. */
+    private long startupMillis;
+    /** Wall time of {@code test-changes} without changes, looking the target up on GitLab. */
+    private long gitLabStartupMillis;
+
+    private int selectionSize;
+
+    /**
+     * @return wall time of {@code test-changes} relative to the plain test run.
+     */
+    public double overhead() {
+      return plainTestWallMillis == 0 ? 0 : (double) wallMillis / plainTestWallMillis;
+    }
+  }
+
+  /**
+   * @param file baseline file.
+   * @return the baseline, empty if the file doesn't exist.
+   * @throws IOException if it can't be read.
+   */
+  public static PerformanceBaseline read(File file) throws IOException {
+    if (!file.isFile()) {
+      return new PerformanceBaseline();
+    }
+    return new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+        .readValue(file, PerformanceBaseline.class);
+  }
+
+  /**
+   * @param file destination.
+   * @throws IOException if it can't be written.
+   */
+  public void write(File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, this);
+  }
+
+  /**
+   * Compares a measurement against the baseline of its scenario.
+   *
+   * @param scenario scenario name.
+   * @param actual what was measured.
+   * @param budget allowed relative increase of wall time and peak RSS, i.e. 0.2 for 20%.
+   * @param record whether the run records a new baseline, a missing one isn't a violation then.
+   * @return the violations, empty if within budget.
+   */
+  public List<String> check(String scenario, Measurement actual, double budget, boolean record) {
+    List<String> violations = new ArrayList<>();
+    Measurement expected = scenarios.get(scenario);
+    if (expected == null) {
+      if (!record) {
+        violations.add(
+            String.format(
+                "%s: no baseline, run with -Dperf.record=true on the reference runner and copy"
+                    + " the results over the baseline file",
+                scenario));
+      }
+      return violations;
+    }
+    if (actual.getWallMillis() > expected.getWallMillis() * (1 + budget)) {
+      violations.add(
+          String.format(
+              Locale.ROOT,
+              "%s: wall time %d ms exceeds baseline %d ms by more than %.0f%%",
+              scenario,
+              actual.getWallMillis(),
+              expected.getWallMillis(),
+              budget * 100));
+    }
+    if (expected.getPeakRssBytes() > 0
+        && actual.getPeakRssBytes() > expected.getPeakRssBytes() * (1 + budget)) {
+      violations.add(
+          String.format(
+              Locale.ROOT,
+              "%s: peak RSS %d MiB exceeds baseline %d MiB by more than %.0f%%",
+              scenario,
+              actual.getPeakRssBytes() >> 20,
+              expected.getPeakRssBytes() >> 20,
+              budget * 100));
+    }
+    checkTime(
+        violations,
+        scenario,
+        "startup",
+        actual.getStartupMillis(),
+        expected.getStartupMillis(),
+        budget);
+    checkTime(
+        violations,
+        scenario,
+        "GitLab startup",
+        actual.getGitLabStartupMillis(),
+        expected.getGitLabStartupMillis(),
+        budget);
+    if (actual.getSelectionSize() > expected.getSelectionSize()) {
+      violations.add(
+          String.format(
+              "%s: %d tests selected, baseline selects %d",
+              scenario, actual.getSelectionSize(), expected.getSelectionSize()));
+    }
+    return violations;
+  }
+
+  /** Baselines recorded before startup was measured have no startup times. */
+  private static void checkTime(
+      List<String> violations,
+      String scenario,
+      String name,
+      long actualMillis,
+      long expectedMillis,
+      double budget) {
+    if (expectedMillis > 0 && actualMillis > expectedMillis * (1 + budget)) {
+      violations.add(
+          String.format(
+              Locale.ROOT,
+              "%s: %s time %d ms exceeds baseline %d ms by more than %.0f%%",
+              scenario,
+              name,
+              actualMillis,
+              expectedMillis,
+              budget * 100));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal GitLab REST API answering the two calls the mojo makes: the project lookup and the list
+ * of its merge requests, which holds a single one from {@code sourceBranch} to {@code
+ * targetBranch}.
+ */
+public class StubGitLabServer implements AutoCloseable {
+  public static final long PROJECT_ID = 1;
+  private static final String PROJECT_PATH = "/api/v4/projects/" + PROJECT_ID;
+
+  private final HttpServer server;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  /**
+   * Starts the server on a free local port.
+   *
+   * @param sourceBranch source branch of the merge request.
+   * @param targetBranch target branch of the merge request.
+   * @throws IOException if the server can't be started.
+   */
+  public StubGitLabServer(String sourceBranch, String targetBranch) throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    String project =
+        String.format(
+            "{\"id\":%d,\"name\":\"perf\",\"path_with_namespace\":\"perf/perf\"}", PROJECT_ID);
+    String mergeRequests =
+        String.format(
+            "[{\"id\":1,\"iid\":1,\"project_id\":%d,\"state\":\"opened\","
+                + "\"source_branch\":\"%s\",\"target_branch\":\"%s\"}]",
+            PROJECT_ID, sourceBranch, targetBranch);
+    server.createContext(
+        "/api/v4/projects",
+        exchange -> {
+          requests.incrementAndGet();
+          String path = exchange.getRequestURI().getPath();
+          if (path.equals(PROJECT_PATH)) {
+            respond(exchange, 200, project);
+          } else if (path.equals(PROJECT_PATH + "/merge_requests")) {
+            exchange.getResponseHeaders().add("X-Page", "1");
+            exchange.getResponseHeaders().add("X-Per-Page", "96");
+            exchange.getResponseHeaders().add("X-Total", "1");
+            exchange.getResponseHeaders().add("X-Total-Pages", "1");
+            respond(exchange, 200, mergeRequests);
+          } else {
+            respond(exchange, 404, "{\"message\":\"404 Not Found\"}");
+          }
+        });
+    server.start();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * @return the server URL to pass as {@code gitLabServer}.
+   */
+  public String getUrl() {
+    return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+  }
+
+  /**
+   * @return number of requests received so far.
+   */
+  public int getRequests() {
+    return requests.get();
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+}
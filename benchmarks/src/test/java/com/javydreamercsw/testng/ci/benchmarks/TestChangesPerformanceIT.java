@@ -0,0 +1,233 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.AfterClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * End to end performance gate: runs {@code test-changes} on generated multi-module repositories
+ * against a local bare git remote and a stub GitLab server, and fails when wall time, peak RSS or
+ * selection size exceed the stored baseline by more than the budget, or when a scenario has no
+ * baseline unless {@code perf.record} is set.
+ *
+ * <p>Configured through system properties (see the {@code perf} profile): {@code perf.baseline},
+ * {@code perf.budget}, {@code perf.record}, {@code perf.results}, {@code perf.maven}, {@code
+ * perf.modules}, {@code perf.testsPerModule} and {@code plugin.version}.
+ */
+@RunWith(Parameterized.class)
+public class TestChangesPerformanceIT {
+  private static final File BASELINE_FILE =
+      new File(System.getProperty("perf.baseline", "src/test/resources/perf-baseline.json"));
+  private static final File RESULTS_FILE =
+      new File(System.getProperty("perf.results", "target/perf/results.json"));
+  private static final double BUDGET = Double.parseDouble(System.getProperty("perf.budget", "0.2"));
+  /** Whether the run records a baseline, scenarios without one only fail when it doesn't. */
+  private static final boolean RECORD = Boolean.getBoolean("perf.record");
+  private static final String MAVEN = System.getProperty("perf.maven", "mvn");
+  private static final String PLUGIN =
+      "com.javydreamercsw:testng-ci-maven-plugin:"
+          + System.getProperty("plugin.version", "1.0.0-SNAPSHOT")
+          + ":test-changes";
+  private static final long TIMEOUT_MINUTES = 30;
+  private static final PerformanceBaseline RESULTS = new PerformanceBaseline();
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private final int changedTests;
+
+  public TestChangesPerformanceIT(int changedTests) {
+    this.changedTests = changedTests;
+  }
+
+  @Parameterized.Parameters(name = "{0} changed tests")
+  public static Collection<Object[]> scenarios() {
+    return Arrays.asList(new Object[][] {{1}, {10}, {100}});
+  }
+
+  @AfterClass
+  public static void writeResults() throws IOException {
+    RESULTS.write(RESULTS_FILE);
+  }
+
+  @Test
+  public void withinBudget() throws Exception {
+    int modules = Integer.getInteger("perf.modules", 4);
+    GeneratedReactor reactor =
+        new GeneratedReactor(modules, Integer.getInteger("perf.testsPerModule", 50), 3);
+    Path remote = temp.newFolder("remote.git").toPath();
+    reactor.publish(remote, temp.newFolder("history").toPath(), changedTests);
+    String scenario = String.format(Locale.ROOT, "%d-modules-%d-changed", modules, changedTests);
+
+    Path plain = temp.newFolder("plain").toPath();
+    GeneratedReactor.checkout(remote, plain);
+    Run plainRun = run(plain, scenario + "-plain", "test");
+    assertEquals("Plain mvn test failed, see " + plainRun.log, 0, plainRun.exitCode);
+
+    Path work = temp.newFolder("work").toPath();
+    GeneratedReactor.checkout(remote, work);
+    Run run;
+    try (StubGitLabServer gitLab =
+        new StubGitLabServer(SyntheticProject.FEATURE_BRANCH, SyntheticProject.TARGET_BRANCH)) {
+      run =
+          run(
+              work,
+              scenario,
+              PLUGIN,
+              "-DgitLabServer=" + gitLab.getUrl(),
+              "-DgitLabToken=perf",
+              "-DgitLabProjectId=" + StubGitLabServer.PROJECT_ID);
+      assertTrue("The merge request was never looked up", gitLab.getRequests() > 0);
+    }
+    assertEquals("test-changes failed, see " + run.log, 0, run.exitCode);
+
+    // Compared with the branch itself nothing changed, what is left is the startup cost
+    Run startup =
+        run(
+            work,
+            scenario + "-startup",
+            PLUGIN,
+            "-DtargetBranch=" + SyntheticProject.FEATURE_BRANCH);
+    assertEquals("test-changes failed, see " + startup.log, 0, startup.exitCode);
+    Run gitLabStartup;
+    try (StubGitLabServer gitLab =
+        new StubGitLabServer(SyntheticProject.FEATURE_BRANCH, SyntheticProject.FEATURE_BRANCH)) {
+      gitLabStartup =
+          run(
+              work,
+              scenario + "-gitlab-startup",
+              PLUGIN,
+              "-DgitLabServer=" + gitLab.getUrl(),
+              "-DgitLabToken=perf",
+              "-DgitLabProjectId=" + StubGitLabServer.PROJECT_ID);
+    }
+    assertEquals("test-changes failed, see " + gitLabStartup.log, 0, gitLabStartup.exitCode);
+
+    PerformanceBaseline.Measurement measurement = new PerformanceBaseline.Measurement();
+    measurement.setWallMillis(run.wallMillis);
+    measurement.setPlainTestWallMillis(plainRun.wallMillis);
+    measurement.setPeakRssBytes(run.peakRssBytes);
+    measurement.setStartupMillis(startup.wallMillis);
+    measurement.setGitLabStartupMillis(gitLabStartup.wallMillis);
+    measurement.setSelectionSize(selectionSize(work));
+    synchronized (RESULTS) {
+      RESULTS.getScenarios().put(scenario, measurement);
+    }
+    // The measurements end up in the results file, to be copied over the baseline
+    List<String> violations =
+        PerformanceBaseline.read(BASELINE_FILE).check(scenario, measurement, BUDGET, RECORD);
+    assertTrue(String.join("\n", violations), violations.isEmpty());
+  }
+
+  /** Sums the tests selected by every module of the reactor. */
+  private static int selectionSize(Path root) throws IOException {
+    List<Path> reports;
+    try (Stream<Path> files = Files.walk(root)) {
+      reports =
+          files
+              .filter(f -> f.endsWith(Paths.get("target", "testng-ci", "selection-report.json")))
+              .collect(Collectors.toList());
+    }
+    int size = 0;
+    ObjectMapper mapper = new ObjectMapper();
+    for (Path report : reports) {
+      JsonNode tests = mapper.readTree(report.toFile()).path("tests");
+      size += tests.size();
+    }
+    return size;
+  }
+
+  private static Run run(Path directory, String name, String... goals)
+      throws IOException, InterruptedException {
+    List<String> command = new ArrayList<>();
+    command.add(MAVEN);
+    command.add("-B");
+    command.addAll(Arrays.asList(goals));
+    Run run = new Run();
+    run.log = new File(RESULTS_FILE.getAbsoluteFile().getParentFile(), name + ".log");
+    Files.createDirectories(run.log.getParentFile().toPath());
+    long start = System.nanoTime();
+    Process process =
+        new ProcessBuilder(command)
+            .directory(directory.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(run.log)
+            .start();
+    long deadline = start + TimeUnit.MINUTES.toNanos(TIMEOUT_MINUTES);
+    while (!process.waitFor(20, TimeUnit.MILLISECONDS)) {
+      run.peakRssBytes = Math.max(run.peakRssBytes, rss(process.toHandle()));
+      if (System.nanoTime() > deadline) {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+        process.destroyForcibly();
+        throw new AssertionError(name + " timed out, see " + run.log);
+      }
+    }
+    run.wallMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    run.exitCode = process.exitValue();
+    return run;
+  }
+
+  /**
+   * Resident set size of a process and its descendants, read from {@code /proc}.
+   *
+   * @return the size in bytes or -1 where {@code /proc} isn't available.
+   */
+  private static long rss(ProcessHandle process) {
+    List<ProcessHandle> tree = new ArrayList<>();
+    tree.add(process);
+    process.descendants().forEach(tree::add);
+    long total = 0;
+    for (ProcessHandle handle : tree) {
+      Path status = Paths.get("/proc", Long.toString(handle.pid()), "status");
+      try {
+        for (String line : Files.readAllLines(status, StandardCharsets.UTF_8)) {
+          if (line.startsWith("VmRSS:")) {
+            // VmRSS:    123456 kB
+            total += Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+          }
+        }
+      } catch (IOException ex) {
+        if (handle == process && !Files.isDirectory(Paths.get("/proc"))) {
+          return -1;
+        }
+        // The process exited while sampling.
+      }
+    }
+    return total;
+  }
+
+  private static class Run {
+    private File log;
+    private int exitCode;
+    private long wallMillis;
+    private long peakRssBytes = -1;
+  }
+}
@@ -7,32 +7,39 @@
  */
 package com.javydreamercsw.testng.ci;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import org.apache.maven.cli.MavenCli;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.utils.Os;
 import org.apache.maven.shared.utils.StringUtils;
 import org.apache.maven.shared.utils.cli.CommandLineException;
 import org.apache.maven.shared.utils.cli.CommandLineUtils;
 import org.apache.maven.shared.utils.cli.Commandline;
-import org.codehaus.plexus.classworlds.ClassWorld;
-import org.gitlab4j.api.GitLabApi;
-import org.gitlab4j.api.GitLabApiException;
-import org.gitlab4j.api.models.MergeRequest;
-import org.gitlab4j.api.models.Project;
+import org.apache.maven.shared.utils.cli.StreamConsumer;
 
+/**
+ * Base for the goals working on the git history. Goals are thread safe: every command runs with its
+ * own {@link Commandline} and Maven is forked instead of embedded, as the embedded CLI changes
+ * system properties and the standard streams of the whole JVM.
+ */
 public abstract class AbstractGitMojo extends AbstractMojo {
-  /** Command line for Git executable. */
-  private final Commandline cmdGit = new Commandline();
-
   /**
    * The path to the Git executable. Defaults to "git".
    *
@@ -41,6 +48,14 @@ public abstract class AbstractGitMojo extends AbstractMojo {
   @Parameter(property = "gitExecutable")
   private String gitExecutable;
 
+  /**
+   * The path to the Maven executable. Defaults to the one of the running Maven installation.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "mavenExecutable")
+  private String mavenExecutable;
+
   /** Maven session. */
   @Parameter(defaultValue = "${session}", readonly = true)
   protected MavenSession mavenSession;
@@ -56,6 +71,9 @@ public abstract class AbstractGitMojo extends AbstractMojo {
   /** Success exit code. */
   public static final int SUCCESS_EXIT_CODE = 0;
 
+  /** Target branch of the merge request a GitLab pipeline runs for. */
+  private static final String MERGE_REQUEST_TARGET_VARIABLE = "CI_MERGE_REQUEST_TARGET_BRANCH_NAME";
+
   /**
    * Maven Project.
    *
@@ -64,12 +82,22 @@ public abstract class AbstractGitMojo extends AbstractMojo {
   @Parameter(defaultValue = "${project}", required = true, readonly = true)
   protected MavenProject project;
 
+  /**
+   * Branch the changes are compared with. When not set, the {@code
+   * CI_MERGE_REQUEST_TARGET_BRANCH_NAME} variable of GitLab merge request pipelines is used, and
+   * only then is the merge request of the current branch looked up on GitLab.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "targetBranch")
+  private String targetBranch;
+
   /**
    * GitLab server URL.
    *
    * @since 1.0.0
    */
-  @Parameter(property = "gitLabServer", required = true)
+  @Parameter(property = "gitLabServer")
   private String gitLabServer;
 
   /**
@@ -77,7 +105,7 @@ public abstract class AbstractGitMojo extends AbstractMojo {
    *
    * @since 1.0.0
    */
-  @Parameter(property = "gitLabToken", required = true)
+  @Parameter(property = "gitLabToken")
   private String gitLabToken;
 
   /**
@@ -85,59 +113,133 @@ public abstract class AbstractGitMojo extends AbstractMojo {
    *
    * @since 1.0.0
    */
-  @Parameter(property = "gitLabProjectId", required = true, defaultValue = "-1")
+  @Parameter(property = "gitLabProjectId", defaultValue = "-1")
   private Long gitLabProjectId;
 
-  private GitLabApi gitLabApi;
+  /**
+   * Directory where the timing and counters report of each execution is written.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "metricsDirectory", defaultValue = "${project.build.directory}/testng-ci")
+  private File metricsDirectory;
+
+  /** Created on first use, so goals not querying GitLab don't load its client. */
+  private MergeRequestProvider mergeRequestProvider;
+
+  /** Timing and counters of this execution. */
+  protected final PhaseMetrics metrics = new PhaseMetrics();
+
+  /**
+   * @return a new command line for the Git executable.
+   */
+  private Commandline gitCommand() {
+    Commandline cmd = new Commandline();
+    cmd.setExecutable(StringUtils.isBlank(gitExecutable) ? "git" : gitExecutable);
+    return cmd;
+  }
 
-  /** Initializes command line executables. */
-  private void initExecutables() {
-    if (StringUtils.isBlank(cmdGit.getExecutable())) {
-      if (StringUtils.isBlank(gitExecutable)) {
-        gitExecutable = "git";
+  /**
+   * @return a new command line for the Maven executable.
+   */
+  private Commandline mavenCommand() {
+    String executable = mavenExecutable;
+    if (StringUtils.isBlank(executable)) {
+      executable = "mvn";
+      String mavenHome = mavenSession.getSystemProperties().getProperty("maven.home");
+      if (mavenHome != null) {
+        String script = Os.isFamily(Os.FAMILY_WINDOWS) ? "mvn.cmd" : "mvn";
+        File mvn = new File(new File(mavenHome, "bin"), script);
+        if (mvn.isFile()) {
+          executable = mvn.getAbsolutePath();
+        }
       }
-      cmdGit.setExecutable(gitExecutable);
     }
+    Commandline cmd = new Commandline();
+    cmd.setExecutable(executable);
+    return cmd;
   }
 
-  protected void setGitLabApi(GitLabApi api) {
-    this.gitLabApi = api;
+  protected void setMergeRequestProvider(MergeRequestProvider provider) {
+    this.mergeRequestProvider = provider;
   }
 
-  private GitLabApi getGitLabApi() throws MojoFailureException {
-    if (gitLabApi == null) {
+  private MergeRequestProvider getMergeRequestProvider() throws MojoFailureException {
+    if (mergeRequestProvider == null) {
       if (gitLabServer == null || gitLabToken == null || gitLabProjectId < 0) {
         throw new MojoFailureException(
             "Invalid GitLab configuration. Make sure to provide gitLabServer, gitLabProjectId and gitLabToken parameters.");
       }
-      gitLabApi = new GitLabApi(gitLabServer, gitLabToken);
+      mergeRequestProvider =
+          new GitLabMergeRequestProvider(gitLabServer, gitLabToken, gitLabProjectId);
     }
-    return gitLabApi;
+    return mergeRequestProvider;
   }
 
-  protected String getTargetBranch()
-      throws GitLabApiException, MojoFailureException, CommandLineException {
+  /**
+   * @return the branch the changes are compared with: the {@code targetBranch} parameter, the
+   *     target of the merge request pipeline or the target of the merge request of the current
+   *     branch.
+   * @throws MojoFailureException if no merge request is found or it can't be looked up.
+   * @throws CommandLineException if command line execution fails.
+   */
+  protected String getTargetBranch() throws MojoFailureException, CommandLineException {
+    if (StringUtils.isNotBlank(targetBranch)) {
+      return targetBranch;
+    }
+    String pipelineTarget = getEnvironmentVariable(MERGE_REQUEST_TARGET_VARIABLE);
+    if (StringUtils.isNotBlank(pipelineTarget)) {
+      if (verbose) {
+        getLog()
+            .info(
+                String.format(
+                    "Target branch '%s' taken from %s.",
+                    pipelineTarget, MERGE_REQUEST_TARGET_VARIABLE));
+      }
+      return pipelineTarget;
+    }
     final String branch = getCurrentBranch();
     if (verbose) {
       getLog().info(String.format("Looking for merge request(s) for '%s'.", branch));
     }
-    Project p = getGitLabApi().getProjectApi().getProject(gitLabProjectId);
-    for (MergeRequest mr : getGitLabApi().getMergeRequestApi().getMergeRequests(p.getId())) {
-      if (mr.getSourceBranch().equals(branch)) {
-        return mr.getTargetBranch();
+    try (PhaseMetrics.Phase phase = metrics.start("merge-request-lookup")) {
+      String target = getMergeRequestProvider().findTargetBranch(branch);
+      if (target != null) {
+        return target;
       }
+    } catch (IOException ex) {
+      throw new MojoFailureException(ex.getMessage(), ex);
     }
     throw new MojoFailureException(
         String.format("Unable to find a merge request for this branch (%s)", branch));
   }
 
-  protected List<String> getChangesFromTargetBranch()
-      throws MojoFailureException, CommandLineException, GitLabApiException {
+  /**
+   * @param name environment variable name.
+   * @return the value of the variable, null if not set.
+   */
+  protected String getEnvironmentVariable(String name) {
+    return System.getenv(name);
+  }
+
+  protected List<FileChange> getChangesFromTargetBranch()
+      throws MojoFailureException, CommandLineException {
+    return getChangesFrom(getTargetBranch());
+  }
+
+  /**
+   * @param targetBranch branch to compare with.
+   * @return the files changed since the target branch, with renames detected.
+   * @throws MojoFailureException if git fails.
+   * @throws CommandLineException if command line execution fails.
+   */
+  protected List<FileChange> getChangesFrom(String targetBranch)
+      throws MojoFailureException, CommandLineException {
+    // git diff --name-status -M -z <target>, NUL terminated paths aren't quoted
     final CommandResult commandResult =
-        executeGitCommandExitCode("diff", "--name-only", getTargetBranch());
+        executeGitCommandExitCode("diff", "--name-status", "-M", "-z", targetBranch);
     if (commandResult.getExitCode() == SUCCESS_EXIT_CODE) {
-      String output = commandResult.getOut().trim();
-      return output.isEmpty() ? Collections.emptyList() : Arrays.asList(output.split("\n"));
+      return FileChange.parse(commandResult.getOut());
     } else {
       throw new MojoFailureException(commandResult.getError());
     }
@@ -168,6 +270,31 @@ public abstract class AbstractGitMojo extends AbstractMojo {
     }
   }
 
+  /**
+   * @return the top level directory of the working tree, which git diff paths are relative to.
+   * @throws CommandLineException If command line execution fails.
+   * @throws MojoFailureException If git fails.
+   */
+  protected Path getRepositoryRoot() throws CommandLineException, MojoFailureException {
+    // git rev-parse --show-toplevel
+    final CommandResult commandResult = executeGitCommandExitCode("rev-parse", "--show-toplevel");
+    if (commandResult.getExitCode() == SUCCESS_EXIT_CODE) {
+      return Paths.get(commandResult.getOut().trim());
+    } else {
+      throw new MojoFailureException(commandResult.getError());
+    }
+  }
+
+  protected String getHeadCommit() throws CommandLineException, MojoFailureException {
+    // git rev-parse HEAD
+    final CommandResult commandResult = executeGitCommandExitCode("rev-parse", "HEAD");
+    if (commandResult.getExitCode() == SUCCESS_EXIT_CODE) {
+      return commandResult.getOut().trim();
+    } else {
+      throw new MojoFailureException(commandResult.getError());
+    }
+  }
+
   /**
    * Executes git commands to check for uncommitted changes.
    *
@@ -209,7 +336,9 @@ public abstract class AbstractGitMojo extends AbstractMojo {
   }
 
   /**
-   * Executes Maven command without failing on non successful exit code.
+   * Executes Maven, in a forked process running in the execution root directory, without failing on
+   * non successful exit code. The forked build is configured like the current one, see {@link
+   * #mavenArguments(String...)}.
    *
    * @param args Maven command line arguments.
    * @return Command result.
@@ -218,20 +347,76 @@ public abstract class AbstractGitMojo extends AbstractMojo {
    */
   protected CommandResult executeMavenCommandExitCode(final String... args)
       throws CommandLineException, MojoFailureException {
-    MavenCli cli = new MavenCli(new ClassWorld("maven", getClassLoader(this.project)));
-    if (verbose) {
-      getLog()
-          .debug(
-              String.format(
-                  "Running command %s in %s",
-                  "mvn " + StringUtils.join(args, " "), mavenSession.getExecutionRootDirectory()));
+    List<String> arguments = mavenArguments(args);
+    // The output of the build is only relevant when verbose
+    return executeCommand(
+        mavenCommand(),
+        false,
+        null,
+        line -> {
+          if (verbose) {
+            getLog().info(line);
+          }
+        },
+        arguments.toArray(new String[0]));
+  }
+
+  /**
+   * Builds the command line of a forked Maven build resolving and testing like the current one:
+   * offline mode, POM, profiles, user properties, settings, toolchains and local repository of the
+   * current session are passed on. Properties given in the arguments take precedence.
+   *
+   * @param args Maven command line arguments.
+   * @return the arguments, goals first so they name the metrics phase.
+   */
+  protected List<String> mavenArguments(final String... args) {
+    List<String> arguments = new ArrayList<>(Arrays.asList(args));
+    arguments.add("--batch-mode");
+    if (mavenSession.isOffline()) {
+      arguments.add("--offline");
+    }
+    MavenExecutionRequest request = mavenSession.getRequest();
+    if (request.getPom() != null) {
+      arguments.add("--file");
+      arguments.add(request.getPom().getAbsolutePath());
+    }
+    List<String> profiles = new ArrayList<>(request.getActiveProfiles());
+    for (String inactive : request.getInactiveProfiles()) {
+      profiles.add("!" + inactive);
+    }
+    if (!profiles.isEmpty()) {
+      arguments.add("--activate-profiles");
+      arguments.add(String.join(",", profiles));
+    }
+    Set<String> given = new HashSet<>();
+    for (String arg : args) {
+      if (arg.startsWith("-D")) {
+        int equals = arg.indexOf('=');
+        given.add(arg.substring(2, equals < 0 ? arg.length() : equals));
+      }
+    }
+    new TreeMap<>(request.getUserProperties())
+        .forEach(
+            (key, value) -> {
+              if (!given.contains(key.toString())) {
+                arguments.add("-D" + key + "=" + value);
+              }
+            });
+    addFileArgument(arguments, "--settings", request.getUserSettingsFile());
+    addFileArgument(arguments, "--global-settings", request.getGlobalSettingsFile());
+    addFileArgument(arguments, "--toolchains", request.getUserToolchainsFile());
+    addFileArgument(arguments, "--global-toolchains", request.getGlobalToolchainsFile());
+    if (mavenSession.getLocalRepository() != null && !given.contains("maven.repo.local")) {
+      arguments.add("-Dmaven.repo.local=" + mavenSession.getLocalRepository().getBasedir());
+    }
+    return arguments;
+  }
+
+  private static void addFileArgument(List<String> arguments, String option, File file) {
+    if (file != null && file.isFile()) {
+      arguments.add(option);
+      arguments.add(file.getAbsolutePath());
     }
-    System.setProperty(
-        "maven.multiModuleProjectDirectory", mavenSession.getExecutionRootDirectory());
-    CommandPrintStream out = new CommandPrintStream(verbose);
-    CommandPrintStream err = new CommandPrintStream(verbose);
-    int result = cli.doMain(args, mavenSession.getExecutionRootDirectory(), out, err);
-    return new CommandResult(result, "", "");
   }
 
   /**
@@ -244,7 +429,7 @@ public abstract class AbstractGitMojo extends AbstractMojo {
    */
   protected CommandResult executeGitCommandExitCode(final String... args)
       throws CommandLineException, MojoFailureException {
-    return executeCommand(cmdGit, false, null, args);
+    return executeCommand(gitCommand(), false, null, args);
   }
 
   /**
@@ -262,8 +447,29 @@ public abstract class AbstractGitMojo extends AbstractMojo {
   protected CommandResult executeCommand(
       final Commandline cmd, final boolean failOnError, final String argStr, final String... args)
       throws CommandLineException, MojoFailureException {
-    // initialize executables
-    initExecutables();
+    return executeCommand(cmd, failOnError, argStr, null, args);
+  }
+
+  /**
+   * Executes command line.
+   *
+   * @param cmd Command line, used only for this execution.
+   * @param failOnError Whether to throw exception on NOT success exit code.
+   * @param argStr Command line arguments as a string.
+   * @param output Consumer of the standard output or null to buffer it in the result.
+   * @param args Command line arguments.
+   * @return {@link CommandResult} instance holding command exit code, output and error if any.
+   * @throws CommandLineException If command line execution fails.
+   * @throws MojoFailureException If <code>failOnError</code> is <code>true</code> and command exit
+   *     code is NOT equals to 0.
+   */
+  protected CommandResult executeCommand(
+      final Commandline cmd,
+      final boolean failOnError,
+      final String argStr,
+      final StreamConsumer output,
+      final String... args)
+      throws CommandLineException, MojoFailureException {
 
     if (verbose) {
       getLog()
@@ -290,10 +496,27 @@ public abstract class AbstractGitMojo extends AbstractMojo {
     final StringBufferStreamConsumer err = new StringBufferStreamConsumer(verbose);
 
     // execute
-    final int exitCode = CommandLineUtils.executeCommandLine(cmd, out, err);
+    final String executable = new File(cmd.getExecutable()).getName();
+    final long[] outBytes = new long[1];
+    final StreamConsumer outConsumer =
+        line -> {
+          outBytes[0] += line.getBytes(StandardCharsets.UTF_8).length + 1;
+          if (output == null) {
+            out.consumeLine(line);
+          } else {
+            output.consumeLine(line);
+          }
+        };
+    final int exitCode;
+    try (PhaseMetrics.Phase phase = metrics.start(phaseName(executable, args))) {
+      exitCode =
+          CommandLineUtils.executeCommandLine(
+              cmd, null, outConsumer, err, 0, null, outputCharset(cmd));
+    }
 
     String errorStr = err.getOutput();
     String outStr = out.getOutput();
+    metrics.increment(executable.replaceAll("\\W", "_") + "_output_bytes", outBytes[0]);
 
     if (failOnError && exitCode != SUCCESS_EXIT_CODE) {
       // Not all commands print errors to error stream
@@ -311,6 +534,35 @@ public abstract class AbstractGitMojo extends AbstractMojo {
     return new CommandResult(exitCode, outStr, errorStr);
   }
 
+  /** Git writes paths and messages in UTF-8, whatever the platform encoding. */
+  private Charset outputCharset(Commandline cmd) {
+    return cmd.getExecutable().equals(gitCommand().getExecutable())
+        ? StandardCharsets.UTF_8
+        : Charset.defaultCharset();
+  }
+
+  private static String phaseName(String executable, String... args) {
+    return args.length == 0 ? executable : executable + "-" + args[0];
+  }
+
+  /**
+   * Writes the timing and counters of this execution as {@code metrics.json} and {@code
+   * metrics.prom} (Prometheus text format).
+   *
+   * @param goal goal name, used as label.
+   */
+  protected void writeMetrics(String goal) {
+    Map<String, String> labels = new LinkedHashMap<>();
+    labels.put("goal", goal);
+    labels.put("project", project.getGroupId() + ":" + project.getArtifactId());
+    try {
+      metrics.writeJson(new File(metricsDirectory, "metrics.json"), labels);
+      metrics.writePrometheus(new File(metricsDirectory, "metrics.prom"), labels);
+    } catch (IOException ex) {
+      getLog().warn("Unable to write the metrics report!", ex);
+    }
+  }
+
   protected static class CommandResult {
     private final int exitCode;
     private final String out;
@@ -343,29 +595,4 @@ public abstract class AbstractGitMojo extends AbstractMojo {
       return error;
     }
   }
-
-  public class CommandPrintStream extends PrintStream {
-    public CommandPrintStream(boolean verbose) {
-      super(new CommandOutputStream(verbose));
-    }
-  }
-
-  public class CommandOutputStream extends OutputStream {
-    private final boolean verbose;
-    private final PrintStream out;
-
-    public CommandOutputStream(boolean verbose) {
-      this.verbose = verbose;
-      out = System.out;
-    }
-
-    @Override
-    public void write(int i) throws IOException {
-      if (verbose) {
-        out.write(i);
-      }
-    }
-  }
-
-  public abstract ClassLoader getClassLoader(MavenProject project);
 }
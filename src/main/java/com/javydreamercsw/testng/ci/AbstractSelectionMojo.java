@@ -0,0 +1,1218 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.DependencyResolutionResult;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectDependenciesResolver;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/** Base for the goals that select the test classes impacted by the changes in a branch. */
+public abstract class AbstractSelectionMojo extends AbstractGitMojo {
+  /** Dependency scopes of the production class path. */
+  private static final Set<String> COMPILE_SCOPES =
+      new HashSet<>(
+          Arrays.asList(Artifact.SCOPE_COMPILE, Artifact.SCOPE_PROVIDED, Artifact.SCOPE_SYSTEM));
+
+  /** maven-compiler-plugin settings the in-process compilation doesn't reproduce. */
+  private static final List<String> UNSUPPORTED_COMPILER_SETTINGS =
+      Arrays.asList(
+          "compilerArgs",
+          "compilerArgument",
+          "compilerArguments",
+          "compilerId",
+          "annotationProcessorPaths",
+          "annotationProcessors",
+          "proc",
+          "fork",
+          "testRelease",
+          "testSource",
+          "testTarget",
+          "testCompilerArgument",
+          "testCompilerArguments");
+
+  /** Result of the last selection, never modified once published. */
+  private volatile List<Class<?>> classesToTest = Collections.emptyList();
+
+  /**
+   * Whether to also select the tests that executed changed production classes according to the
+   * coverage index recorded by the {@code record-coverage} goal.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "useCoverageIndex", defaultValue = "false")
+  private boolean useCoverageIndex;
+
+  /**
+   * Coverage index recorded by the {@code record-coverage} goal.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "coverageIndexFile",
+      defaultValue = "${project.build.directory}/testng-ci/coverage.idx")
+  private File coverageIndexFile;
+
+  /**
+   * Rules mapping changed files to the test classes to run when they change, for dependencies not
+   * visible in the test bytecode.
+   *
+   * @since 1.0.0
+   */
+  @Parameter private List<ResourceRule> resourceRules = new ArrayList<>();
+
+  /**
+   * Where to write the report explaining why each test class was selected.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "selectionReportFile",
+      defaultValue = "${project.build.directory}/testng-ci/selection-report.json")
+  private File selectionReportFile;
+
+  /**
+   * Surefire reports of previous runs, used to estimate durations.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(defaultValue = "${project.build.directory}/surefire-reports")
+  private File reportsDirectory;
+
+  /**
+   * Snapshot of the test class index written after every selection, resolved for each module. The
+   * snapshot of the previous run finds the classes which depended on deleted classes.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "indexSnapshotFile",
+      defaultValue = "${project.build.directory}/testng-ci/index-snapshot.bin")
+  private File indexSnapshotFile;
+
+  /**
+   * Whether the JVMs the plugin forks to run tests share an AppCDS archive of the classes of their
+   * class path, to start faster. The first JVM of a class path dumps the archive when it exits.
+   * Needs Java 13.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "classDataSharing", defaultValue = "true")
+  private boolean classDataSharing = true;
+
+  /**
+   * Directory of the AppCDS archives, shared by every project as archives are keyed by class path.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "cdsDirectory", defaultValue = "${user.home}/.testng-ci/cds")
+  private File cdsDirectory;
+
+  /**
+   * Whether to compile the changed Java sources, and those of the classes depending on them, in
+   * process instead of building the project with Maven before selecting tests. Maven still builds
+   * the project when the result can't be trusted: for changes other than Java sources, for modules
+   * depending on other reactor modules, for production changes other modules depend on, for changes
+   * to the API of a class, for compiler configurations which can't be reproduced or when the
+   * compilation fails. Off by default, as the project isn't installed then.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "incrementalCompile", defaultValue = "false")
+  private boolean incrementalCompile;
+
+  /**
+   * Whether to rank the selected test classes by the history of the repository and defer the
+   * unlikely ones to a later run, e.g. a nightly one, listed in {@code deferredTestsFile}. A class
+   * scores by how often its source changed together with the changed files, mined from the git
+   * history of the target branch, and by how often it failed in the surefire reports of previous
+   * runs. Full runs, classes whose source changed, classes without history and classes the
+   * remaining ones require are never deferred.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "predictiveSelection", defaultValue = "false")
+  private boolean predictiveSelection;
+
+  /**
+   * Directory of what {@code predictiveSelection} keeps across builds, out of the build directory
+   * for {@code mvn clean} to keep it, with a sub-directory per repository named after its {@code
+   * origin} remote, which fresh checkouts of the repository share.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "predictiveDirectory", defaultValue = "${user.home}/.testng-ci/predictive")
+  private File predictiveDirectory;
+
+  /**
+   * Model of the repository history used by {@code predictiveSelection}, mined incrementally. Keep
+   * it, e.g. in the CI cache, for later runs to only mine the new commits. Defaults to {@code
+   * predictive-model.bin} in the repository directory of {@code predictiveDirectory}.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "predictiveModelFile")
+  private File predictiveModelFile;
+
+  /**
+   * Score, between 0 and 1, below which {@code predictiveSelection} defers a test class.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "predictiveThreshold", defaultValue = "0.1")
+  private double predictiveThreshold = 0.1;
+
+  /**
+   * Most commits mined at once, the newest first, bounding the first mining of a long history.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "predictiveMaxCommits", defaultValue = "5000")
+  private int predictiveMaxCommits = 5000;
+
+  /**
+   * Includes file listing the test classes deferred by {@code predictiveSelection}, for the run
+   * catching up with them. Defaults to {@code deferred-tests.txt} in the repository directory of
+   * {@code predictiveDirectory}.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "deferredTestsFile")
+  private File deferredTestsFile;
+
+  /**
+   * Resolves the dependencies of the modules, which aggregator goals running before the module
+   * lifecycles don't get from Maven.
+   */
+  @Component private ProjectDependenciesResolver dependenciesResolver;
+
+  /** Dependencies resolved by this execution, per module. */
+  private final Map<MavenProject, List<Dependency>> resolvedDependencies =
+      new ConcurrentHashMap<>();
+
+  /**
+   * @param jars class path entries of the worker JVMs.
+   * @return the AppCDS archive of the worker class path, null if disabled or not supported.
+   */
+  protected CdsArchive getCdsArchive(List<String> jars) {
+    if (!classDataSharing || !CdsArchive.isSupported()) {
+      return null;
+    }
+    try {
+      return CdsArchive.forClasspath(cdsDirectory, TestWorker.classpath(jars));
+    } catch (IOException ex) {
+      getLog().warn("Unable to locate the worker class path, not sharing class data.", ex);
+      return null;
+    }
+  }
+
+  /**
+   * Publishes the archive dumped by an exited worker JVM, if any.
+   *
+   * @param archive AppCDS archive, may be null.
+   */
+  protected void publishCdsArchive(CdsArchive archive) {
+    if (archive == null) {
+      return;
+    }
+    try {
+      if (archive.publish()) {
+        metrics.increment("cds_archives_dumped", 1);
+        if (verbose) {
+          getLog().info(String.format("AppCDS archive '%s' written.", archive.getArchive()));
+        }
+      }
+    } catch (IOException ex) {
+      getLog()
+          .warn(String.format("Unable to write AppCDS archive '%s'!", archive.getArchive()), ex);
+    }
+  }
+
+  /**
+   * @return whether changed sources are compiled in process.
+   */
+  protected boolean isIncrementalCompile() {
+    return incrementalCompile;
+  }
+
+  /**
+   * @return whether the coverage index is used to select tests for production changes.
+   */
+  protected boolean isUseCoverageIndex() {
+    return useCoverageIndex;
+  }
+
+  protected List<Class<?>> getClassesToTest() {
+    return classesToTest;
+  }
+
+  /**
+   * Publishes the selected classes.
+   *
+   * @param classes selected classes.
+   */
+  protected void setClassesToTest(List<Class<?>> classes) {
+    classesToTest = Collections.unmodifiableList(new ArrayList<>(classes));
+  }
+
+  /**
+   * Compiles the reactor and selects, in parallel for every module with changes, the test classes
+   * impacted by them. Each module writes its own selection report.
+   *
+   * @param targetBranch branch the changes are compared with.
+   * @param changes changed files, relative to the repository root.
+   * @return the selection of every module with changes, in reactor order, or null if the project
+   *     couldn't be compiled.
+   * @throws CommandLineException if Maven can't be executed.
+   * @throws MojoFailureException if Maven can't be executed.
+   * @throws IOException if the test classes can't be read.
+   */
+  protected List<ModuleSelection> computeSelection(String targetBranch, List<FileChange> changes)
+      throws CommandLineException, MojoFailureException, IOException {
+    setClassesToTest(Collections.emptyList());
+    Path root = getRepositoryRoot();
+    Map<MavenProject, List<ReactorLayout.Change>> moduleChanges =
+        new ReactorLayout(mavenSession.getProjects()).assign(root, changes);
+    if (!compileIncrementally(moduleChanges)) {
+      // Compile project
+      CommandResult installCommandResult =
+          executeMavenCommandExitCode("install", "-DskipTests=true");
+      if (installCommandResult.getExitCode() != SUCCESS_EXIT_CODE) {
+        getLog().error("Error compiling project!");
+        return null;
+      }
+    }
+    String head = getHeadCommit();
+    Prediction prediction = predictiveSelection ? predict(root, targetBranch, changes) : null;
+    List<ModuleSelection> selections = new ArrayList<>();
+    int threads = Math.min(moduleChanges.size(), Runtime.getRuntime().availableProcessors());
+    try (ProjectClassLoaders loaders = newClassLoaders()) {
+      if (threads <= 1) {
+        for (Map.Entry<MavenProject, List<ReactorLayout.Change>> module :
+            moduleChanges.entrySet()) {
+          selections.add(
+              selectModule(module.getKey(), module.getValue(), head, prediction, loaders));
+        }
+      } else {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+          List<Future<ModuleSelection>> futures = new ArrayList<>();
+          for (Map.Entry<MavenProject, List<ReactorLayout.Change>> module :
+              moduleChanges.entrySet()) {
+            futures.add(
+                executor.submit(
+                    () ->
+                        selectModule(
+                            module.getKey(), module.getValue(), head, prediction, loaders)));
+          }
+          for (Future<ModuleSelection> future : futures) {
+            selections.add(getSelection(future));
+          }
+        } finally {
+          executor.shutdownNow();
+        }
+      }
+      metrics.increment("jar_classes_cached", loaders.getCachedClasses());
+    }
+    List<Class<?>> classes = new ArrayList<>();
+    for (ModuleSelection selection : selections) {
+      for (Class<?> c : selection.getClasses()) {
+        addClassToTest(
+            classes, c, String.join("; ", selection.getSelection().getTests().get(c.getName())));
+      }
+    }
+    setClassesToTest(classes);
+    metrics.increment("selection_size", classes.size());
+    if (prediction != null) {
+      List<String> deferred = new ArrayList<>();
+      for (ModuleSelection selection : selections) {
+        deferred.addAll(selection.getSelection().getDeferred().keySet());
+      }
+      writeIncludesFile(deferred, prediction.deferredTestsFile);
+      metrics.increment("tests_deferred", deferred.size());
+      if (!deferred.isEmpty()) {
+        getLog()
+            .info(
+                String.format(
+                    "Deferred %d unlikely test class(es), listed in '%s'.",
+                    deferred.size(), prediction.deferredTestsFile));
+      }
+    }
+    return selections;
+  }
+
+  /**
+   * Brings the predictive model up to date with the commits and the test reports since its last
+   * update.
+   *
+   * @param root repository root.
+   * @param targetBranch branch the changes are compared with, whose history is mined.
+   * @param changes changed files, relative to the repository root.
+   * @return the prediction for the changes, null if the model can't be updated.
+   */
+  private Prediction predict(Path root, String targetBranch, List<FileChange> changes) {
+    PredictiveModel model;
+    File modelFile = predictiveModelFile;
+    File deferredFile = deferredTestsFile;
+    try (PhaseMetrics.Phase phase = metrics.start("mine");
+        Repository repository =
+            new FileRepositoryBuilder().findGitDir(root.toFile()).setMustExist(true).build()) {
+      File directory = new File(predictiveDirectory, PredictiveModel.repositoryKey(repository));
+      if (modelFile == null) {
+        modelFile = new File(directory, "predictive-model.bin");
+      }
+      if (deferredFile == null) {
+        deferredFile = new File(directory, "deferred-tests.txt");
+      }
+      model = PredictiveModel.read(modelFile);
+      metrics.increment(
+          "commits_mined", model.mine(repository, targetBranch, predictiveMaxCommits));
+      List<TestDurationHistory> histories = new ArrayList<>();
+      for (MavenProject module : mavenSession.getProjects()) {
+        histories.add(readDurationHistory(module));
+      }
+      model.recordResults(histories);
+      model.write(modelFile);
+      root = root.toRealPath();
+    } catch (IOException ex) {
+      getLog()
+          .warn(
+              String.format(
+                  "Unable to update predictive model '%s', not deferring tests.",
+                  modelFile == null ? predictiveDirectory : modelFile),
+              ex);
+      return null;
+    }
+    Set<String> changedPaths = new HashSet<>();
+    for (FileChange change : changes) {
+      changedPaths.add(change.getPath());
+      if (change.getPreviousPath() != null) {
+        changedPaths.add(change.getPreviousPath());
+      }
+    }
+    return new Prediction(model, root, changedPaths, deferredFile);
+  }
+
+  /**
+   * Defers the selected test classes of a module scoring below the threshold, but the ones the
+   * remaining classes require.
+   *
+   * @param module reactor module.
+   * @param selection selection of the module.
+   * @param testBytecode index of the test classes.
+   * @param prediction prediction for the changes.
+   * @throws IOException if a test source can't be located.
+   */
+  private void deferUnlikely(
+      MavenProject module,
+      TestSelection selection,
+      BytecodeIndex testBytecode,
+      Prediction prediction)
+      throws IOException {
+    if (prediction.changedPaths.stream().noneMatch(prediction.model::knows)) {
+      // Nothing to predict from
+      return;
+    }
+    for (Map.Entry<String, List<String>> entry : new ArrayList<>(selection.getTests().entrySet())) {
+      String test = entry.getKey();
+      if (entry.getValue().stream().allMatch(reason -> reason.startsWith("required by "))) {
+        // Group declarers and suite configuration run with the classes needing them
+        continue;
+      }
+      BytecodeIndex.ClassInfo info = testBytecode.get(test);
+      String testPath = info == null ? null : repositoryPath(module, info, prediction.root);
+      if (testPath == null
+          || prediction.changedPaths.contains(testPath)
+          || !prediction.model.knows(testPath)) {
+        continue;
+      }
+      double score = prediction.model.score(testPath, test, prediction.changedPaths);
+      if (score < predictiveThreshold) {
+        selection.defer(
+            test,
+            String.format(
+                Locale.ROOT, "predicted score %.3f below %s", score, predictiveThreshold));
+      }
+    }
+    // Takes back the deferred classes the remaining ones require
+    testBytecode.selectRequirements(selection);
+  }
+
+  /**
+   * @return the path of the test source of a class relative to the repository root, null if not
+   *     found.
+   */
+  private static String repositoryPath(MavenProject module, BytecodeIndex.ClassInfo info, Path root)
+      throws IOException {
+    if (info.getSourcePath() == null) {
+      return null;
+    }
+    for (Object sourceRoot : module.getTestCompileSourceRoots()) {
+      Path file = Paths.get((String) sourceRoot).resolve(info.getSourcePath());
+      if (Files.isRegularFile(file)) {
+        return root.relativize(file.toRealPath())
+            .toString()
+            .replace(file.getFileSystem().getSeparator(), "/");
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Predictive model, the changes it scores test classes for and the file listing the deferred
+   * ones.
+   */
+  private static final class Prediction {
+    private final PredictiveModel model;
+    private final Path root;
+    private final Set<String> changedPaths;
+    private final File deferredTestsFile;
+
+    Prediction(PredictiveModel model, Path root, Set<String> changedPaths, File deferredTestsFile) {
+      this.model = model;
+      this.root = root;
+      this.changedPaths = changedPaths;
+      this.deferredTestsFile = deferredTestsFile;
+    }
+  }
+
+  /**
+   * Compiles the changed sources of every module in process, unless a module needs a Maven build.
+   *
+   * @param moduleChanges changes of each module.
+   * @return whether the classes of every module are up to date, false if the project must be built
+   *     with Maven.
+   * @throws IOException if the output directories can't be read or updated.
+   */
+  private boolean compileIncrementally(Map<MavenProject, List<ReactorLayout.Change>> moduleChanges)
+      throws IOException {
+    if (!incrementalCompile) {
+      return false;
+    }
+    ProjectDependencyGraph graph = mavenSession.getProjectDependencyGraph();
+    String reason = null;
+    for (Map.Entry<MavenProject, List<ReactorLayout.Change>> module : moduleChanges.entrySet()) {
+      String id = module.getKey().getArtifactId();
+      if (graph == null) {
+        // Session without a reactor, its only project has no other modules around
+        if (mavenSession.getProjects().size() > 1) {
+          reason = "the reactor dependency graph isn't known";
+          break;
+        }
+        continue;
+      }
+      // Forked builds of a module take the other modules from the local repository
+      if (graph.getUpstreamProjects(module.getKey(), true).stream()
+          .anyMatch(upstream -> !"pom".equals(upstream.getPackaging()))) {
+        reason = String.format("'%s' depends on other reactor modules", id);
+      } else if (module.getValue().stream()
+              .anyMatch(c -> c.getKind() == ReactorLayout.Kind.MAIN_SOURCE)
+          && !graph.getDownstreamProjects(module.getKey(), true).isEmpty()) {
+        reason = String.format("other reactor modules depend on '%s'", id);
+      }
+      if (reason != null) {
+        break;
+      }
+    }
+    if (reason == null) {
+      try (PhaseMetrics.Phase phase = metrics.start("compile")) {
+        for (Map.Entry<MavenProject, List<ReactorLayout.Change>> module :
+            moduleChanges.entrySet()) {
+          reason = compileInProcess(module.getKey(), module.getValue());
+          if (reason != null) {
+            break;
+          }
+        }
+      }
+    }
+    if (reason != null) {
+      getLog().info(String.format("Building the project with Maven: %s.", reason));
+      return false;
+    }
+    getLog().info("Changed sources compiled in process, not building the project with Maven.");
+    return true;
+  }
+
+  /**
+   * Compiles, in process, the changed Java sources of a module and the sources of the classes
+   * depending on them, first the production sources then the test sources.
+   *
+   * @param module reactor module, compiled before.
+   * @param changes changes assigned to the module.
+   * @return why the module must be built with Maven instead, null once its classes are up to date.
+   * @throws IOException if the output directories can't be read or updated.
+   */
+  protected String compileInProcess(MavenProject module, List<ReactorLayout.Change> changes)
+      throws IOException {
+    String id = module.getArtifactId();
+    List<String> options = compilerOptions(module);
+    if (options == null) {
+      return String.format("the compiler configuration of '%s' isn't supported", id);
+    }
+    Set<String> mainChanged = new HashSet<>();
+    Set<String> mainDeleted = new HashSet<>();
+    Set<String> testChanged = new HashSet<>();
+    Set<String> testDeleted = new HashSet<>();
+    for (ReactorLayout.Change change : changes) {
+      if (change.getKind() == ReactorLayout.Kind.MAIN_SOURCE) {
+        (change.isDeleted() ? mainDeleted : mainChanged).add(change.getSourcePath());
+      } else if (change.getKind() == ReactorLayout.Kind.TEST_SOURCE) {
+        (change.isDeleted() ? testDeleted : testChanged).add(change.getSourcePath());
+      } else {
+        return String.format("'%s' isn't a Java source", change.getPath());
+      }
+    }
+    String output = module.getBuild().getOutputDirectory();
+    List<String> mainClasspath;
+    List<String> testClasspath = new ArrayList<>();
+    testClasspath.add(output);
+    try {
+      mainClasspath = dependencyFiles(module, false);
+      testClasspath.addAll(dependencyFiles(module, true));
+    } catch (DependencyResolutionException ex) {
+      return String.format("the dependencies of '%s' can't be resolved", id);
+    }
+    IncrementalCompiler compiler = new IncrementalCompiler();
+    IncrementalCompiler.Outcome main =
+        compiler.compile(
+            new IncrementalCompiler.Unit(
+                paths(module.getCompileSourceRoots()), Paths.get(output), mainClasspath, options),
+            mainChanged,
+            mainDeleted,
+            Collections.emptySet());
+    if (!main.isTrusted()) {
+      return main.getUntrustedReason();
+    }
+    IncrementalCompiler.Outcome test =
+        compiler.compile(
+            new IncrementalCompiler.Unit(
+                paths(module.getTestCompileSourceRoots()),
+                Paths.get(module.getBuild().getTestOutputDirectory()),
+                testClasspath,
+                options),
+            testChanged,
+            testDeleted,
+            main.getChangedClasses());
+    if (!test.isTrusted()) {
+      return test.getUntrustedReason();
+    }
+    int compiled = main.getCompiled().size() + test.getCompiled().size();
+    metrics.increment("sources_compiled", compiled);
+    if (verbose) {
+      getLog().info(String.format("Compiled %d source(s) of '%s' in process.", compiled, id));
+    }
+    return null;
+  }
+
+  private static List<Path> paths(List<String> roots) {
+    List<Path> paths = new ArrayList<>();
+    for (String root : roots) {
+      paths.add(Paths.get(root));
+    }
+    return paths;
+  }
+
+  /**
+   * @param module reactor module.
+   * @return the test class path of the module: its test and main output directories, then its
+   *     dependencies, resolved if Maven didn't.
+   * @throws DependencyResolutionException if the dependencies can't be resolved.
+   */
+  protected List<String> testClasspath(MavenProject module) throws DependencyResolutionException {
+    List<String> classpath = new ArrayList<>();
+    classpath.add(module.getBuild().getTestOutputDirectory());
+    classpath.add(module.getBuild().getOutputDirectory());
+    classpath.addAll(dependencyFiles(module, true));
+    return classpath;
+  }
+
+  /**
+   * @param module reactor module.
+   * @param test whether the test dependencies are wanted, besides the compile ones.
+   * @return the dependency files of the module class path, resolving them if Maven didn't.
+   * @throws DependencyResolutionException if the dependencies can't be resolved.
+   */
+  private List<String> dependencyFiles(MavenProject module, boolean test)
+      throws DependencyResolutionException {
+    List<String> files = new ArrayList<>();
+    if (!module.getArtifacts().isEmpty() || module.getDependencies().isEmpty()) {
+      for (Object element : module.getArtifacts()) {
+        Artifact artifact = (Artifact) element;
+        if (artifact.getFile() != null
+            && artifact.getArtifactHandler().isAddedToClasspath()
+            && (test || COMPILE_SCOPES.contains(artifact.getScope()))) {
+          files.add(artifact.getFile().getPath());
+        }
+      }
+      return files;
+    }
+    List<Dependency> dependencies = resolvedDependencies.get(module);
+    if (dependencies == null) {
+      DependencyResolutionResult result =
+          dependenciesResolver.resolve(
+              new DefaultDependencyResolutionRequest(module, mavenSession.getRepositorySession()));
+      dependencies = result.getDependencies();
+      resolvedDependencies.put(module, dependencies);
+    }
+    for (Dependency dependency : dependencies) {
+      if (dependency.getArtifact().getFile() != null
+          && (test || COMPILE_SCOPES.contains(dependency.getScope()))) {
+        files.add(dependency.getArtifact().getFile().getPath());
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Translates the maven-compiler-plugin configuration of a module to compiler options.
+   *
+   * @param module reactor module.
+   * @return the options, null if the configuration can't be reproduced in process.
+   */
+  private static List<String> compilerOptions(MavenProject module) {
+    Xpp3Dom configuration = null;
+    for (Object element : module.getBuildPlugins()) {
+      Plugin plugin = (Plugin) element;
+      if (!plugin.getKey().equals("org.apache.maven.plugins:maven-compiler-plugin")) {
+        continue;
+      }
+      for (Object execution : plugin.getExecutions()) {
+        if (((PluginExecution) execution).getConfiguration() != null) {
+          return null;
+        }
+      }
+      configuration = (Xpp3Dom) plugin.getConfiguration();
+    }
+    if (configuration != null) {
+      for (String setting : UNSUPPORTED_COMPILER_SETTINGS) {
+        if (configuration.getChild(setting) != null) {
+          return null;
+        }
+      }
+    }
+    Properties properties = module.getProperties();
+    List<String> options = new ArrayList<>();
+    String release = compilerSetting(configuration, "release", properties);
+    if (release != null) {
+      options.add("--release");
+      options.add(release);
+    } else {
+      String source = compilerSetting(configuration, "source", properties);
+      if (source != null) {
+        options.add("-source");
+        options.add(source);
+      }
+      String target = compilerSetting(configuration, "target", properties);
+      if (target != null) {
+        options.add("-target");
+        options.add(target);
+      }
+    }
+    Xpp3Dom encoding = configuration == null ? null : configuration.getChild("encoding");
+    String charset =
+        encoding == null
+            ? properties.getProperty("project.build.sourceEncoding")
+            : encoding.getValue();
+    if (charset != null) {
+      options.add("-encoding");
+      options.add(charset);
+    }
+    if (!"false".equals(compilerSetting(configuration, "debug", properties))) {
+      options.add("-g");
+    }
+    if ("true".equals(compilerSetting(configuration, "parameters", properties))) {
+      options.add("-parameters");
+    }
+    return options;
+  }
+
+  /**
+   * @return the value of a maven-compiler-plugin setting, from its configuration or its {@code
+   *     maven.compiler.*} property.
+   */
+  private static String compilerSetting(Xpp3Dom configuration, String name, Properties properties) {
+    Xpp3Dom child = configuration == null ? null : configuration.getChild(name);
+    return child == null ? properties.getProperty("maven.compiler." + name) : child.getValue();
+  }
+
+  private static ModuleSelection getSelection(Future<ModuleSelection> future)
+      throws IOException, MojoFailureException {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new MojoFailureException("Interrupted while selecting tests!", ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof MojoFailureException) {
+        throw (MojoFailureException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new MojoFailureException("Unable to select tests!", cause);
+    }
+  }
+
+  /**
+   * Selects the test classes of a module impacted by its changes.
+   *
+   * @param module reactor module.
+   * @param changes changes assigned to the module.
+   * @param head commit the classes were compiled from.
+   * @param prediction prediction deferring unlikely tests, null to run every selected test.
+   * @param loaders project class loaders.
+   * @return the selection.
+   * @throws IOException if the classes can't be read.
+   * @throws MojoFailureException if a selected class can't be loaded.
+   */
+  private ModuleSelection selectModule(
+      MavenProject module,
+      List<ReactorLayout.Change> changes,
+      String head,
+      Prediction prediction,
+      ProjectClassLoaders loaders)
+      throws IOException, MojoFailureException {
+    BytecodeIndex testBytecode;
+    try (PhaseMetrics.Phase phase = metrics.start("scan")) {
+      testBytecode = BytecodeIndex.scan(Paths.get(module.getBuild().getTestOutputDirectory()));
+    }
+    metrics.increment("classes_scanned", testBytecode.getClasses().size());
+    File snapshotFile = moduleFile(indexSnapshotFile, module);
+    IndexSnapshot previous =
+        changes.stream().anyMatch(ReactorLayout.Change::isDeleted)
+            ? readSnapshot(snapshotFile)
+            : null;
+    TestSelection selection;
+    try (PhaseMetrics.Phase phase = metrics.start("select")) {
+      selection = selectTests(module, changes, testBytecode, previous);
+      if (prediction != null && !selection.isFullRun()) {
+        deferUnlikely(module, selection, testBytecode, prediction);
+      }
+    }
+    try {
+      IndexSnapshot.of(testBytecode, head).write(snapshotFile);
+    } catch (IOException ex) {
+      getLog().warn(String.format("Unable to write index snapshot '%s'!", snapshotFile), ex);
+    }
+    if (selection.isFullRun()) {
+      getLog()
+          .info(
+              String.format(
+                  "Selecting all tests of '%s': %s.",
+                  module.getArtifactId(), selection.getFullRunReason()));
+    }
+    // Only the selected classes are loaded
+    ClassLoader projectClassLoader = null;
+    List<Class<?>> classes = new ArrayList<>();
+    for (String test : selection.getTests().keySet()) {
+      if (!testBytecode.isTestClass(test)) {
+        continue;
+      }
+      if (projectClassLoader == null) {
+        projectClassLoader = getClassLoader(loaders, module);
+      }
+      classes.add(getClass(test, projectClassLoader));
+      metrics.increment("classes_loaded", 1);
+    }
+    File report = moduleFile(selectionReportFile, module);
+    selection.writeReport(report);
+    if (verbose) {
+      getLog().info(String.format("Selection report written to '%s'.", report));
+    }
+    return new ModuleSelection(module, selection, classes);
+  }
+
+  /**
+   * Resolves a file parameter, evaluated for the project the goal runs on, for another reactor
+   * module, i.e. {@code target/testng-ci/...} of the module.
+   *
+   * @param file file parameter.
+   * @param module reactor module.
+   * @return the file for the module, the parameter itself when outside the project directory.
+   */
+  protected File moduleFile(File file, MavenProject module) {
+    Path base = project.getBasedir().toPath().toAbsolutePath();
+    Path path = file.toPath().toAbsolutePath();
+    if (module == project || !path.startsWith(base)) {
+      return file;
+    }
+    return module.getBasedir().toPath().resolve(base.relativize(path)).toFile();
+  }
+
+  /**
+   * @param module reactor module.
+   * @return the test durations recorded by the previous surefire run of the module.
+   */
+  protected TestDurationHistory readDurationHistory(MavenProject module) {
+    return TestDurationHistory.read(getReportsDirectory(module));
+  }
+
+  /**
+   * @param module reactor module.
+   * @return the surefire reports directory of the module.
+   */
+  protected File getReportsDirectory(MavenProject module) {
+    return moduleFile(reportsDirectory, module);
+  }
+
+  /**
+   * Writes a surefire {@code includesFile} selecting the given test classes.
+   *
+   * @param classNames test class names.
+   * @param file includes file.
+   * @throws IOException if the file can't be written.
+   */
+  protected void writeIncludesFile(Collection<String> classNames, File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      for (String className : classNames) {
+        writer.write(className.replace('.', '/') + ".java");
+        writer.newLine();
+      }
+    }
+  }
+
+  /**
+   * Decides which test classes of a module are impacted by its changed files. Sources are mapped to
+   * every class compiled from them through the {@code SourceFile} attribute of the class files.
+   *
+   * @param module reactor module.
+   * @param changes changes assigned to the module.
+   * @param testBytecode index of the test classes.
+   * @param previous snapshot of the test class index of the previous run, null if not available.
+   * @return the selection, explaining every decision.
+   * @throws IOException if the production classes can't be read.
+   */
+  private TestSelection selectTests(
+      MavenProject module,
+      List<ReactorLayout.Change> changes,
+      BytecodeIndex testBytecode,
+      IndexSnapshot previous)
+      throws IOException {
+    TestSelection selection = new TestSelection();
+    TypeGraph graph = testBytecode.impactGraph();
+    BitSet seeds = new BitSet(graph.size());
+    CoverageIndex coverageIndex = useCoverageIndex ? loadCoverageIndex(module) : null;
+    BytecodeIndex mainBytecode = null;
+    for (ReactorLayout.Change change : changes) {
+      String modifiedFile = change.getPath();
+      if (change.isDeleted() && change.getSourcePath() != null) {
+        selectFormerDependents(
+            change, previous, coverageIndex, testBytecode, graph, seeds, selection);
+        continue;
+      }
+      switch (change.getKind()) {
+        case POM:
+          selection.escalate(
+              String.format("'%s' changed, dependencies or build may differ", modifiedFile));
+          selection.explainChange(modifiedFile, "escalated to a module-wide run");
+          break;
+        case TEST_SOURCE:
+          List<String> compiled = testBytecode.classesCompiledFrom(change.getSourcePath());
+          if (compiled.isEmpty()) {
+            // Deleted, or not compiled to classes at all
+            selection.explainChange(modifiedFile, "no compiled test class");
+            break;
+          }
+          for (String className : compiled) {
+            markImpacted(className, "changed", graph, seeds, selection);
+          }
+          selection.explainChange(
+              modifiedFile,
+              compiled.size() == 1
+                  ? "changed test class"
+                  : String.format("changed test source of %d classes", compiled.size()));
+          break;
+        case MAIN_SOURCE:
+          if (coverageIndex == null) {
+            selection.explainChange(modifiedFile, "production class, no coverage index available");
+            break;
+          }
+          if (mainBytecode == null) {
+            try (PhaseMetrics.Phase phase = metrics.start("scan")) {
+              mainBytecode = BytecodeIndex.scan(Paths.get(module.getBuild().getOutputDirectory()));
+            }
+          }
+          List<String> changedClasses = mainBytecode.classesCompiledFrom(change.getSourcePath());
+          if (changedClasses.isEmpty()) {
+            changedClasses = Collections.singletonList(change.getName());
+          }
+          Set<String> covering = new HashSet<>();
+          for (String changedClass : changedClasses) {
+            for (String test : coverageIndex.testsForClass(changedClass)) {
+              if (testBytecode.get(test) != null) {
+                selection.select(test, String.format("executed changed class '%s'", changedClass));
+                covering.add(test);
+              } else if (verbose) {
+                getLog().debug(String.format("Covering test '%s' no longer exists.", test));
+              }
+            }
+          }
+          selection.explainChange(
+              modifiedFile,
+              String.format("production class executed by %d test(s)", covering.size()));
+          break;
+        default:
+          if (ReactorLayout.isSourceFile(modifiedFile)) {
+            selection.explainChange(modifiedFile, "not in a known source root");
+            break;
+          }
+          selectResourceTests(change, testBytecode, graph, seeds, selection);
+      }
+    }
+    // Mark the classes depending on impacted classes, and what they require, as classes to test
+    testBytecode.propagate(graph, seeds, selection);
+    if (selection.isFullRun()) {
+      for (BytecodeIndex.ClassInfo info : testBytecode.getClasses()) {
+        selection.select(info.getName(), "module-wide run");
+      }
+    }
+    // Nested, anonymous and helper classes only carry the impact to the test classes
+    selection.retainTests(testBytecode::isTestClass);
+    return selection;
+  }
+
+  /**
+   * Selects the test classes which depended on the classes of a deleted source, as recorded by the
+   * snapshot of the previous run, and the tests which executed them, as recorded by the coverage
+   * index. Classes no longer existing can't be found otherwise.
+   */
+  private void selectFormerDependents(
+      ReactorLayout.Change change,
+      IndexSnapshot previous,
+      CoverageIndex coverageIndex,
+      BytecodeIndex testBytecode,
+      TypeGraph graph,
+      BitSet seeds,
+      TestSelection selection) {
+    if (previous == null && coverageIndex == null) {
+      selection.explainChange(
+          change.getPath(), "deleted, no index snapshot to find its dependents");
+      return;
+    }
+    List<String> deleted =
+        previous == null
+            ? Collections.emptyList()
+            : previous.classesCompiledFrom(change.getSourcePath());
+    if (deleted.isEmpty()) {
+      deleted = Collections.singletonList(change.getName());
+    }
+    Set<String> dependents = new HashSet<>();
+    if (previous != null) {
+      for (String dependent : previous.dependentsOf(deleted)) {
+        if (testBytecode.get(dependent) != null) {
+          markImpacted(
+              dependent,
+              String.format("depended on deleted '%s'", change.getSourcePath()),
+              graph,
+              seeds,
+              selection);
+          dependents.add(dependent);
+        }
+      }
+    }
+    if (coverageIndex != null) {
+      for (String deletedClass : deleted) {
+        for (String test : coverageIndex.testsForClass(deletedClass)) {
+          if (testBytecode.get(test) != null) {
+            selection.select(test, String.format("executed deleted class '%s'", deletedClass));
+            dependents.add(test);
+          }
+        }
+      }
+    }
+    selection.explainChange(
+        change.getPath(),
+        String.format("deleted, %d former dependent(s) selected", dependents.size()));
+  }
+
+  /**
+   * @param file snapshot file.
+   * @return the snapshot or null if it doesn't exist or can't be read.
+   */
+  private IndexSnapshot readSnapshot(File file) {
+    try {
+      IndexSnapshot snapshot = IndexSnapshot.read(file);
+      if (snapshot == null) {
+        getLog().info(String.format("No index snapshot '%s' to resolve deleted classes.", file));
+      } else if (verbose) {
+        getLog()
+            .info(
+                String.format(
+                    "Resolving deleted classes with the index of commit %s.",
+                    snapshot.getCommit()));
+      }
+      return snapshot;
+    } catch (IOException ex) {
+      getLog().warn(String.format("Unable to read index snapshot '%s'!", file), ex);
+      return null;
+    }
+  }
+
+  /**
+   * Selects the test classes referencing a changed resource, either through a string constant in
+   * their bytecode or through a configured {@link ResourceRule}.
+   */
+  private void selectResourceTests(
+      ReactorLayout.Change change,
+      BytecodeIndex testBytecode,
+      TypeGraph graph,
+      BitSet seeds,
+      TestSelection selection) {
+    String modifiedFile = change.getPath();
+    String resource = change.getKind() == ReactorLayout.Kind.RESOURCE ? change.getName() : null;
+    String fileName = modifiedFile.substring(modifiedFile.lastIndexOf('/') + 1);
+    int referencing = 0;
+    for (BytecodeIndex.ClassInfo info : testBytecode.getClasses()) {
+      String constant = info.findResourceReference(resource, fileName);
+      if (constant != null) {
+        markImpacted(
+            info.getName(),
+            String.format("references changed resource '%s'", constant),
+            graph,
+            seeds,
+            selection);
+        referencing++;
+      }
+    }
+    int ruled = 0;
+    for (ResourceRule rule : resourceRules) {
+      if (rule.matchesPath(change.getModulePath())) {
+        for (BytecodeIndex.ClassInfo info : testBytecode.getClasses()) {
+          if (rule.matchesTest(info.getName())) {
+            markImpacted(
+                info.getName(), String.format("resource rule '%s'", rule), graph, seeds, selection);
+            ruled++;
+          }
+        }
+      }
+    }
+    selection.explainChange(
+        modifiedFile,
+        referencing + ruled == 0
+            ? "not referenced by any test"
+            : String.format("referenced by %d test(s), %d selected by rules", referencing, ruled));
+  }
+
+  private void markImpacted(
+      String className, String reason, TypeGraph graph, BitSet seeds, TestSelection selection) {
+    int id = graph.idOf(className);
+    if (id >= 0) {
+      seeds.set(id);
+      selection.select(className, reason);
+    }
+  }
+
+  protected void addClassToTest(List<Class<?>> classes, Class<?> c, String reason) {
+    if (verbose) {
+      getLog().debug(String.format("Marking class '%s' to be tested (%s)!", c.toString(), reason));
+    }
+    classes.add(c);
+  }
+
+  /**
+   * @param module reactor module.
+   * @return the coverage index of the module or null if it can't be read.
+   */
+  protected CoverageIndex loadCoverageIndex(MavenProject module) {
+    File coverageIndexFile = moduleFile(this.coverageIndexFile, module);
+    try {
+      CoverageIndex index = CoverageIndex.read(coverageIndexFile);
+      if (index.isEmpty()) {
+        getLog().warn(String.format("Coverage index '%s' is empty!", coverageIndexFile));
+      }
+      return index;
+    } catch (IOException ex) {
+      getLog().warn(String.format("Unable to read coverage index '%s'!", coverageIndexFile), ex);
+      return null;
+    }
+  }
+
+  /**
+   * @param className selected test class.
+   * @param projectClassLoader test scope class loader of its module.
+   * @return the class.
+   * @throws MojoFailureException if the class, or a class it needs, can't be loaded. Leaving it out
+   *     would silently skip its tests.
+   */
+  protected Class<?> getClass(String className, ClassLoader projectClassLoader)
+      throws MojoFailureException {
+    try {
+      return projectClassLoader.loadClass(className);
+    } catch (ClassNotFoundException | LinkageError e) {
+      throw new MojoFailureException(
+          String.format("Unable to load the selected test class '%s'!", className), e);
+    }
+  }
+
+  /**
+   * @return a new set of project class loaders, to close once the loaded classes are no longer
+   *     inspected. The class files read from jars are cached for the whole build session.
+   */
+  protected ProjectClassLoaders newClassLoaders() {
+    return new ProjectClassLoaders(
+        getClass().getClassLoader(),
+        this::testClasspath,
+        JarClassCache.of(mavenSession.getRepositorySession()));
+  }
+
+  /**
+   * @param loaders project class loaders.
+   * @param module reactor module.
+   * @return the test scope class loader of the module.
+   * @throws MojoFailureException if the test dependencies of the module can't be resolved.
+   */
+  protected ClassLoader getClassLoader(ProjectClassLoaders loaders, MavenProject module)
+      throws MojoFailureException {
+    try {
+      return loaders.get(module);
+    } catch (DependencyResolutionException e) {
+      throw new MojoFailureException(
+          String.format("Unable to resolve the test class path of '%s'!", module.getArtifactId()),
+          e);
+    }
+  }
+}
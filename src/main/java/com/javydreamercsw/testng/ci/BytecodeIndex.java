@@ -0,0 +1,793 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/** Information extracted from compiled classes by reading their bytecode, without loading them. */
+public class BytecodeIndex {
+  private static final String TESTNG_ANNOTATIONS = "Lorg/testng/annotations/";
+  /** Annotations of the test methods of the other frameworks surefire runs. */
+  private static final Set<String> JUNIT_TESTS =
+      new HashSet<>(
+          Arrays.asList(
+              "Lorg/junit/Test;",
+              "Lorg/junit/jupiter/api/Test;",
+              "Lorg/junit/jupiter/api/RepeatedTest;",
+              "Lorg/junit/jupiter/api/TestFactory;",
+              "Lorg/junit/jupiter/api/TestTemplate;",
+              "Lorg/junit/jupiter/params/ParameterizedTest;"));
+  /** Tag of the class entries of the constant pool. */
+  private static final int CONSTANT_CLASS = 7;
+
+  private final Map<String, ClassInfo> classes = new LinkedHashMap<>();
+  /** Classes declaring each TestNG group, computed on demand. */
+  private Map<String, List<String>> groups;
+  /** Classes compiled from each source file, computed on demand. */
+  private Map<String, List<String>> sources;
+
+  /**
+   * Reads every class file under the given output directory.
+   *
+   * @param root class output directory.
+   * @return the index, empty if the directory doesn't exist.
+   * @throws IOException if a class file can't be read.
+   */
+  public static BytecodeIndex scan(Path root) throws IOException {
+    BytecodeIndex index = new BytecodeIndex();
+    if (!Files.isDirectory(root)) {
+      return index;
+    }
+    List<Path> classFiles;
+    try (Stream<Path> files = Files.walk(root)) {
+      classFiles =
+          files
+              .filter(f -> f.toString().endsWith(".class"))
+              .filter(f -> !f.endsWith("module-info.class") && !f.endsWith("package-info.class"))
+              .collect(Collectors.toList());
+    }
+    for (Path classFile : classFiles) {
+      index.put(read(Files.readAllBytes(classFile)));
+    }
+    return index;
+  }
+
+  /**
+   * @param bytes class file contents.
+   * @return what the class file holds.
+   */
+  public static ClassInfo read(byte[] bytes) {
+    ClassInfo info = new ClassInfo();
+    ClassReader reader = new ClassReader(bytes);
+    // Debug information is needed for the SourceFile attribute
+    reader.accept(new InfoClassVisitor(info), ClassReader.SKIP_FRAMES);
+    char[] buffer = new char[reader.getMaxStringLength()];
+    for (int item = 1; item < reader.getItemCount(); item++) {
+      int offset = reader.getItem(item);
+      // Long and double constants take two entries, the second one has no offset
+      if (offset > 0 && reader.readByte(offset - 1) == CONSTANT_CLASS) {
+        info.addType(reader.readUTF8(offset, buffer));
+      }
+    }
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    info.checksum = crc.getValue();
+    return info;
+  }
+
+  /**
+   * Adds or replaces a class.
+   *
+   * @param info class information.
+   */
+  public void put(ClassInfo info) {
+    classes.put(info.getName(), info);
+    groups = null;
+    sources = null;
+  }
+
+  /**
+   * @param name binary class name.
+   * @return the removed class information or null if not indexed.
+   */
+  public ClassInfo remove(String name) {
+    groups = null;
+    sources = null;
+    return classes.remove(name);
+  }
+
+  /**
+   * Builds the graph of what each indexed class depends on: its super class and interfaces, the
+   * listeners, data provider classes and created classes named by its TestNG annotations, the
+   * classes declaring the groups it depends on and the suite configuration classes it uses.
+   *
+   * @return the impact graph of the indexed classes.
+   */
+  public TypeGraph impactGraph() {
+    TypeGraph.Builder builder = TypeGraph.builder();
+    for (ClassInfo info : classes.values()) {
+      builder.intern(info.getName());
+      for (String dependency : impactDependencies(info.getName())) {
+        builder.addEdge(info.getName(), dependency);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * @param name binary name of an indexed class.
+   * @return the classes whose impact reaches the class: its super class, interfaces, classes used
+   *     through TestNG annotations and the classes it requires.
+   */
+  public Set<String> impactDependencies(String name) {
+    ClassInfo info = classes.get(name);
+    if (info == null) {
+      return Collections.emptySet();
+    }
+    Set<String> dependencies = new LinkedHashSet<>();
+    if (info.getSuperName() != null) {
+      dependencies.add(info.getSuperName());
+    }
+    dependencies.addAll(info.getInterfaces());
+    dependencies.addAll(info.getDependencies().keySet());
+    dependencies.addAll(requirementsOf(name).keySet());
+    return dependencies;
+  }
+
+  /**
+   * Selects the indexed classes impacted by the seeds, then the classes required by every selected
+   * one.
+   *
+   * @param graph graph built by {@link #impactGraph()}.
+   * @param seeds changed classes.
+   * @param selection selection to add the classes to.
+   */
+  public void propagate(TypeGraph graph, BitSet seeds, TestSelection selection) {
+    BitSet impacted = graph.descendants(seeds);
+    Predicate<String> isImpacted =
+        n -> {
+          int id = graph.idOf(n);
+          return id >= 0 && impacted.get(id);
+        };
+    for (int id = impacted.nextSetBit(0); id >= 0; id = impacted.nextSetBit(id + 1)) {
+      String name = graph.nameOf(id);
+      if (!selection.isSelected(name) && classes.containsKey(name)) {
+        selection.select(name, impactReason(name, isImpacted));
+      }
+    }
+    selectRequirements(selection);
+  }
+
+  /**
+   * Selects what every selected class requires, transitively, taking required classes back from the
+   * deferred ones.
+   *
+   * @param selection selection to add the classes to.
+   */
+  public void selectRequirements(TestSelection selection) {
+    Deque<String> pending = new ArrayDeque<>(selection.getTests().keySet());
+    while (!pending.isEmpty()) {
+      String name = pending.poll();
+      for (String required : requirementsOf(name).keySet()) {
+        if (!selection.isSelected(required)) {
+          selection.select(required, String.format("required by '%s'", name));
+          pending.add(required);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tells whether a class can be handed to a test runner: a top level concrete class declaring or
+   * inheriting tests, or suite configuration. Nested, anonymous and helper classes only take part
+   * in the impact of a change.
+   *
+   * @param name binary class name.
+   * @return whether the class is a test class, false if it isn't indexed.
+   */
+  public boolean isTestClass(String name) {
+    ClassInfo info = classes.get(name);
+    if (info == null || info.isNested() || !info.isConcrete()) {
+      return false;
+    }
+    if (info.isSuiteConfiguration()) {
+      return true;
+    }
+    for (ClassInfo current = info; ; ) {
+      if (declaresTests(current)) {
+        return true;
+      }
+      String superName = current.getSuperName();
+      if (superName == null || superName.equals(Object.class.getName())) {
+        return false;
+      }
+      current = classes.get(superName);
+      if (current == null) {
+        // Tests may be inherited from outside the module, i.e. a test jar or JUnit 3
+        String simpleName = name.substring(name.lastIndexOf('.') + 1);
+        return simpleName.startsWith("Test")
+            || simpleName.endsWith("Test")
+            || simpleName.endsWith("Tests")
+            || simpleName.endsWith("TestCase");
+      }
+    }
+  }
+
+  private boolean declaresTests(ClassInfo info) {
+    if (info.hasTests()) {
+      return true;
+    }
+    for (String implemented : info.getInterfaces()) {
+      ClassInfo face = classes.get(implemented);
+      if (face != null && declaresTests(face)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Explains why a class is impacted, given the impacted classes it may depend on.
+   *
+   * @param name binary name of an indexed class.
+   * @param impacted tells whether a class is impacted.
+   * @return the reason.
+   */
+  public String impactReason(String name, Predicate<String> impacted) {
+    ClassInfo info = classes.get(name);
+    if (info == null) {
+      return "depends on an impacted class";
+    }
+    if (info.getSuperName() != null && impacted.test(info.getSuperName())
+        || info.getInterfaces().stream().anyMatch(impacted)) {
+      return "child of an impacted class";
+    }
+    for (Map.Entry<String, String> dependency : info.getDependencies().entrySet()) {
+      if (impacted.test(dependency.getKey())) {
+        return String.format(
+            "%s '%s', which is impacted", dependency.getValue(), dependency.getKey());
+      }
+    }
+    for (Map.Entry<String, String> required : requirementsOf(name).entrySet()) {
+      if (impacted.test(required.getKey())) {
+        return String.format("%s '%s', which is impacted", required.getValue(), required.getKey());
+      }
+    }
+    return "depends on an impacted class";
+  }
+
+  /**
+   * Finds the classes which must run along with a class for it to work: the declarers of the groups
+   * it depends on and the suite configuration classes it uses.
+   *
+   * @param name binary class name.
+   * @return the required classes with the relationship, empty if the class isn't indexed.
+   */
+  public Map<String, String> requirementsOf(String name) {
+    ClassInfo info = classes.get(name);
+    Map<String, String> required = new LinkedHashMap<>();
+    if (info == null) {
+      return required;
+    }
+    for (String group : info.getDependsOnGroups()) {
+      for (String declarer : groupDeclarers().getOrDefault(group, Collections.emptyList())) {
+        if (!declarer.equals(name)) {
+          required.putIfAbsent(declarer, String.format("depends on group '%s' of", group));
+        }
+      }
+    }
+    for (String reference : info.getReferences()) {
+      ClassInfo referenced = classes.get(reference);
+      if (referenced != null && referenced.isSuiteConfiguration()) {
+        required.putIfAbsent(reference, "uses the suite configuration of");
+      }
+    }
+    return required;
+  }
+
+  private Map<String, List<String>> groupDeclarers() {
+    Map<String, List<String>> declarers = groups;
+    if (declarers == null) {
+      declarers = new HashMap<>();
+      for (ClassInfo info : classes.values()) {
+        for (String group : info.getGroups()) {
+          declarers.computeIfAbsent(group, g -> new ArrayList<>()).add(info.getName());
+        }
+      }
+      groups = declarers;
+    }
+    return declarers;
+  }
+
+  /**
+   * Finds the classes compiled from a source file, i.e. its top level classes with their nested and
+   * anonymous classes, through the {@code SourceFile} attribute of the class files. Works for any
+   * JVM language recording it.
+   *
+   * @param sourcePath path of the source file relative to its source root, i.e. {@code
+   *     a/b/Name.java}.
+   * @return the binary names of the classes, empty if none was compiled from it.
+   */
+  public List<String> classesCompiledFrom(String sourcePath) {
+    Map<String, List<String>> bySource = sources;
+    if (bySource == null) {
+      bySource = new HashMap<>();
+      for (ClassInfo info : classes.values()) {
+        if (info.getSourcePath() != null) {
+          bySource
+              .computeIfAbsent(info.getSourcePath(), k -> new ArrayList<>())
+              .add(info.getName());
+        }
+      }
+      sources = bySource;
+    }
+    List<String> compiled = bySource.get(sourcePath);
+    if (compiled != null) {
+      return Collections.unmodifiableList(compiled);
+    }
+    // Languages like Kotlin don't require the directory to match the package
+    String fileName = sourcePath.substring(sourcePath.lastIndexOf('/') + 1);
+    List<String> candidates = null;
+    for (Map.Entry<String, List<String>> source : bySource.entrySet()) {
+      if (source.getKey().endsWith("/" + fileName) || source.getKey().equals(fileName)) {
+        if (candidates != null) {
+          // Ambiguous
+          return Collections.emptyList();
+        }
+        candidates = source.getValue();
+      }
+    }
+    return candidates == null ? Collections.emptyList() : Collections.unmodifiableList(candidates);
+  }
+
+  /**
+   * @return all the indexed classes.
+   */
+  public Collection<ClassInfo> getClasses() {
+    return Collections.unmodifiableCollection(classes.values());
+  }
+
+  /**
+   * @param name binary class name.
+   * @return the class information or null if not indexed.
+   */
+  public ClassInfo get(String name) {
+    return classes.get(name);
+  }
+
+  /** What the index knows about a single class. */
+  public static class ClassInfo {
+    private String name;
+    private String superName;
+    private List<String> interfaces = Collections.emptyList();
+    private boolean concrete;
+    private boolean nested;
+    private boolean tests;
+    private String sourceFile;
+    private boolean singleThreaded;
+    private boolean suiteConfiguration;
+    private long checksum;
+    private final Set<String> strings = new TreeSet<>();
+    private final Map<String, String> dependencies = new LinkedHashMap<>();
+    private final Set<String> groups = new TreeSet<>();
+    private final Set<String> dependsOnGroups = new TreeSet<>();
+    private final Set<String> references = new TreeSet<>();
+    private final Set<String> types = new TreeSet<>();
+    private boolean constants;
+
+    /**
+     * @return the binary class name.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return the source file the class was compiled from relative to its source root, assuming the
+     *     directories match the package, or null if not recorded in the class file.
+     */
+    public String getSourcePath() {
+      if (sourceFile == null) {
+        return null;
+      }
+      int dot = name.lastIndexOf('.');
+      return dot < 0 ? sourceFile : name.substring(0, dot).replace('.', '/') + "/" + sourceFile;
+    }
+
+    /**
+     * @return the binary name of the super class, null for {@link Object}.
+     */
+    public String getSuperName() {
+      return superName;
+    }
+
+    /**
+     * @return the binary names of the implemented interfaces.
+     */
+    public List<String> getInterfaces() {
+      return interfaces;
+    }
+
+    /**
+     * @return whether the class can be instantiated, i.e. it is not an interface or abstract.
+     */
+    public boolean isConcrete() {
+      return concrete;
+    }
+
+    /**
+     * @return whether the class is a nested, local or anonymous class.
+     */
+    public boolean isNested() {
+      return nested;
+    }
+
+    /**
+     * @return whether the class itself declares TestNG or JUnit tests, or TestNG factories.
+     */
+    public boolean hasTests() {
+      return tests;
+    }
+
+    /**
+     * @return whether the class declares its methods must not run concurrently with other tests,
+     *     through TestNG {@code @Test(singleThreaded = true)} or a {@code NotThreadSafe}
+     *     annotation. Super classes aren't considered.
+     */
+    public boolean isSingleThreaded() {
+      return singleThreaded;
+    }
+
+    /**
+     * @return whether the class declares {@code @BeforeSuite} or {@code @AfterSuite} methods.
+     */
+    public boolean isSuiteConfiguration() {
+      return suiteConfiguration;
+    }
+
+    /**
+     * @return classes named by the TestNG annotations of the class, with the relationship: its
+     *     listeners, data provider classes and the classes created by its factories.
+     */
+    public Map<String, String> getDependencies() {
+      return Collections.unmodifiableMap(dependencies);
+    }
+
+    /**
+     * @return TestNG groups declared by the class or its methods.
+     */
+    public Set<String> getGroups() {
+      return Collections.unmodifiableSet(groups);
+    }
+
+    /**
+     * @return TestNG groups the class or its methods depend on.
+     */
+    public Set<String> getDependsOnGroups() {
+      return Collections.unmodifiableSet(dependsOnGroups);
+    }
+
+    /**
+     * @return other classes whose fields or methods the code of the class uses.
+     */
+    public Set<String> getReferences() {
+      return Collections.unmodifiableSet(references);
+    }
+
+    /**
+     * @return every other class the class file names as a class, the classes whose change may need
+     *     the class to be recompiled.
+     */
+    public Set<String> getTypes() {
+      return Collections.unmodifiableSet(types);
+    }
+
+    /**
+     * @return whether the class declares non private compile-time constants, which the compiler
+     *     copies into the classes using them, leaving no reference to the class behind.
+     */
+    public boolean hasConstants() {
+      return constants;
+    }
+
+    private void addDependency(Type type, String relationship) {
+      if (type.getSort() == Type.OBJECT && !type.getClassName().equals(name)) {
+        dependencies.putIfAbsent(type.getClassName(), relationship);
+      }
+    }
+
+    private void addType(String internalName) {
+      Type type =
+          internalName.startsWith("[")
+              ? Type.getType(internalName).getElementType()
+              : Type.getObjectType(internalName);
+      if (type.getSort() == Type.OBJECT && !type.getClassName().equals(name)) {
+        types.add(type.getClassName());
+      }
+    }
+
+    private void addReference(String owner) {
+      // Arrays are owners of clone()
+      if (!owner.startsWith("[")) {
+        String reference = owner.replace('/', '.');
+        if (!reference.equals(name)) {
+          references.add(reference);
+        }
+      }
+    }
+
+    /**
+     * @return CRC32 of the class file, to tell rewritten but identical class files apart.
+     */
+    public long getChecksum() {
+      return checksum;
+    }
+
+    /**
+     * @return string constants used by the class, in code, fields or annotations.
+     */
+    public Set<String> getStrings() {
+      return Collections.unmodifiableSet(strings);
+    }
+
+    /**
+     * Looks for a string constant naming a resource.
+     *
+     * @param resource classpath name of the resource, null if it isn't in a resource root.
+     * @param fileName file name of the resource.
+     * @return the constant referencing the resource or null if none does.
+     */
+    public String findResourceReference(String resource, String fileName) {
+      for (String constant : strings) {
+        String name = constant.startsWith("/") ? constant.substring(1) : constant;
+        if (name.isEmpty()) {
+          continue;
+        }
+        if (resource != null) {
+          // Absolute or package relative classpath resource
+          if (name.equals(resource) || resource.endsWith("/" + name)) {
+            return constant;
+          }
+        } else if (name.equals(fileName) || name.endsWith("/" + fileName)) {
+          return constant;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static class InfoClassVisitor extends ClassVisitor {
+    private final ClassInfo info;
+    private final AnnotationVisitor annotationVisitor;
+
+    InfoClassVisitor(ClassInfo info) {
+      super(Opcodes.ASM9);
+      this.info = info;
+      this.annotationVisitor = new StringsAnnotationVisitor(info);
+    }
+
+    @Override
+    public void visit(
+        int version,
+        int access,
+        String name,
+        String signature,
+        String superName,
+        String[] interfaces) {
+      info.name = name.replace('/', '.');
+      info.superName = superName == null ? null : superName.replace('/', '.');
+      info.interfaces =
+          Arrays.stream(interfaces).map(i -> i.replace('/', '.')).collect(Collectors.toList());
+      info.concrete = (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_INTERFACE)) == 0;
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+      info.sourceFile = source;
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String descriptor) {
+      info.nested = true;
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+      // Nested classes list themselves among the inner classes
+      info.nested |= name.replace('/', '.').equals(info.name);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+      info.tests |=
+          descriptor.equals(TESTNG_ANNOTATIONS + "Test;")
+              || descriptor.equals("Lorg/junit/runner/RunWith;");
+      if (descriptor.endsWith("/NotThreadSafe;")) {
+        info.singleThreaded = true;
+      } else if (descriptor.startsWith(TESTNG_ANNOTATIONS)) {
+        return new TestNGAnnotationVisitor(info, annotationVisitor, descriptor, true);
+      }
+      return annotationVisitor;
+    }
+
+    @Override
+    public FieldVisitor visitField(
+        int access, String name, String descriptor, String signature, Object value) {
+      if (value instanceof String) {
+        info.strings.add((String) value);
+      }
+      if (value != null
+          && (access & (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL))
+              == (Opcodes.ACC_STATIC | Opcodes.ACC_FINAL)
+          && (access & Opcodes.ACC_PRIVATE) == 0) {
+        info.constants = true;
+      }
+      return null;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+        int access, String name, String descriptor, String signature, String[] exceptions) {
+      return new MethodVisitor(Opcodes.ASM9) {
+        private boolean factory;
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+          info.tests |= JUNIT_TESTS.contains(descriptor);
+          if (descriptor.startsWith(TESTNG_ANNOTATIONS)) {
+            factory |= descriptor.equals(TESTNG_ANNOTATIONS + "Factory;");
+            info.tests |= factory || descriptor.equals(TESTNG_ANNOTATIONS + "Test;");
+            info.suiteConfiguration |=
+                descriptor.equals(TESTNG_ANNOTATIONS + "BeforeSuite;")
+                    || descriptor.equals(TESTNG_ANNOTATIONS + "AfterSuite;");
+            return new TestNGAnnotationVisitor(info, annotationVisitor, descriptor, false);
+          }
+          return annotationVisitor;
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+          if (factory && opcode == Opcodes.NEW) {
+            info.addDependency(Type.getObjectType(type), "creates");
+          }
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+          info.addReference(owner);
+        }
+
+        @Override
+        public void visitMethodInsn(
+            int opcode, String owner, String name, String descriptor, boolean isInterface) {
+          info.addReference(owner);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+          if (value instanceof String) {
+            info.strings.add((String) value);
+          }
+        }
+      };
+    }
+  }
+
+  /** Records the classes and groups named by a TestNG annotation, besides its strings. */
+  private static class TestNGAnnotationVisitor extends AnnotationVisitor {
+    private final ClassInfo info;
+    private final String descriptor;
+    private final boolean classLevel;
+
+    TestNGAnnotationVisitor(
+        ClassInfo info, AnnotationVisitor strings, String descriptor, boolean classLevel) {
+      super(Opcodes.ASM9, strings);
+      this.info = info;
+      this.descriptor = descriptor;
+      this.classLevel = classLevel;
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+      if ("dataProviderClass".equals(name) && value instanceof Type) {
+        info.addDependency((Type) value, "uses data provider class");
+      } else if (classLevel
+          && descriptor.equals(TESTNG_ANNOTATIONS + "Test;")
+          // sequential is the deprecated name of singleThreaded
+          && ("singleThreaded".equals(name) || "sequential".equals(name))
+          && Boolean.TRUE.equals(value)) {
+        info.singleThreaded = true;
+      }
+      super.visit(name, value);
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+      AnnotationVisitor strings = super.visitArray(name);
+      if (classLevel
+          && "value".equals(name)
+          && descriptor.equals(TESTNG_ANNOTATIONS + "Listeners;")) {
+        return new AnnotationVisitor(Opcodes.ASM9, strings) {
+          @Override
+          public void visit(String name, Object value) {
+            if (value instanceof Type) {
+              info.addDependency((Type) value, "uses listener");
+            }
+            super.visit(name, value);
+          }
+        };
+      } else if ("groups".equals(name) || "dependsOnGroups".equals(name)) {
+        Set<String> groups = "groups".equals(name) ? info.groups : info.dependsOnGroups;
+        return new AnnotationVisitor(Opcodes.ASM9, strings) {
+          @Override
+          public void visit(String name, Object value) {
+            if (value instanceof String) {
+              groups.add((String) value);
+            }
+            super.visit(name, value);
+          }
+        };
+      }
+      return strings;
+    }
+  }
+
+  private static class StringsAnnotationVisitor extends AnnotationVisitor {
+    private final ClassInfo info;
+
+    StringsAnnotationVisitor(ClassInfo info) {
+      super(Opcodes.ASM9);
+      this.info = info;
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+      if (value instanceof String) {
+        info.strings.add((String) value);
+      }
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+      return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+      return this;
+    }
+  }
+}
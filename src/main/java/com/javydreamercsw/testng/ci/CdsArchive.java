@@ -0,0 +1,241 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AppCDS (class data sharing) archive of the classes a test JVM loads from its class path, mapped
+ * by later JVMs instead of being loaded and verified again. The archive is named after a hash of
+ * the class path, the size and modification time of every jar and the JVM, so a changed class path
+ * gets a new archive. It is dumped by the first JVM started without one when it exits, which needs
+ * Java 13 and a class path made of jars only; archives unused for a month are removed.
+ *
+ * <p>A truncated archive crashes the JVMs mapping it, so a dump is only published after its JVM
+ * exited cleanly and a JVM could start with it.
+ */
+public final class CdsArchive {
+  /** Archives being dumped by a JVM of this process. */
+  private static final Set<String> DUMPING = ConcurrentHashMap.newKeySet();
+
+  private static final long MAX_IDLE_MILLIS = TimeUnit.DAYS.toMillis(30);
+
+  /** JVM option dumping an archive at exit. */
+  static final String DUMP_OPTION = "-XX:ArchiveClassesAtExit=";
+
+  /** JVM option mapping an archive. */
+  static final String SHARED_OPTION = "-XX:SharedArchiveFile=";
+
+  private final File directory;
+  private final File archive;
+  private final File dump;
+  private final List<String> classpath;
+  private final boolean jarsOnly;
+  private boolean dumping;
+  private Integer dumpExitCode;
+
+  private CdsArchive(File directory, List<String> classpath, boolean jarsOnly) {
+    this.directory = directory;
+    this.classpath = classpath;
+    this.jarsOnly = jarsOnly;
+    String key = key(classpath);
+    this.archive = new File(directory, key + ".jsa");
+    this.dump = new File(directory, key + ".jsa.tmp");
+  }
+
+  /**
+   * @param directory directory of the archives.
+   * @param classpath class path of the JVMs, in order.
+   * @return the archive of the class path, which may not exist yet.
+   */
+  public static CdsArchive forClasspath(File directory, List<String> classpath) {
+    // Classes can't be archived from directories
+    boolean jarsOnly = classpath.stream().allMatch(element -> new File(element).isFile());
+    return new CdsArchive(directory, new ArrayList<>(classpath), jarsOnly);
+  }
+
+  /**
+   * @param classpath class path of the JVMs, in order.
+   * @return hash of the class path and the running JVM.
+   */
+  static String key(List<String> classpath) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+    StringBuilder content = new StringBuilder();
+    content.append(System.getProperty("java.home")).append('\n');
+    content.append(System.getProperty("java.vm.version")).append('\n');
+    for (String element : classpath) {
+      File file = new File(element);
+      content.append(element);
+      if (file.isFile()) {
+        content.append('|').append(file.length()).append('|').append(file.lastModified());
+      }
+      content.append('\n');
+    }
+    byte[] hash = digest.digest(content.toString().getBytes(StandardCharsets.UTF_8));
+    StringBuilder key = new StringBuilder();
+    for (int i = 0; i < 12; i++) {
+      key.append(String.format("%02x", hash[i]));
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return whether the running JVM can dump archives at exit.
+   */
+  public static boolean isSupported() {
+    return Runtime.version().feature() >= 13;
+  }
+
+  public File getArchive() {
+    return archive;
+  }
+
+  /**
+   * JVM arguments mapping the archive or, if it doesn't exist and no other JVM of this process is
+   * dumping it, dumping it at exit. {@link #exited(int)} and {@link #publish()} must be called once
+   * the dumping JVM exited.
+   *
+   * @return the arguments, empty if the archive can't be used.
+   */
+  public synchronized List<String> jvmArgs() {
+    if (!isSupported() || !jarsOnly) {
+      return Collections.emptyList();
+    }
+    if (archive.isFile()) {
+      // Kept while used
+      archive.setLastModified(System.currentTimeMillis());
+      return Collections.singletonList(SHARED_OPTION + archive.getAbsolutePath());
+    }
+    if (!dumping && DUMPING.add(archive.getAbsolutePath())) {
+      directory.mkdirs();
+      dumping = true;
+      dumpExitCode = null;
+      return Collections.singletonList(DUMP_OPTION + dump.getAbsolutePath());
+    }
+    return Collections.emptyList();
+  }
+
+  /**
+   * Records how the JVM dumping the archive exited.
+   *
+   * @param exitCode its exit code.
+   */
+  public synchronized void exited(int exitCode) {
+    dumpExitCode = exitCode;
+  }
+
+  /**
+   * Removes the archive, i.e. after a JVM mapping it failed to start, so the next JVM dumps a new
+   * one.
+   *
+   * @throws IOException if it can't be removed.
+   */
+  public synchronized void discard() throws IOException {
+    Files.deleteIfExists(archive.toPath());
+  }
+
+  /**
+   * Moves the archive dumped by a JVM which exited cleanly in place, once a JVM could start with
+   * it, so other JVMs use it, and removes the archives unused for a month.
+   *
+   * @return whether an archive was published.
+   * @throws IOException if the archive can't be moved.
+   */
+  public synchronized boolean publish() throws IOException {
+    if (!dumping) {
+      return false;
+    }
+    dumping = false;
+    DUMPING.remove(archive.getAbsolutePath());
+    // Killed while dumping, i.e. after a timeout, or not even started
+    boolean clean = dumpExitCode != null && dumpExitCode == 0;
+    if (!clean || !dump.isFile() || dump.length() == 0 || !isValid(dump, classpath)) {
+      Files.deleteIfExists(dump.toPath());
+      return false;
+    }
+    Files.move(
+        dump.toPath(),
+        archive.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    File[] archives = directory.listFiles((dir, name) -> name.endsWith(".jsa"));
+    if (archives != null) {
+      long oldest = System.currentTimeMillis() - MAX_IDLE_MILLIS;
+      for (File other : archives) {
+        if (other.lastModified() < oldest) {
+          Files.deleteIfExists(other.toPath());
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Starts a JVM which must map the archive.
+   *
+   * @param file archive.
+   * @param classpath class path it was dumped with.
+   * @return whether the JVM could start with it.
+   * @throws IOException if the JVM can't be started.
+   */
+  static boolean isValid(File file, List<String> classpath) throws IOException {
+    // An invalid archive crashes the JVM, which leaves its error log behind
+    File errors = Files.createTempDirectory("testng-ci-cds").toFile();
+    List<String> command = new ArrayList<>();
+    command.add(
+        new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+    command.add(SHARED_OPTION + file.getAbsolutePath());
+    command.add("-Xshare:on");
+    command.add("-XX:ErrorFile=" + new File(errors, "hs_err.log").getAbsolutePath());
+    command.add("-cp");
+    command.add(String.join(File.pathSeparator, classpath));
+    command.add("-version");
+    Process process =
+        new ProcessBuilder(command)
+            .directory(errors)
+            .redirectErrorStream(true)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .start();
+    try {
+      if (!process.waitFor(1, TimeUnit.MINUTES)) {
+        process.destroyForcibly();
+        return false;
+      }
+      return process.exitValue() == 0;
+    } catch (InterruptedException ex) {
+      process.destroyForcibly();
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      File[] logs = errors.listFiles();
+      if (logs != null) {
+        for (File log : logs) {
+          Files.deleteIfExists(log.toPath());
+        }
+      }
+      Files.deleteIfExists(errors.toPath());
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Inverted index from production classes (and methods) to the test classes that executed them.
+ *
+ * <p>Test class names are interned to dense ids, so each entry is a {@link BitSet} of test ids. The
+ * index is persisted as a gzipped binary file and can be updated with the results of partial runs:
+ * only the test classes present in the update replace their previous entries. Test classes which no
+ * longer exist are removed with {@link #retainTests(Predicate)}.
+ */
+public class CoverageIndex {
+  private static final int MAGIC = 0x54434349; // TCCI
+  private static final int VERSION = 1;
+
+  private final List<String> tests = new ArrayList<>();
+  private final Map<String, Integer> testIds = new HashMap<>();
+  private final TreeMap<String, BitSet> classes = new TreeMap<>();
+  private final TreeMap<String, BitSet> methods = new TreeMap<>();
+
+  /**
+   * Replaces everything recorded for a test class.
+   *
+   * @param test test class name.
+   * @param coveredClasses binary names of the production classes the test executed.
+   * @param coveredMethods methods the test executed as {@code class#name(descriptor)}.
+   */
+  public void update(
+      String test, Collection<String> coveredClasses, Collection<String> coveredMethods) {
+    int id =
+        testIds.computeIfAbsent(
+            test,
+            t -> {
+              tests.add(t);
+              return tests.size() - 1;
+            });
+    remove(classes, id);
+    remove(methods, id);
+    for (String c : coveredClasses) {
+      classes.computeIfAbsent(c, k -> new BitSet()).set(id);
+    }
+    for (String m : coveredMethods) {
+      methods.computeIfAbsent(m, k -> new BitSet()).set(id);
+    }
+  }
+
+  /**
+   * Removes the test classes which no longer exist, i.e. deleted or renamed ones, along with
+   * everything recorded for them.
+   *
+   * @param exists whether a test class still exists.
+   * @return names of the removed test classes.
+   */
+  public Set<String> retainTests(Predicate<String> exists) {
+    Set<String> removed = new TreeSet<>();
+    List<String> kept = new ArrayList<>();
+    int[] ids = new int[tests.size()];
+    for (int id = 0; id < tests.size(); id++) {
+      String test = tests.get(id);
+      if (exists.test(test)) {
+        ids[id] = kept.size();
+        kept.add(test);
+      } else {
+        ids[id] = -1;
+        removed.add(test);
+      }
+    }
+    if (removed.isEmpty()) {
+      return removed;
+    }
+    // Ids stay dense
+    renumber(classes, ids);
+    renumber(methods, ids);
+    tests.clear();
+    testIds.clear();
+    for (String test : kept) {
+      testIds.put(test, tests.size());
+      tests.add(test);
+    }
+    return removed;
+  }
+
+  private static void renumber(Map<String, BitSet> entries, int[] ids) {
+    entries.replaceAll(
+        (key, previous) -> {
+          BitSet renumbered = new BitSet();
+          previous.stream().filter(id -> ids[id] >= 0).forEach(id -> renumbered.set(ids[id]));
+          return renumbered;
+        });
+    entries.values().removeIf(BitSet::isEmpty);
+  }
+
+  private static void remove(Map<String, BitSet> entries, int id) {
+    entries
+        .values()
+        .removeIf(
+            tests -> {
+              tests.clear(id);
+              return tests.isEmpty();
+            });
+  }
+
+  /**
+   * Finds the tests that executed a class or any of its nested classes.
+   *
+   * @param className binary name of the production class.
+   * @return names of the test classes.
+   */
+  public Set<String> testsForClass(String className) {
+    BitSet result = new BitSet();
+    BitSet direct = classes.get(className);
+    if (direct != null) {
+      result.or(direct);
+    }
+    SortedMap<String, BitSet> nested = classes.subMap(className + "$", className + "$\uffff");
+    nested.values().forEach(result::or);
+    return toNames(result);
+  }
+
+  /**
+   * @param method method as {@code class#name(descriptor)}.
+   * @return names of the test classes that executed the method.
+   */
+  public Set<String> testsForMethod(String method) {
+    BitSet direct = methods.get(method);
+    return direct == null ? new TreeSet<>() : toNames(direct);
+  }
+
+  /**
+   * @return names of all the test classes recorded in this index.
+   */
+  public Set<String> getTests() {
+    BitSet recorded = new BitSet();
+    classes.values().forEach(recorded::or);
+    return toNames(recorded);
+  }
+
+  public boolean isEmpty() {
+    return classes.isEmpty();
+  }
+
+  private Set<String> toNames(BitSet ids) {
+    Set<String> result = new TreeSet<>();
+    ids.stream().forEach(id -> result.add(tests.get(id)));
+    return result;
+  }
+
+  /**
+   * Loads an index from disk.
+   *
+   * @param file index file.
+   * @return the index or an empty one if the file doesn't exist.
+   * @throws IOException if the file can't be read or isn't an index.
+   */
+  public static CoverageIndex read(File file) throws IOException {
+    CoverageIndex index = new CoverageIndex();
+    if (!file.isFile()) {
+      return index;
+    }
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(String.format("'%s' is not a coverage index!", file));
+      }
+      int testCount = in.readInt();
+      for (int i = 0; i < testCount; i++) {
+        String test = in.readUTF();
+        index.testIds.put(test, i);
+        index.tests.add(test);
+      }
+      readEntries(in, index.classes);
+      readEntries(in, index.methods);
+    }
+    return index;
+  }
+
+  private static void readEntries(DataInputStream in, Map<String, BitSet> entries)
+      throws IOException {
+    int count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      String key = in.readUTF();
+      long[] words = new long[in.readInt()];
+      for (int w = 0; w < words.length; w++) {
+        words[w] = in.readLong();
+      }
+      entries.put(key, BitSet.valueOf(words));
+    }
+  }
+
+  /**
+   * Stores this index on disk.
+   *
+   * @param file index file.
+   * @throws IOException if the file can't be written.
+   */
+  public void write(File file) throws IOException {
+    if (file.getParentFile() != null) {
+      Files.createDirectories(file.getParentFile().toPath());
+    }
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file.toPath()))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(tests.size());
+      for (String test : tests) {
+        out.writeUTF(test);
+      }
+      writeEntries(out, classes);
+      writeEntries(out, methods);
+    }
+  }
+
+  private static void writeEntries(DataOutputStream out, Map<String, BitSet> entries)
+      throws IOException {
+    out.writeInt(entries.size());
+    for (Map.Entry<String, BitSet> entry : entries.entrySet()) {
+      out.writeUTF(entry.getKey());
+      long[] words = entry.getValue().toLongArray();
+      out.writeInt(words.length);
+      for (long word : words) {
+        out.writeLong(word);
+      }
+    }
+  }
+}
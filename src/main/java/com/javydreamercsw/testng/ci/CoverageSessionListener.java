@@ -0,0 +1,74 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.lang.reflect.Method;
+import org.testng.IClassListener;
+import org.testng.ITestClass;
+import org.testng.log4testng.Logger;
+
+/**
+ * TestNG listener that wraps every test class in its own JaCoCo session, using the test class name
+ * as session id. The resulting execution data file is what the {@code record-coverage} goal turns
+ * into a {@link CoverageIndex}.
+ *
+ * <p>The JaCoCo agent must be attached to the test JVM with {@code append=true}, and test classes
+ * must not run in parallel, otherwise sessions overlap. The agent runtime is accessed reflectively
+ * so the plugin doesn't depend on it.
+ */
+public class CoverageSessionListener implements IClassListener {
+  /**
+   * Session id between test classes. What runs outside of them, e.g. {@code @AfterSuite} methods
+   * and the dump at JVM exit, is recorded under it instead of under the last class.
+   */
+  public static final String IDLE_SESSION = "testng-ci-idle";
+
+  private static final String AGENT_RT = "org.jacoco.agent.rt.RT";
+  private static final String AGENT_API = "org.jacoco.agent.rt.IAgent";
+  private static final Logger LOG = Logger.getLogger(CoverageSessionListener.class);
+  private final Object agent;
+  private final Class<?> agentApi;
+
+  public CoverageSessionListener() {
+    Object a = null;
+    Class<?> api = null;
+    try {
+      Class<?> rt = Class.forName(AGENT_RT);
+      api = Class.forName(AGENT_API, true, rt.getClassLoader());
+      a = rt.getMethod("getAgent").invoke(null);
+    } catch (ReflectiveOperationException | IllegalStateException e) {
+      LOG.warn("JaCoCo agent not available, per class coverage won't be recorded.");
+    }
+    this.agent = a;
+    this.agentApi = api;
+  }
+
+  @Override
+  public void onBeforeClass(ITestClass testClass) {
+    // Discard anything executed outside of this class (i.e. suite setup).
+    invoke("reset", new Class<?>[0]);
+    invoke("setSessionId", new Class<?>[] {String.class}, testClass.getRealClass().getName());
+  }
+
+  @Override
+  public void onAfterClass(ITestClass testClass) {
+    invoke("dump", new Class<?>[] {boolean.class}, true);
+    invoke("setSessionId", new Class<?>[] {String.class}, IDLE_SESSION);
+  }
+
+  private void invoke(String name, Class<?>[] types, Object... args) {
+    if (agent != null) {
+      try {
+        Method method = agentApi.getMethod(name, types);
+        method.invoke(agent, args);
+      } catch (ReflectiveOperationException e) {
+        LOG.error(String.format("Unable to call JaCoCo agent %s!", name), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** A file changed from the target branch, as reported by {@code git diff --name-status -M -z}. */
+public final class FileChange {
+  /** What happened to the file. */
+  public enum Status {
+    ADDED,
+    MODIFIED,
+    DELETED,
+    RENAMED
+  }
+
+  private final Status status;
+  private final String path;
+  private final String previousPath;
+  private final int similarity;
+
+  /**
+   * @param status what happened to the file.
+   * @param path path relative to the repository root, the new one for renames.
+   * @param previousPath path before a rename, null otherwise.
+   * @param similarity percentage of unchanged content for renames, 100 otherwise.
+   */
+  public FileChange(Status status, String path, String previousPath, int similarity) {
+    this.status = status;
+    this.path = path;
+    this.previousPath = previousPath;
+    this.similarity = similarity;
+  }
+
+  /**
+   * @param path path relative to the repository root.
+   * @return a modification of the file.
+   */
+  public static FileChange modified(String path) {
+    return new FileChange(Status.MODIFIED, path, null, 100);
+  }
+
+  /**
+   * Parses the output of {@code git diff --name-status -M -z}: a status followed by one path, or
+   * two for renames and copies, every field terminated by a NUL character. Paths are verbatim, not
+   * quoted as without {@code -z}. Copies are reported as additions and type changes as
+   * modifications.
+   *
+   * @param output command output.
+   * @return the changes.
+   * @throws IllegalArgumentException if the output can't be parsed.
+   */
+  public static List<FileChange> parse(String output) {
+    List<FileChange> changes = new ArrayList<>();
+    String[] fields = output.split("\0");
+    int i = 0;
+    while (i < fields.length) {
+      String field = fields[i++];
+      if (field.trim().isEmpty()) {
+        // The line separator after the last field
+        continue;
+      }
+      char code = field.charAt(0);
+      int paths = code == 'R' || code == 'C' ? 2 : 1;
+      if (i + paths > fields.length) {
+        throw new IllegalArgumentException(
+            String.format("Unexpected git diff status '%s' without its paths!", field));
+      }
+      if (paths == 2) {
+        int similarity = Integer.parseInt(field.substring(1));
+        changes.add(
+            code == 'R'
+                ? new FileChange(Status.RENAMED, fields[i + 1], fields[i], similarity)
+                : new FileChange(Status.ADDED, fields[i + 1], null, 100));
+      } else {
+        Status status;
+        switch (code) {
+          case 'A':
+            status = Status.ADDED;
+            break;
+          case 'D':
+            status = Status.DELETED;
+            break;
+          default:
+            status = Status.MODIFIED;
+        }
+        changes.add(new FileChange(status, fields[i], null, 100));
+      }
+      i += paths;
+    }
+    return changes;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  /**
+   * @return path relative to the repository root, the new one for renames.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * @return path before a rename, null otherwise.
+   */
+  public String getPreviousPath() {
+    return previousPath;
+  }
+
+  /**
+   * @return percentage of unchanged content for renames, 100 otherwise.
+   */
+  public int getSimilarity() {
+    return similarity;
+  }
+
+  @Override
+  public String toString() {
+    switch (status) {
+      case RENAMED:
+        return String.format("%s -> %s (%d%%)", previousPath, path, similarity);
+      case MODIFIED:
+        return path;
+      default:
+        return String.format("%s (%s)", path, status.name().toLowerCase());
+    }
+  }
+}
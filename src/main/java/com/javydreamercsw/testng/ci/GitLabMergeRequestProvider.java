@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.IOException;
+import org.gitlab4j.api.GitLabApi;
+import org.gitlab4j.api.GitLabApiException;
+import org.gitlab4j.api.models.MergeRequest;
+import org.gitlab4j.api.models.Project;
+
+/** Looks up merge requests with the GitLab REST API. */
+public class GitLabMergeRequestProvider implements MergeRequestProvider {
+  private final GitLabApi api;
+  private final long projectId;
+
+  /**
+   * @param server GitLab server URL.
+   * @param token GitLab API token.
+   * @param projectId id of the project the merge requests belong to.
+   */
+  public GitLabMergeRequestProvider(String server, String token, long projectId) {
+    this(new GitLabApi(server, token), projectId);
+  }
+
+  /**
+   * @param api GitLab client.
+   * @param projectId id of the project the merge requests belong to.
+   */
+  GitLabMergeRequestProvider(GitLabApi api, long projectId) {
+    this.api = api;
+    this.projectId = projectId;
+  }
+
+  @Override
+  public String findTargetBranch(String sourceBranch) throws IOException {
+    try {
+      Project p = api.getProjectApi().getProject(projectId);
+      for (MergeRequest mr : api.getMergeRequestApi().getMergeRequests(p.getId())) {
+        if (mr.getSourceBranch().equals(sourceBranch)) {
+          return mr.getTargetBranch();
+        }
+      }
+      return null;
+    } catch (GitLabApiException ex) {
+      throw new IOException(
+          String.format("Unable to look up the merge requests of project %d!", projectId), ex);
+    }
+  }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Brings a class output directory up to date by compiling, in process, only the Java sources which
+ * changed and the sources of the classes depending on them, found through the class dependency
+ * index of the output directory. Sources newer than their classes, or without any, are considered
+ * changed too. The result can't be trusted, and a full build is needed, when a changed class
+ * declares compile-time constants, which its dependents copied without referencing it, when the non
+ * private API of a changed class changed, which the classes using it only through a subclass
+ * compiled against, when the source of a dependent can't be found or when the compilation fails.
+ */
+public class IncrementalCompiler {
+  private static final String JAVA = ".java";
+
+  private final JavaCompiler compiler;
+
+  /** Uses the compiler of the running JVM. */
+  public IncrementalCompiler() {
+    this(ToolProvider.getSystemJavaCompiler());
+  }
+
+  /**
+   * @param compiler Java compiler, null if none is available.
+   */
+  IncrementalCompiler(JavaCompiler compiler) {
+    this.compiler = compiler;
+  }
+
+  /**
+   * @return whether a Java compiler is available, i.e. the JVM isn't a bare runtime.
+   */
+  public boolean isAvailable() {
+    return compiler != null;
+  }
+
+  /**
+   * Compiles the changed sources of an output directory and the sources depending on them.
+   *
+   * @param unit sources and output directory.
+   * @param changedSources changed or added sources, relative to their source root.
+   * @param deletedSources deleted sources, relative to their source root.
+   * @param upstreamClasses changed classes of another output directory of the class path, e.g. the
+   *     production classes for the test classes. Their dependents are compiled too.
+   * @return what was compiled or why the result can't be trusted.
+   * @throws IOException if the output directory can't be read or updated.
+   */
+  public Outcome compile(
+      Unit unit,
+      Collection<String> changedSources,
+      Collection<String> deletedSources,
+      Collection<String> upstreamClasses)
+      throws IOException {
+    if (!isAvailable()) {
+      return Outcome.untrusted("no Java compiler in the running JVM");
+    }
+    BytecodeIndex index = BytecodeIndex.scan(unit.outputDirectory);
+    Set<String> sources = new TreeSet<>(changedSources);
+    sources.addAll(staleSources(unit, index));
+    if (index.getClasses().isEmpty() && !sources.isEmpty()) {
+      return Outcome.untrusted(String.format("'%s' wasn't compiled yet", unit.outputDirectory));
+    }
+    Set<String> changedClasses = new TreeSet<>();
+    List<String> changedAndDeleted = new ArrayList<>(sources);
+    changedAndDeleted.addAll(deletedSources);
+    for (String sourcePath : changedAndDeleted) {
+      if (!sourcePath.endsWith(JAVA)) {
+        return Outcome.untrusted(String.format("'%s' isn't a Java source", sourcePath));
+      }
+      for (BytecodeIndex.ClassInfo info : compiledFrom(index, sourcePath)) {
+        if (info.hasConstants()) {
+          return Outcome.untrusted(
+              String.format(
+                  "'%s' declares constants its dependents may have copied", info.getName()));
+        }
+        changedClasses.add(info.getName());
+      }
+    }
+    Set<String> changedTypes = new HashSet<>(changedClasses);
+    changedTypes.addAll(upstreamClasses);
+    for (BytecodeIndex.ClassInfo info : index.getClasses()) {
+      if (changedClasses.contains(info.getName())
+          || info.getTypes().stream().noneMatch(changedTypes::contains)) {
+        continue;
+      }
+      if (info.getSourcePath() == null) {
+        return Outcome.untrusted(String.format("the source of '%s' isn't known", info.getName()));
+      }
+      sources.add(info.getSourcePath());
+    }
+    sources.removeAll(deletedSources);
+    List<File> files = new ArrayList<>();
+    for (String sourcePath : sources) {
+      Path file = unit.find(sourcePath);
+      if (file == null) {
+        return Outcome.untrusted(String.format("source '%s' not found", sourcePath));
+      }
+      files.add(file.toFile());
+    }
+    // Callers of the subclasses of a changed class don't name it, so they are stale if its API
+    // changed, e.g. an inherited method is gone
+    Map<String, String> apis = new HashMap<>();
+    for (String className : changedClasses) {
+      Path classFile = unit.classFile(className);
+      if (Files.isRegularFile(classFile)) {
+        apis.put(className, apiOf(Files.readAllBytes(classFile)));
+      }
+    }
+    // Nested classes removed from a source must not survive
+    for (String sourcePath : changedAndDeleted) {
+      deleteClasses(unit, index, sourcePath);
+    }
+    for (String sourcePath : sources) {
+      deleteClasses(unit, index, sourcePath);
+    }
+    if (!files.isEmpty()) {
+      String error = run(unit, files);
+      if (error != null) {
+        return Outcome.untrusted("compilation failed: " + error);
+      }
+    }
+    for (Map.Entry<String, String> api : apis.entrySet()) {
+      Path classFile = unit.classFile(api.getKey());
+      // Removed classes fail the compilation of the classes naming them
+      if (Files.isRegularFile(classFile)
+          && !api.getValue().equals(apiOf(Files.readAllBytes(classFile)))) {
+        return Outcome.untrusted(
+            String.format(
+                "the API of '%s' changed, its indirect users may be stale", api.getKey()));
+      }
+    }
+    return new Outcome(null, files, changedClasses);
+  }
+
+  /**
+   * @param bytes class file contents.
+   * @return the non private signatures of the class, its fields and methods, what other classes are
+   *     compiled against.
+   */
+  static String apiOf(byte[] bytes) {
+    List<String> members = new ArrayList<>();
+    StringBuilder header = new StringBuilder();
+    new ClassReader(bytes)
+        .accept(
+            new ClassVisitor(Opcodes.ASM9) {
+              @Override
+              public void visit(
+                  int version,
+                  int access,
+                  String name,
+                  String signature,
+                  String superName,
+                  String[] interfaces) {
+                header
+                    .append(access & ~Opcodes.ACC_SUPER)
+                    .append(' ')
+                    .append(signature)
+                    .append(' ')
+                    .append(superName)
+                    .append(' ')
+                    .append(Arrays.toString(interfaces));
+              }
+
+              @Override
+              public FieldVisitor visitField(
+                  int access, String name, String descriptor, String signature, Object value) {
+                if ((access & Opcodes.ACC_PRIVATE) == 0) {
+                  members.add(
+                      String.format(
+                          "field %d %s %s %s %s", access, name, descriptor, signature, value));
+                }
+                return null;
+              }
+
+              @Override
+              public MethodVisitor visitMethod(
+                  int access,
+                  String name,
+                  String descriptor,
+                  String signature,
+                  String[] exceptions) {
+                if ((access & Opcodes.ACC_PRIVATE) == 0) {
+                  members.add(
+                      String.format(
+                          "method %d %s %s %s %s",
+                          access, name, descriptor, signature, Arrays.toString(exceptions)));
+                }
+                return null;
+              }
+            },
+            ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    Collections.sort(members);
+    return header + "\n" + String.join("\n", members);
+  }
+
+  /**
+   * @return the Java sources of the unit newer than their classes or without any.
+   */
+  private static Set<String> staleSources(Unit unit, BytecodeIndex index) throws IOException {
+    Set<String> stale = new TreeSet<>();
+    for (Path root : unit.sourceRoots) {
+      if (!Files.isDirectory(root)) {
+        continue;
+      }
+      List<Path> files;
+      try (Stream<Path> walk = Files.walk(root)) {
+        files =
+            walk.filter(p -> p.getFileName().toString().endsWith(JAVA))
+                .filter(Files::isRegularFile)
+                .collect(Collectors.toList());
+      }
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+        if (fileName.equals("package-info.java") || fileName.equals("module-info.java")) {
+          continue;
+        }
+        String sourcePath =
+            root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+        List<BytecodeIndex.ClassInfo> classes = compiledFrom(index, sourcePath);
+        long modified = Files.getLastModifiedTime(file).toMillis();
+        if (classes.isEmpty()) {
+          stale.add(sourcePath);
+        }
+        for (BytecodeIndex.ClassInfo info : classes) {
+          Path classFile = unit.classFile(info.getName());
+          if (!Files.isRegularFile(classFile)
+              || Files.getLastModifiedTime(classFile).toMillis() < modified) {
+            stale.add(sourcePath);
+            break;
+          }
+        }
+      }
+    }
+    return stale;
+  }
+
+  /**
+   * @return the classes whose recorded source path is exactly the given one.
+   */
+  private static List<BytecodeIndex.ClassInfo> compiledFrom(
+      BytecodeIndex index, String sourcePath) {
+    List<BytecodeIndex.ClassInfo> classes = new ArrayList<>();
+    for (String className : index.classesCompiledFrom(sourcePath)) {
+      BytecodeIndex.ClassInfo info = index.get(className);
+      // Not a class of another package with the same file name
+      if (info != null && sourcePath.equals(info.getSourcePath())) {
+        classes.add(info);
+      }
+    }
+    return classes;
+  }
+
+  private static void deleteClasses(Unit unit, BytecodeIndex index, String sourcePath)
+      throws IOException {
+    for (BytecodeIndex.ClassInfo info : compiledFrom(index, sourcePath)) {
+      Files.deleteIfExists(unit.classFile(info.getName()));
+    }
+  }
+
+  /**
+   * @return the first error or null if the sources compiled.
+   */
+  private String run(Unit unit, List<File> files) throws IOException {
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    List<String> arguments = new ArrayList<>(unit.options);
+    List<String> classpath = new ArrayList<>();
+    classpath.add(unit.outputDirectory.toString());
+    classpath.addAll(unit.classpath);
+    arguments.add("-d");
+    arguments.add(unit.outputDirectory.toString());
+    arguments.add("-classpath");
+    arguments.add(String.join(File.pathSeparator, classpath));
+    // Only the given sources, everything else comes from the class path
+    arguments.add("-implicit:none");
+    arguments.add("-sourcepath");
+    arguments.add("");
+    boolean success;
+    try (StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, null, null)) {
+      success =
+          compiler
+              .getTask(
+                  null,
+                  fileManager,
+                  diagnostics,
+                  arguments,
+                  null,
+                  fileManager.getJavaFileObjectsFromFiles(files))
+              .call();
+    }
+    if (success) {
+      return null;
+    }
+    return diagnostics.getDiagnostics().stream()
+        .filter(d -> d.getKind() == Diagnostic.Kind.ERROR)
+        .map(
+            d ->
+                (d.getSource() == null ? "" : d.getSource().getName() + ":" + d.getLineNumber())
+                    + " "
+                    + d.getMessage(null))
+        .findFirst()
+        .orElse("unknown error");
+  }
+
+  /** Sources compiled into an output directory, with the options to compile them. */
+  public static final class Unit {
+    private final List<Path> sourceRoots;
+    private final Path outputDirectory;
+    private final List<String> classpath;
+    private final List<String> options;
+
+    /**
+     * @param sourceRoots source roots of the output directory.
+     * @param outputDirectory class output directory.
+     * @param classpath compile class path, besides the output directory.
+     * @param options compiler options, such as the release and the encoding.
+     */
+    public Unit(
+        List<Path> sourceRoots,
+        Path outputDirectory,
+        List<String> classpath,
+        List<String> options) {
+      this.sourceRoots = sourceRoots;
+      this.outputDirectory = outputDirectory;
+      this.classpath = classpath;
+      this.options = options;
+    }
+
+    private Path find(String sourcePath) {
+      for (Path root : sourceRoots) {
+        Path file = root.resolve(sourcePath);
+        if (Files.isRegularFile(file)) {
+          return file;
+        }
+      }
+      return null;
+    }
+
+    private Path classFile(String className) {
+      return outputDirectory.resolve(className.replace('.', '/') + ".class");
+    }
+  }
+
+  /** What an incremental compilation did. */
+  public static final class Outcome {
+    private final String untrustedReason;
+    private final List<File> compiled;
+    private final Set<String> changedClasses;
+
+    private Outcome(String untrustedReason, List<File> compiled, Set<String> changedClasses) {
+      this.untrustedReason = untrustedReason;
+      this.compiled = compiled;
+      this.changedClasses = changedClasses;
+    }
+
+    private static Outcome untrusted(String reason) {
+      return new Outcome(reason, Collections.emptyList(), Collections.emptySet());
+    }
+
+    /**
+     * @return whether the output directory is up to date.
+     */
+    public boolean isTrusted() {
+      return untrustedReason == null;
+    }
+
+    /**
+     * @return why a full build is needed, null if the output directory is up to date.
+     */
+    public String getUntrustedReason() {
+      return untrustedReason;
+    }
+
+    /**
+     * @return the compiled sources.
+     */
+    public List<File> getCompiled() {
+      return Collections.unmodifiableList(compiled);
+    }
+
+    /**
+     * @return the classes of the changed or deleted sources, as they were before.
+     */
+    public Set<String> getChangedClasses() {
+      return Collections.unmodifiableSet(changedClasses);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact copy of the test class index of a module as of a commit: the source of each class and
+ * the edges of its impact graph. Written after every selection, so the classes which depended on
+ * a deleted class can still be found once the class is gone.
+ */
+public final class IndexSnapshot {
+  private static final int MAGIC = 0x54434953; // TCIS
+  private static final int VERSION = 1;
+
+  private final String commit;
+  private final Map<String, String> sourcePaths = new TreeMap<>();
+  private final Map<String, List<String>> dependencies = new TreeMap<>();
+
+  private IndexSnapshot(String commit) {
+    this.commit = commit;
+  }
+
+  /**
+   * @param index test class index.
+   * @param commit commit the classes were compiled from.
+   * @return the snapshot of the index.
+   */
+  public static IndexSnapshot of(BytecodeIndex index, String commit) {
+    IndexSnapshot snapshot = new IndexSnapshot(commit);
+    for (BytecodeIndex.ClassInfo info : index.getClasses()) {
+      snapshot.dependencies.put(
+          info.getName(), new ArrayList<>(index.impactDependencies(info.getName())));
+      if (info.getSourcePath() != null) {
+        snapshot.sourcePaths.put(info.getName(), info.getSourcePath());
+      }
+    }
+    return snapshot;
+  }
+
+  /**
+   * @return the commit the classes were compiled from.
+   */
+  public String getCommit() {
+    return commit;
+  }
+
+  /**
+   * @param sourcePath path of the source file relative to its source root.
+   * @return the classes compiled from it.
+   */
+  public List<String> classesCompiledFrom(String sourcePath) {
+    List<String> compiled = new ArrayList<>();
+    for (Map.Entry<String, String> entry : sourcePaths.entrySet()) {
+      if (entry.getValue().equals(sourcePath)) {
+        compiled.add(entry.getKey());
+      }
+    }
+    return compiled;
+  }
+
+  /**
+   * Finds the classes which depended, directly or not, on some classes or their nested classes.
+   *
+   * @param classNames binary names of the classes, indexed or not.
+   * @return the indexed dependents, without the classes themselves.
+   */
+  public Set<String> dependentsOf(Collection<String> classNames) {
+    TypeGraph.Builder builder = TypeGraph.builder();
+    for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+      builder.intern(entry.getKey());
+      for (String dependency : entry.getValue()) {
+        builder.addEdge(entry.getKey(), dependency);
+      }
+    }
+    TypeGraph graph = builder.build();
+    BitSet seeds = new BitSet(graph.size());
+    for (int id = 0; id < graph.size(); id++) {
+      String name = graph.nameOf(id);
+      for (String className : classNames) {
+        if (name.equals(className) || name.startsWith(className + "$")) {
+          seeds.set(id);
+        }
+      }
+    }
+    BitSet impacted = graph.descendants(seeds);
+    impacted.andNot(seeds);
+    Set<String> dependents = new TreeSet<>();
+    for (int id = impacted.nextSetBit(0); id >= 0; id = impacted.nextSetBit(id + 1)) {
+      if (dependencies.containsKey(graph.nameOf(id))) {
+        dependents.add(graph.nameOf(id));
+      }
+    }
+    return dependents;
+  }
+
+  /**
+   * Loads a snapshot from disk.
+   *
+   * @param file snapshot file.
+   * @return the snapshot or null if the file doesn't exist.
+   * @throws IOException if the file can't be read or isn't a snapshot.
+   */
+  public static IndexSnapshot read(File file) throws IOException {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()))))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException(String.format("'%s' is not an index snapshot!", file));
+      }
+      IndexSnapshot snapshot = new IndexSnapshot(in.readUTF());
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String name = in.readUTF();
+        String sourcePath = in.readUTF();
+        if (!sourcePath.isEmpty()) {
+          snapshot.sourcePaths.put(name, sourcePath);
+        }
+        List<String> edges = new ArrayList<>();
+        int edgeCount = in.readInt();
+        for (int e = 0; e < edgeCount; e++) {
+          edges.add(in.readUTF());
+        }
+        snapshot.dependencies.put(name, edges);
+      }
+      return snapshot;
+    }
+  }
+
+  /**
+   * Stores this snapshot on disk.
+   *
+   * @param file snapshot file.
+   * @throws IOException if the file can't be written.
+   */
+  public void write(File file) throws IOException {
+    if (file.getParentFile() != null) {
+      Files.createDirectories(file.getParentFile().toPath());
+    }
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file.toPath()))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(commit);
+      out.writeInt(dependencies.size());
+      for (Map.Entry<String, List<String>> entry : dependencies.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeUTF(sourcePaths.getOrDefault(entry.getKey(), ""));
+        out.writeInt(entry.getValue().size());
+        for (String dependency : entry.getValue()) {
+          out.writeUTF(dependency);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the names of the classes in the snapshot.
+   */
+  public Set<String> getClassNames() {
+    return Collections.unmodifiableSet(dependencies.keySet());
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.SessionData;
+
+/**
+ * Bytes of the class files read from jars, shared by the {@link ProjectClassLoaders} of every goal
+ * of a build session. The classes of a jar are dropped once its size or modification time changes,
+ * i.e. when a reactor module is packaged again. Safe for concurrent use.
+ */
+public final class JarClassCache {
+  private final Map<String, JarClasses> jars = new ConcurrentHashMap<>();
+
+  /**
+   * @param session repository session of the build.
+   * @return the cache of the build session, created on first use.
+   */
+  public static JarClassCache of(RepositorySystemSession session) {
+    SessionData data = session == null ? null : session.getData();
+    if (data == null) {
+      return new JarClassCache();
+    }
+    Object cache = data.get(JarClassCache.class);
+    if (!(cache instanceof JarClassCache)) {
+      // Set once, the first goal asking for it wins
+      data.set(JarClassCache.class, null, new JarClassCache());
+      cache = data.get(JarClassCache.class);
+    }
+    return (JarClassCache) cache;
+  }
+
+  /**
+   * @param jar a jar file.
+   * @return the cached class files of the jar by entry name, emptied first if the jar changed since
+   *     they were read.
+   */
+  public Map<String, byte[]> classesOf(File jar) {
+    long length = jar.length();
+    long modified = jar.lastModified();
+    return jars.compute(
+            jar.getAbsolutePath(),
+            (path, cached) ->
+                cached != null && cached.length == length && cached.modified == modified
+                    ? cached
+                    : new JarClasses(length, modified))
+        .classes;
+  }
+
+  /**
+   * @return the number of cached class files.
+   */
+  public int size() {
+    return jars.values().stream().mapToInt(jar -> jar.classes.size()).sum();
+  }
+
+  /** The class files read from a jar, as it was when they were read. */
+  private static final class JarClasses {
+    private final long length;
+    private final long modified;
+    private final Map<String, byte[]> classes = new ConcurrentHashMap<>();
+
+    JarClasses(long length, long modified) {
+      this.length = length;
+      this.modified = modified;
+    }
+  }
+}
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.IOException;
+
+/**
+ * Looks up the merge request of a branch on a code review server. Only created, together with the
+ * client library of the server, when the target branch isn't known otherwise.
+ */
+@FunctionalInterface
+public interface MergeRequestProvider {
+  /**
+   * @param sourceBranch branch with the changes.
+   * @return the target branch of the merge request of the branch, null if there is none.
+   * @throws IOException if the server can't be queried.
+   */
+  String findTargetBranch(String sourceBranch) throws IOException;
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.maven.project.MavenProject;
+
+/** The selection computed for a single reactor module. */
+public final class ModuleSelection {
+  private final MavenProject project;
+  private final TestSelection selection;
+  private final List<Class<?>> classes;
+
+  public ModuleSelection(MavenProject project, TestSelection selection, List<Class<?>> classes) {
+    this.project = project;
+    this.selection = selection;
+    this.classes = Collections.unmodifiableList(classes);
+  }
+
+  public MavenProject getProject() {
+    return project;
+  }
+
+  /**
+   * @return the selection with the reasons behind it.
+   */
+  public TestSelection getSelection() {
+    return selection;
+  }
+
+  /**
+   * @return the selected concrete test classes.
+   */
+  public List<Class<?>> getClasses() {
+    return classes;
+  }
+
+  /**
+   * @return the names of the selected concrete test classes.
+   */
+  public List<String> getClassNames() {
+    return classes.stream().map(Class::getName).collect(Collectors.toList());
+  }
+}
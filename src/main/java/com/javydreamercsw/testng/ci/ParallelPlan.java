@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * How to run a selection: the thread and fork counts for the classes that can run concurrently,
+ * and the classes that must run alone in a serial lane.
+ *
+ * <p>Running more classes at once than the total duration divided by the longest class doesn't
+ * finish sooner, as the longest class bounds the run. The concurrency is therefore the smallest of
+ * that ratio, the number of cores and the number of classes. Modules are tested one after the
+ * other, so the module needing the most concurrency decides it.
+ */
+public final class ParallelPlan {
+  private final int threadCount;
+  private final int forkCount;
+  private final List<String> serialClasses;
+
+  private ParallelPlan(int threadCount, int forkCount, List<String> serialClasses) {
+    this.threadCount = threadCount;
+    this.forkCount = forkCount;
+    this.serialClasses = Collections.unmodifiableList(serialClasses);
+  }
+
+  /**
+   * @param moduleEstimates estimated duration of each selected class, per module.
+   * @param singleThreaded classes which must not run concurrently with others.
+   * @param cores available cores.
+   * @param threadsPerFork most threads to run in a single forked JVM.
+   * @param minParallelMillis below this estimated module duration, running concurrently doesn't
+   *     pay off.
+   * @return the plan.
+   */
+  public static ParallelPlan plan(
+      List<Map<String, Long>> moduleEstimates,
+      Set<String> singleThreaded,
+      int cores,
+      int threadsPerFork,
+      long minParallelMillis) {
+    int concurrency = 1;
+    List<String> serial = new ArrayList<>();
+    for (Map<String, Long> estimates : moduleEstimates) {
+      long total = 0;
+      long longest = 0;
+      int classes = 0;
+      for (Map.Entry<String, Long> estimate : estimates.entrySet()) {
+        if (singleThreaded.contains(estimate.getKey())) {
+          serial.add(estimate.getKey());
+          continue;
+        }
+        total += estimate.getValue();
+        longest = Math.max(longest, estimate.getValue());
+        classes++;
+      }
+      if (classes > 1 && total >= minParallelMillis) {
+        long useful = (total + longest - 1) / Math.max(longest, 1);
+        concurrency = (int) Math.max(concurrency, Math.min(Math.min(cores, classes), useful));
+      }
+    }
+    int forks = (concurrency + threadsPerFork - 1) / threadsPerFork;
+    return new ParallelPlan((concurrency + forks - 1) / forks, forks, serial);
+  }
+
+  /**
+   * @return threads of each forked JVM.
+   */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  public int getForkCount() {
+    return forkCount;
+  }
+
+  /**
+   * @return whether classes run concurrently at all.
+   */
+  public boolean isParallel() {
+    return threadCount * forkCount > 1;
+  }
+
+  /**
+   * @return the classes to run in the serial lane.
+   */
+  public List<String> getSerialClasses() {
+    return serialClasses;
+  }
+
+  /**
+   * @return surefire properties for the concurrent classes, empty to keep the project settings.
+   */
+  public List<String> getParallelArguments() {
+    if (!isParallel()) {
+      return Collections.emptyList();
+    }
+    return Arrays.asList(
+        "-Dparallel=classes",
+        "-DthreadCount=" + threadCount,
+        "-DforkCount=" + forkCount,
+        "-DreuseForks=true");
+  }
+
+  /**
+   * @return surefire properties for the serial lane.
+   */
+  public static List<String> getSerialArguments() {
+    return Arrays.asList("-Dparallel=none", "-DthreadCount=1", "-DforkCount=1");
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d thread(s) in %d fork(s), %d class(es) in the serial lane",
+        threadCount, forkCount, serialClasses.size());
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Wall time, CPU time and counters of the stages of a mojo execution, exportable as JSON and as a
+ * Prometheus text format file. CPU time is the one of the calling thread, so it doesn't include
+ * forked processes such as git.
+ *
+ * <pre>
+ * try (PhaseMetrics.Phase phase = metrics.start("scan")) {
+ *   ...
+ * }
+ * </pre>
+ */
+public class PhaseMetrics {
+  private static final String PREFIX = "testng_ci_";
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private final Map<String, long[]> phases = new LinkedHashMap<>();
+  private final Map<String, Long> counters = new LinkedHashMap<>();
+
+  /**
+   * Starts timing a phase. Phases with the same name are accumulated.
+   *
+   * @param name phase name.
+   * @return the phase to close when it ends.
+   */
+  public Phase start(String name) {
+    return new Phase(name);
+  }
+
+  /**
+   * @param counter counter name.
+   * @param delta amount to add.
+   */
+  public synchronized void increment(String counter, long delta) {
+    counters.merge(counter, delta, Long::sum);
+  }
+
+  /**
+   * @param counter counter name.
+   * @return the counter value, 0 if never incremented.
+   */
+  public synchronized long getCounter(String counter) {
+    return counters.getOrDefault(counter, 0L);
+  }
+
+  /**
+   * @param phase phase name.
+   * @return accumulated wall time of the phase in nanoseconds, 0 if never started.
+   */
+  public synchronized long getWallNanos(String phase) {
+    long[] stats = phases.get(phase);
+    return stats == null ? 0 : stats[1];
+  }
+
+  private synchronized void record(String name, long wallNanos, long cpuNanos) {
+    long[] stats = phases.computeIfAbsent(name, k -> new long[3]);
+    stats[0]++;
+    stats[1] += wallNanos;
+    stats[2] += cpuNanos;
+  }
+
+  private static long cpuTime() {
+    return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+  }
+
+  /**
+   * Writes the metrics as JSON.
+   *
+   * @param file destination.
+   * @param labels labels describing the execution (i.e. goal and project).
+   * @throws IOException if the file can't be written.
+   */
+  public synchronized void writeJson(File file, Map<String, String> labels) throws IOException {
+    Map<String, Object> report = new LinkedHashMap<>(labels);
+    Map<String, Object> phaseReport = new LinkedHashMap<>();
+    for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+      Map<String, Object> stats = new LinkedHashMap<>();
+      stats.put("calls", phase.getValue()[0]);
+      stats.put("wallMillis", phase.getValue()[1] / 1_000_000);
+      stats.put("cpuMillis", phase.getValue()[2] / 1_000_000);
+      phaseReport.put(phase.getKey(), stats);
+    }
+    report.put("phases", phaseReport);
+    report.put("counters", counters);
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+  }
+
+  /**
+   * Writes the metrics in Prometheus text format, i.e. for the node exporter textfile collector.
+   *
+   * @param file destination.
+   * @param labels labels added to every sample.
+   * @throws IOException if the file can't be written.
+   */
+  public synchronized void writePrometheus(File file, Map<String, String> labels)
+      throws IOException {
+    StringBuilder common = new StringBuilder();
+    labels.forEach((k, v) -> common.append(k).append("=\"").append(escape(v)).append("\","));
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+      String[][] phaseMetrics = {
+        {"phase_calls_total", "counter", "Number of times a phase ran."},
+        {"phase_wall_seconds", "gauge", "Wall time spent in a phase."},
+        {"phase_cpu_seconds", "gauge", "CPU time of the mojo thread spent in a phase."}
+      };
+      for (int i = 0; i < phaseMetrics.length; i++) {
+        String metric = PREFIX + phaseMetrics[i][0];
+        writer.write(String.format("# HELP %s %s%n", metric, phaseMetrics[i][2]));
+        writer.write(String.format("# TYPE %s %s%n", metric, phaseMetrics[i][1]));
+        for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+          long value = phase.getValue()[i];
+          writer.write(
+              String.format(
+                  Locale.ROOT,
+                  "%s{%sphase=\"%s\"} %s%n",
+                  metric,
+                  common,
+                  escape(phase.getKey()),
+                  i == 0 ? Long.toString(value) : String.format(Locale.ROOT, "%.6f", value / 1e9)));
+        }
+      }
+      for (Map.Entry<String, Long> counter : counters.entrySet()) {
+        String metric = PREFIX + counter.getKey();
+        writer.write(String.format("# TYPE %s gauge%n", metric));
+        String sampleLabels =
+            common.length() == 0 ? "" : "{" + common.substring(0, common.length() - 1) + "}";
+        writer.write(String.format("%s%s %d%n", metric, sampleLabels, counter.getValue()));
+      }
+    }
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  /** A running phase. */
+  public final class Phase implements AutoCloseable {
+    private final String name;
+    private final long wallStart = System.nanoTime();
+    private final long cpuStart = cpuTime();
+
+    private Phase(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public void close() {
+      record(name, System.nanoTime() - wallStart, cpuTime() - cpuStart);
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+
+/**
+ * Computes the test selection without running it. The result is written as a {@link
+ * SelectionManifest} plus a surefire {@code includesFile}, so the execution can be fanned out to
+ * other jobs through {@code -DselectionManifest} or {@code -Dsurefire.includesFile}.
+ *
+ * <p>It runs once per reactor, with an entry and an includes file for every module.
+ *
+ * <p>Surefire falls back to its default includes when the includes file is empty, so consumers
+ * should check the manifest for an empty selection before running it.
+ */
+@Mojo(name = "plan", defaultPhase = LifecyclePhase.VERIFY, aggregator = true, threadSafe = true)
+public class PlanMojo extends AbstractSelectionMojo {
+  /**
+   * Where to write the selection manifest.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "selectionManifest",
+      defaultValue = "${project.build.directory}/testng-ci/selection-manifest.json")
+  private File selectionManifest;
+
+  /**
+   * Where to write the surefire includes file.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "includesFile",
+      defaultValue = "${project.build.directory}/testng-ci/includes.txt")
+  private File includesFile;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    try (PhaseMetrics.Phase phase = metrics.start("total")) {
+      if (executeGitHasUncommitted()) {
+        throw new MojoExecutionException("Uncommited changes detected!");
+      }
+      String targetBranch = getTargetBranch();
+      SelectionManifest manifest = new SelectionManifest();
+      manifest.setTargetBranch(targetBranch);
+      manifest.setHead(getHeadCommit());
+
+      List<FileChange> changes = getChangesFrom(targetBranch);
+      List<ModuleSelection> selections =
+          changes.isEmpty() ? Collections.emptyList() : computeSelection(targetBranch, changes);
+      if (selections == null) {
+        throw new MojoFailureException("Unable to compute the selection!");
+      }
+      Map<MavenProject, ModuleSelection> byModule = new HashMap<>();
+      for (ModuleSelection selection : selections) {
+        byModule.put(selection.getProject(), selection);
+        if (selection.getSelection().isFullRun() && !manifest.isFullRun()) {
+          manifest.setFullRun(true);
+          manifest.setFullRunReason(selection.getSelection().getFullRunReason());
+        }
+      }
+      int planned = 0;
+      for (MavenProject moduleProject : mavenSession.getProjects()) {
+        File moduleIncludesFile = moduleFile(includesFile, moduleProject);
+        SelectionManifest.Module module = new SelectionManifest.Module();
+        module.setGroupId(moduleProject.getGroupId());
+        module.setArtifactId(moduleProject.getArtifactId());
+        module.setBaseDir(
+            toUnixPath(
+                Paths.get(mavenSession.getExecutionRootDirectory())
+                    .relativize(moduleProject.getBasedir().toPath().toAbsolutePath())
+                    .toString()));
+        module.setIncludesFile(
+            toUnixPath(
+                moduleProject
+                    .getBasedir()
+                    .toPath()
+                    .relativize(moduleIncludesFile.toPath())
+                    .toString()));
+        manifest.getModules().add(module);
+        ModuleSelection selection = byModule.get(moduleProject);
+        if (selection != null) {
+          TestDurationHistory history = readDurationHistory(moduleProject);
+          for (Class<?> c : selection.getClasses()) {
+            SelectionManifest.Test test = new SelectionManifest.Test();
+            test.setClassName(c.getName());
+            test.setReasons(selection.getSelection().getTests().get(c.getName()));
+            test.setEstimatedMillis(history.estimateMillis(c.getName()));
+            module.getTests().add(test);
+            module.setEstimatedMillis(module.getEstimatedMillis() + test.getEstimatedMillis());
+          }
+          manifest.setEstimatedMillis(manifest.getEstimatedMillis() + module.getEstimatedMillis());
+        }
+        writeIncludesFile(
+            selection == null ? Collections.emptyList() : selection.getClassNames(),
+            moduleIncludesFile);
+        planned += module.getTests().size();
+      }
+      manifest.write(selectionManifest);
+      getLog()
+          .info(
+              String.format(
+                  "Planned %d test class(es), estimated %d ms, in '%s'.",
+                  planned, manifest.getEstimatedMillis(), selectionManifest));
+    } catch (IOException | CommandLineException ex) {
+      throw new MojoExecutionException("Unable to plan the test selection!", ex);
+    } finally {
+      writeMetrics("plan");
+    }
+  }
+
+  private static String toUnixPath(String path) {
+    String unix = path.replace(File.separatorChar, '/');
+    return unix.isEmpty() ? "." : unix;
+  }
+}
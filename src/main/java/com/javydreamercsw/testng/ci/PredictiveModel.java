@@ -0,0 +1,421 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.errors.IncorrectObjectTypeException;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.revwalk.filter.CommitTimeRevFilter;
+import org.eclipse.jgit.revwalk.filter.RevFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+/**
+ * History of a repository predicting which selected test classes are likely to matter for a change
+ * set: how often the source of each test changed together with each changed file, mined from the
+ * git history, and how often each test class failed, taken from surefire reports. Mining is
+ * incremental, only the commits of the target branch since the last mined ones are read. Paths are
+ * stored once, the co-change counts refer to them by id.
+ */
+public final class PredictiveModel {
+  private static final int MAGIC = 0x54435050; // TCPP
+  private static final int VERSION = 2;
+  /** Commits touching more files, e.g. reformats, say nothing about the files they touch. */
+  static final int MAX_FILES_PER_COMMIT = 50;
+  /** Most target branches remembered, the ones mined longest ago are forgotten first. */
+  private static final int MAX_MINED_HEADS = 32;
+
+  private String lastCommit = "";
+  /** Heads whose history is mined, the oldest first. */
+  private final Set<String> minedHeads = new LinkedHashSet<>();
+  /** Commit time, in seconds, of the newest mined commit. */
+  private long lastCommitSeconds;
+
+  private long lastReportMillis;
+  private final List<String> paths = new ArrayList<>();
+  private final Map<String, Integer> ids = new HashMap<>();
+  private int[] commits = new int[64];
+  /** Co-change count of each pair of path ids, the smaller id in the high bits. */
+  private final Map<Long, Integer> pairs = new HashMap<>();
+  /** Runs and failures of each test class. */
+  private final Map<String, int[]> results = new TreeMap<>();
+
+  /**
+   * Reads the commits of the target branch not mined yet, newest first, up to its merge base with
+   * the current branch: the commits of the current branch aren't merged, so they aren't history
+   * yet. The model remembers the heads it mined, so switching between target branches doesn't mine
+   * their shared history twice. When the mined heads are gone, e.g. after a force push, only the
+   * commits newer than the last mined one are read.
+   *
+   * @param repository git repository.
+   * @param targetBranch branch the changes are compared with.
+   * @param maxCommits most commits to read.
+   * @return the number of mined commits.
+   * @throws IOException if the repository can't be read.
+   */
+  public int mine(Repository repository, String targetBranch, int maxCommits) throws IOException {
+    int mined = 0;
+    try (RevWalk walk = new RevWalk(repository);
+        DiffFormatter diff = new DiffFormatter(DisabledOutputStream.INSTANCE)) {
+      diff.setRepository(repository);
+      RevCommit tip = mergeBase(repository, walk, targetBranch);
+      if (tip == null || minedHeads.contains(tip.name())) {
+        return 0;
+      }
+      walk.markStart(tip);
+      boolean known = false;
+      for (String head : minedHeads) {
+        try {
+          walk.markUninteresting(walk.parseCommit(ObjectId.fromString(head)));
+          known = true;
+        } catch (MissingObjectException | IncorrectObjectTypeException ex) {
+          // Rewritten away
+        }
+      }
+      if (!known && lastCommitSeconds > 0) {
+        walk.setRevFilter(CommitTimeRevFilter.after((lastCommitSeconds + 1) * 1000L));
+      }
+      for (RevCommit commit : walk) {
+        if (mined >= maxCommits) {
+          break;
+        }
+        lastCommitSeconds = Math.max(lastCommitSeconds, commit.getCommitTime());
+        // Merges repeat the changes of the merged commits
+        if (commit.getParentCount() > 1) {
+          continue;
+        }
+        RevTree parent =
+            commit.getParentCount() == 0 ? null : walk.parseCommit(commit.getParent(0)).getTree();
+        List<String> changed = new ArrayList<>();
+        for (DiffEntry entry : diff.scan(parent, commit.getTree())) {
+          changed.add(
+              entry.getChangeType() == DiffEntry.ChangeType.DELETE
+                  ? entry.getOldPath()
+                  : entry.getNewPath());
+        }
+        addCommit(changed);
+        mined++;
+      }
+      addMinedHead(walk, tip);
+    }
+    return mined;
+  }
+
+  /**
+   * @return the merge base of the current branch and the target branch, the head of the target
+   *     branch if they share no history, null if either can't be resolved.
+   */
+  private static RevCommit mergeBase(Repository repository, RevWalk walk, String targetBranch)
+      throws IOException {
+    ObjectId head = repository.resolve(Constants.HEAD);
+    ObjectId target = repository.resolve(targetBranch);
+    if (head == null || target == null) {
+      return null;
+    }
+    walk.setRevFilter(RevFilter.MERGE_BASE);
+    walk.markStart(walk.parseCommit(head));
+    walk.markStart(walk.parseCommit(target));
+    RevCommit base = walk.next();
+    walk.reset();
+    walk.setRevFilter(RevFilter.ALL);
+    return base == null ? walk.parseCommit(target) : base;
+  }
+
+  /** Records a mined head, forgetting the heads it includes and the ones no longer there. */
+  private void addMinedHead(RevWalk walk, RevCommit tip) throws IOException {
+    Set<String> heads = new LinkedHashSet<>();
+    for (String head : minedHeads) {
+      walk.reset();
+      try {
+        if (!walk.isMergedInto(walk.parseCommit(ObjectId.fromString(head)), tip)) {
+          heads.add(head);
+        }
+      } catch (MissingObjectException | IncorrectObjectTypeException ex) {
+        // Rewritten away
+      }
+    }
+    heads.add(tip.name());
+    minedHeads.clear();
+    minedHeads.addAll(heads);
+    while (minedHeads.size() > MAX_MINED_HEADS) {
+      minedHeads.remove(minedHeads.iterator().next());
+    }
+    lastCommit = tip.name();
+  }
+
+  /**
+   * Records the files changed together by a commit.
+   *
+   * @param changed paths of the changed files, relative to the repository root.
+   */
+  void addCommit(Collection<String> changed) {
+    Set<String> unique = new LinkedHashSet<>(changed);
+    if (unique.size() > MAX_FILES_PER_COMMIT) {
+      // Counted without pairs, it would lower the co-change of every file it touches
+      return;
+    }
+    int[] commitIds = new int[unique.size()];
+    int i = 0;
+    for (String path : unique) {
+      int id = idOf(path);
+      commits[id]++;
+      commitIds[i++] = id;
+    }
+    for (int a = 0; a < commitIds.length; a++) {
+      for (int b = a + 1; b < commitIds.length; b++) {
+        pairs.merge(pairKey(commitIds[a], commitIds[b]), 1, Integer::sum);
+      }
+    }
+  }
+
+  private int idOf(String path) {
+    Integer id = ids.get(path);
+    if (id == null) {
+      id = paths.size();
+      paths.add(path);
+      ids.put(path, id);
+      if (id == commits.length) {
+        commits = Arrays.copyOf(commits, commits.length * 2);
+      }
+    }
+    return id;
+  }
+
+  private static long pairKey(int a, int b) {
+    return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+  }
+
+  /**
+   * Counts the runs and failures of the surefire reports written since the last recorded ones.
+   *
+   * @param histories reports of every module.
+   * @return the number of recorded runs.
+   */
+  public int recordResults(Collection<TestDurationHistory> histories) {
+    long since = lastReportMillis;
+    int recorded = 0;
+    for (TestDurationHistory history : histories) {
+      for (Map.Entry<String, Long> report : history.getReportTimes().entrySet()) {
+        if (report.getValue() <= since) {
+          continue;
+        }
+        int[] counts = results.computeIfAbsent(report.getKey(), k -> new int[2]);
+        counts[0]++;
+        if (history.hasFailed(report.getKey())) {
+          counts[1]++;
+        }
+        lastReportMillis = Math.max(lastReportMillis, report.getValue());
+        recorded++;
+      }
+    }
+    return recorded;
+  }
+
+  /**
+   * @param path file path, relative to the repository root.
+   * @return whether the file changed in a mined commit.
+   */
+  public boolean knows(String path) {
+    return ids.containsKey(path);
+  }
+
+  /**
+   * @param testPath source of the test class, relative to the repository root.
+   * @param changedPaths changed files, relative to the repository root.
+   * @return the highest share of the commits of a changed file which also changed the test.
+   */
+  public double coChange(String testPath, Collection<String> changedPaths) {
+    Integer test = ids.get(testPath);
+    double best = 0;
+    if (test == null) {
+      return best;
+    }
+    for (String path : changedPaths) {
+      Integer id = ids.get(path);
+      if (id != null && !id.equals(test) && commits[id] > 0) {
+        best = Math.max(best, pairs.getOrDefault(pairKey(id, test), 0) / (double) commits[id]);
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @param className test class name.
+   * @return the share of the recorded runs of the class which failed, 0 if never recorded.
+   */
+  public double failureRate(String className) {
+    int[] counts = results.get(className);
+    return counts == null || counts[0] == 0 ? 0 : counts[1] / (double) counts[0];
+  }
+
+  /**
+   * @param testPath source of the test class, relative to the repository root.
+   * @param className test class name.
+   * @param changedPaths changed files, relative to the repository root.
+   * @return the likelihood, between 0 and 1, that the test class matters for the changes: the
+   *     chance of either its co-change with them or its failure rate.
+   */
+  public double score(String testPath, String className, Collection<String> changedPaths) {
+    return 1 - (1 - coChange(testPath, changedPaths)) * (1 - failureRate(className));
+  }
+
+  /**
+   * Names the directory of the model of a repository, so fresh checkouts of the same repository,
+   * anywhere, share it.
+   *
+   * @param repository git repository.
+   * @return the name of the work tree and a hash of the {@code origin} remote URL, or of the work
+   *     tree location without one.
+   */
+  public static String repositoryKey(Repository repository) {
+    File workTree = repository.getWorkTree().getAbsoluteFile();
+    String origin =
+        repository
+            .getConfig()
+            .getString(ConfigConstants.CONFIG_REMOTE_SECTION, Constants.DEFAULT_REMOTE_NAME, "url");
+    String identity = origin == null ? workTree.getPath() : origin;
+    byte[] hash;
+    try {
+      hash = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+    StringBuilder key = new StringBuilder(workTree.getName().replaceAll("[^\\w.-]", "_"));
+    key.append('-');
+    for (int i = 0; i < 6; i++) {
+      key.append(String.format("%02x", hash[i]));
+    }
+    return key.toString();
+  }
+
+  /**
+   * @return the last mined head, empty if none.
+   */
+  public String getLastCommit() {
+    return lastCommit;
+  }
+
+  /**
+   * Loads a model from disk.
+   *
+   * @param file model file.
+   * @return the model, empty if the file doesn't exist or is of another format version.
+   * @throws IOException if the file can't be read or isn't a model.
+   */
+  public static PredictiveModel read(File file) throws IOException {
+    PredictiveModel model = new PredictiveModel();
+    if (!file.isFile()) {
+      return model;
+    }
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file.toPath()))))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException(String.format("'%s' is not a predictive model!", file));
+      }
+      if (in.readInt() != VERSION) {
+        // Mined again with the current format
+        return model;
+      }
+      model.lastCommit = in.readUTF();
+      model.lastCommitSeconds = in.readLong();
+      int headCount = in.readInt();
+      for (int i = 0; i < headCount; i++) {
+        model.minedHeads.add(in.readUTF());
+      }
+      model.lastReportMillis = in.readLong();
+      int pathCount = in.readInt();
+      model.commits = new int[Math.max(pathCount, 64)];
+      for (int id = 0; id < pathCount; id++) {
+        String path = in.readUTF();
+        model.paths.add(path);
+        model.ids.put(path, id);
+        model.commits[id] = in.readInt();
+      }
+      int pairCount = in.readInt();
+      for (int i = 0; i < pairCount; i++) {
+        model.pairs.put(pairKey(in.readInt(), in.readInt()), in.readInt());
+      }
+      int resultCount = in.readInt();
+      for (int i = 0; i < resultCount; i++) {
+        model.results.put(in.readUTF(), new int[] {in.readInt(), in.readInt()});
+      }
+    }
+    return model;
+  }
+
+  /**
+   * Stores this model on disk.
+   *
+   * @param file model file.
+   * @throws IOException if the file can't be written.
+   */
+  public void write(File file) throws IOException {
+    if (file.getParentFile() != null) {
+      Files.createDirectories(file.getParentFile().toPath());
+    }
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file.toPath()))))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeUTF(lastCommit);
+      out.writeLong(lastCommitSeconds);
+      out.writeInt(minedHeads.size());
+      for (String head : minedHeads) {
+        out.writeUTF(head);
+      }
+      out.writeLong(lastReportMillis);
+      out.writeInt(paths.size());
+      for (int id = 0; id < paths.size(); id++) {
+        out.writeUTF(paths.get(id));
+        out.writeInt(commits[id]);
+      }
+      out.writeInt(pairs.size());
+      for (Map.Entry<Long, Integer> pair : pairs.entrySet()) {
+        out.writeInt((int) (pair.getKey() >>> 32));
+        out.writeInt(pair.getKey().intValue());
+        out.writeInt(pair.getValue());
+      }
+      out.writeInt(results.size());
+      for (Map.Entry<String, int[]> result : results.entrySet()) {
+        out.writeUTF(result.getKey());
+        out.writeInt(result.getValue()[0]);
+        out.writeInt(result.getValue()[1]);
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSigner;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Creates one class loader per project over its test class path and closes them all at once. The
+ * bytes of classes read from jars are cached in a {@link JarClassCache} and shared between the
+ * loaders, as reactor modules mostly depend on the same jars, and with the loaders of the later
+ * goals of the build when the cache is the session one. Safe for concurrent use.
+ */
+public class ProjectClassLoaders implements AutoCloseable {
+  /** Computes the test class path of a project. */
+  @FunctionalInterface
+  public interface ClasspathResolver {
+    /**
+     * @param project a project.
+     * @return its test class path, in order.
+     * @throws DependencyResolutionException if the dependencies can't be resolved.
+     */
+    List<String> resolve(MavenProject project) throws DependencyResolutionException;
+  }
+
+  private final ClassLoader parent;
+  private final ClasspathResolver resolver;
+  private final Map<MavenProject, ProjectClassLoader> loaders = new ConcurrentHashMap<>();
+  private final JarClassCache cache;
+  private final Map<String, Map<String, byte[]>> jarClasses = new ConcurrentHashMap<>();
+  private final Map<String, JarFile> jars = new ConcurrentHashMap<>();
+  private volatile boolean closed;
+
+  /**
+   * @param parent parent of the created class loaders.
+   * @param resolver computes the test class path of the projects, as the project one isn't resolved
+   *     for goals running before the module lifecycles.
+   */
+  public ProjectClassLoaders(ClassLoader parent, ClasspathResolver resolver) {
+    this(parent, resolver, new JarClassCache());
+  }
+
+  /**
+   * @param parent parent of the created class loaders.
+   * @param resolver computes the test class path of the projects.
+   * @param cache class files read from jars, i.e. the one of the build session.
+   */
+  public ProjectClassLoaders(ClassLoader parent, ClasspathResolver resolver, JarClassCache cache) {
+    this.parent = parent;
+    this.resolver = resolver;
+    this.cache = cache;
+  }
+
+  /**
+   * @param project a project.
+   * @return the class loader of the project, created on first use.
+   * @throws DependencyResolutionException if the test dependencies can't be resolved.
+   * @throws IllegalStateException if already closed.
+   */
+  public ClassLoader get(MavenProject project) throws DependencyResolutionException {
+    ProjectClassLoader loader = loaders.get(project);
+    if (loader == null) {
+      List<String> elements = resolver.resolve(project);
+      URL[] urls = new URL[elements.size()];
+      try {
+        for (int i = 0; i < urls.length; i++) {
+          urls[i] = new File(elements.get(i)).toURI().toURL();
+        }
+      } catch (MalformedURLException ex) {
+        throw new IllegalArgumentException(ex);
+      }
+      synchronized (this) {
+        if (closed) {
+          throw new IllegalStateException("Class loaders already closed!");
+        }
+        loader = loaders.computeIfAbsent(project, p -> new ProjectClassLoader(urls, this));
+      }
+    }
+    return loader;
+  }
+
+  private byte[] readClass(String jarPath, String entryName) throws IOException {
+    // The jar is checked for changes once per set of loaders
+    Map<String, byte[]> classes =
+        jarClasses.computeIfAbsent(jarPath, path -> cache.classesOf(new File(path)));
+    byte[] bytes = classes.get(entryName);
+    if (bytes == null) {
+      JarFile jar = jar(jarPath);
+      JarEntry entry = jar.getJarEntry(entryName);
+      if (entry == null) {
+        throw new IOException(String.format("'%s' not found in '%s'!", entryName, jarPath));
+      }
+      try (InputStream in = jar.getInputStream(entry)) {
+        bytes = in.readAllBytes();
+      }
+      classes.putIfAbsent(entryName, bytes);
+    }
+    return bytes;
+  }
+
+  private synchronized JarFile jar(String path) throws IOException {
+    if (closed) {
+      throw new IOException("Class loaders already closed!");
+    }
+    JarFile jar = jars.get(path);
+    if (jar == null) {
+      jar = new JarFile(path);
+      jars.put(path, jar);
+    }
+    return jar;
+  }
+
+  /**
+   * @return the number of cached class files.
+   */
+  public int getCachedClasses() {
+    return cache.size();
+  }
+
+  /**
+   * Closes every class loader and jar. Classes already loaded stay usable, new ones can't be
+   * loaded. The cached class files are kept for the next loaders sharing the cache.
+   *
+   * @throws IOException if something couldn't be closed, after closing everything else.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    List<AutoCloseable> closeables = new ArrayList<>(loaders.values());
+    closeables.addAll(jars.values());
+    loaders.clear();
+    jars.clear();
+    jarClasses.clear();
+    IOException failure = null;
+    for (AutoCloseable closeable : closeables) {
+      try {
+        closeable.close();
+      } catch (Exception ex) {
+        if (failure == null) {
+          failure = new IOException("Unable to close the project class loaders!", ex);
+        } else {
+          failure.addSuppressed(ex);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /** Class loader of a project, defining the classes in jars from the shared cache. */
+  private static final class ProjectClassLoader extends URLClassLoader {
+    static {
+      registerAsParallelCapable();
+    }
+
+    private final ProjectClassLoaders owner;
+
+    ProjectClassLoader(URL[] urls, ProjectClassLoaders owner) {
+      super(urls, owner.parent);
+      this.owner = owner;
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+      URL url = findResource(name.replace('.', '/') + ".class");
+      if (url == null || !"jar".equals(url.getProtocol())) {
+        return super.findClass(name);
+      }
+      // jar:file:/path/to.jar!/package/Name.class
+      String file = url.getFile();
+      int separator = file.indexOf("!/");
+      try {
+        URL jarUrl = new URL(file.substring(0, separator));
+        byte[] bytes =
+            owner.readClass(new File(jarUrl.toURI()).getPath(), file.substring(separator + 2));
+        int dot = name.lastIndexOf('.');
+        if (dot > 0 && getDefinedPackage(name.substring(0, dot)) == null) {
+          try {
+            definePackage(name.substring(0, dot), null, null, null, null, null, null, null);
+          } catch (IllegalArgumentException ex) {
+            // Defined concurrently
+          }
+        }
+        return defineClass(
+            name, bytes, 0, bytes.length, new CodeSource(jarUrl, (CodeSigner[]) null));
+      } catch (IOException | URISyntaxException | IllegalArgumentException ex) {
+        throw new ClassNotFoundException(name, ex);
+      }
+    }
+  }
+}
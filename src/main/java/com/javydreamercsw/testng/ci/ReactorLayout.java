@@ -0,0 +1,291 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Maps changed files to the reactor modules owning them, through each module's actual source and
+ * resource roots instead of the default {@code src/...} layout.
+ */
+public class ReactorLayout {
+  private static final String POM = "pom.xml";
+  private static final List<String> SOURCE_EXTENSIONS =
+      Arrays.asList(".java", ".kt", ".groovy", ".scala");
+
+  /** How a changed file relates to its module. */
+  public enum Kind {
+    POM,
+    TEST_SOURCE,
+    MAIN_SOURCE,
+    RESOURCE,
+    OTHER
+  }
+
+  private final List<MavenProject> projects;
+  private final List<ModuleRoots> modules = new ArrayList<>();
+
+  /**
+   * @param projects reactor projects.
+   */
+  public ReactorLayout(Collection<MavenProject> projects) {
+    this.projects = new ArrayList<>(projects);
+    for (MavenProject project : projects) {
+      modules.add(new ModuleRoots(project));
+    }
+    // Nested modules first, so the deepest one owns a file
+    modules.sort(Comparator.comparingInt((ModuleRoots m) -> m.baseDir.getNameCount()).reversed());
+  }
+
+  /**
+   * Assigns the changed files to modules. A changed module {@code pom.xml} is assigned to its
+   * module and every module nested in it. A renamed file is assigned as the deletion of its
+   * previous path and the rename to its new path, which may belong to different modules. Files
+   * outside every module are dropped.
+   *
+   * @param repositoryRoot directory the paths are relative to.
+   * @param changes changed files.
+   * @return the changes of each module with changes, in reactor order.
+   */
+  public Map<MavenProject, List<Change>> assign(Path repositoryRoot, List<FileChange> changes) {
+    Path root = real(repositoryRoot);
+    Map<MavenProject, List<Change>> assigned = new LinkedHashMap<>();
+    for (MavenProject project : projects) {
+      assigned.put(project, new ArrayList<>());
+    }
+    for (FileChange change : changes) {
+      if (change.getStatus() == FileChange.Status.RENAMED) {
+        assign(root, change.getPreviousPath(), FileChange.Status.DELETED, assigned);
+      }
+      assign(root, change.getPath(), change.getStatus(), assigned);
+    }
+    assigned.values().removeIf(List::isEmpty);
+    return assigned;
+  }
+
+  private void assign(
+      Path root, String path, FileChange.Status status, Map<MavenProject, List<Change>> assigned) {
+    Path file = root.resolve(path).normalize();
+    if (isBuildFile(file)) {
+      for (ModuleRoots module : modules) {
+        if (module.baseDir.startsWith(file.getParent())) {
+          assigned
+              .get(module.project)
+              .add(new Change(Kind.POM, status, path, module.relativize(file), null, null));
+        }
+      }
+      return;
+    }
+    for (ModuleRoots module : modules) {
+      if (file.startsWith(module.baseDir)) {
+        assigned.get(module.project).add(module.classify(path, status, file));
+        break;
+      }
+    }
+  }
+
+  /**
+   * @param path a file path.
+   * @return whether the file is a JVM language source file.
+   */
+  public static boolean isSourceFile(String path) {
+    for (String extension : SOURCE_EXTENSIONS) {
+      if (path.endsWith(extension)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** A {@code pom.xml} in a module directory or an ancestor of one, not a test fixture. */
+  private boolean isBuildFile(Path file) {
+    if (file.getFileName() == null || !file.getFileName().toString().equals(POM)) {
+      return false;
+    }
+    for (ModuleRoots module : modules) {
+      if (module.baseDir.startsWith(file.getParent())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Path real(Path path) {
+    try {
+      return path.toRealPath();
+    } catch (IOException ex) {
+      return path.toAbsolutePath().normalize();
+    }
+  }
+
+  /** A changed file as seen from its module. */
+  public static final class Change {
+    private final Kind kind;
+    private final FileChange.Status status;
+    private final String path;
+    private final String modulePath;
+    private final String name;
+    private final String sourcePath;
+
+    Change(
+        Kind kind,
+        FileChange.Status status,
+        String path,
+        String modulePath,
+        String name,
+        String sourcePath) {
+      this.kind = kind;
+      this.status = status;
+      this.path = path;
+      this.modulePath = modulePath;
+      this.name = name;
+      this.sourcePath = sourcePath;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    /**
+     * @return what happened to the file, {@link FileChange.Status#DELETED} for the previous path of
+     *     a renamed file.
+     */
+    public FileChange.Status getStatus() {
+      return status;
+    }
+
+    /**
+     * @return whether the file no longer exists.
+     */
+    public boolean isDeleted() {
+      return status == FileChange.Status.DELETED;
+    }
+
+    /**
+     * @return path as reported by git.
+     */
+    public String getPath() {
+      return path;
+    }
+
+    /**
+     * @return path relative to the module directory.
+     */
+    public String getModulePath() {
+      return modulePath;
+    }
+
+    /**
+     * @return class name for sources, assuming the directories match the package, classpath
+     *     resource name for resources, null otherwise.
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * @return path relative to the source root for sources, null otherwise.
+     */
+    public String getSourcePath() {
+      return sourcePath;
+    }
+
+    @Override
+    public String toString() {
+      return status == FileChange.Status.MODIFIED
+          ? path
+          : String.format("%s (%s)", path, status.name().toLowerCase());
+    }
+  }
+
+  private static final class ModuleRoots {
+    private final MavenProject project;
+    private final Path baseDir;
+    private final Set<Path> testRoots = new LinkedHashSet<>();
+    private final Set<Path> mainRoots = new LinkedHashSet<>();
+    private final Set<Path> resourceRoots = new LinkedHashSet<>();
+
+    ModuleRoots(MavenProject project) {
+      this.project = project;
+      this.baseDir = real(project.getBasedir().toPath());
+      addRoots(testRoots, project.getTestCompileSourceRoots());
+      addRoot(testRoots, project.getBuild().getTestSourceDirectory());
+      addRoots(mainRoots, project.getCompileSourceRoots());
+      addRoot(mainRoots, project.getBuild().getSourceDirectory());
+      for (Resource resource : project.getBuild().getResources()) {
+        addRoot(resourceRoots, resource.getDirectory());
+      }
+      for (Resource resource : project.getBuild().getTestResources()) {
+        addRoot(resourceRoots, resource.getDirectory());
+      }
+    }
+
+    private void addRoots(Set<Path> roots, List<String> directories) {
+      for (String directory : directories) {
+        addRoot(roots, directory);
+      }
+    }
+
+    private void addRoot(Set<Path> roots, String directory) {
+      if (directory != null) {
+        roots.add(real(baseDir.resolve(directory)));
+      }
+    }
+
+    Change classify(String path, FileChange.Status status, Path file) {
+      String modulePath = relativize(file);
+      if (isSourceFile(path)) {
+        for (Path root : testRoots) {
+          if (file.startsWith(root)) {
+            return source(Kind.TEST_SOURCE, status, path, modulePath, root, file);
+          }
+        }
+        for (Path root : mainRoots) {
+          if (file.startsWith(root)) {
+            return source(Kind.MAIN_SOURCE, status, path, modulePath, root, file);
+          }
+        }
+        return new Change(Kind.OTHER, status, path, modulePath, null, null);
+      }
+      for (Path root : resourceRoots) {
+        if (file.startsWith(root)) {
+          return new Change(
+              Kind.RESOURCE, status, path, modulePath, toUnixPath(root.relativize(file)), null);
+        }
+      }
+      return new Change(Kind.OTHER, status, path, modulePath, null, null);
+    }
+
+    private static Change source(
+        Kind kind, FileChange.Status status, String path, String modulePath, Path root, Path file) {
+      String sourcePath = toUnixPath(root.relativize(file));
+      String className = sourcePath.substring(0, sourcePath.lastIndexOf('.')).replace('/', '.');
+      return new Change(kind, status, path, modulePath, className, sourcePath);
+    }
+
+    String relativize(Path file) {
+      return toUnixPath(baseDir.relativize(file));
+    }
+
+    private static String toUnixPath(Path path) {
+      return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+
+/**
+ * Turns JaCoCo execution data recorded with one session per test class (see {@link
+ * CoverageSessionListener}) into the {@link CoverageIndex} used by the {@code test-changes} goal.
+ * Test classes not present in the execution data keep their previous entries, so partial runs
+ * update the index incrementally, unless they no longer exist.
+ */
+@Mojo(name = "record-coverage", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
+public class RecordCoverageMojo extends AbstractMojo {
+  /**
+   * Maven Project.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(defaultValue = "${project}", required = true, readonly = true)
+  protected MavenProject project;
+
+  /**
+   * JaCoCo execution data file written by the test run.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "coverageExecFile",
+      defaultValue = "${project.build.directory}/jacoco-testng.exec")
+  private File coverageExecFile;
+
+  /**
+   * Coverage index to create or update.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      property = "coverageIndexFile",
+      defaultValue = "${project.build.directory}/testng-ci/coverage.idx")
+  private File coverageIndexFile;
+
+  /**
+   * Whether to print details into the console.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "verbose", defaultValue = "false")
+  protected boolean verbose = false;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    if (!coverageExecFile.isFile()) {
+      getLog().info(String.format("No coverage data found in '%s'.", coverageExecFile));
+      return;
+    }
+    try {
+      Map<String, ExecutionDataStore> sessions = readSessions(coverageExecFile);
+      CoverageIndex index = CoverageIndex.read(coverageIndexFile);
+      File classes = new File(project.getBuild().getOutputDirectory());
+      File testClasses = new File(project.getBuild().getTestOutputDirectory());
+      for (Map.Entry<String, ExecutionDataStore> session : sessions.entrySet()) {
+        String test = session.getKey();
+        if (!new File(testClasses, test.replace('.', '/') + ".class").isFile()) {
+          // Not a session opened for a test class (i.e. the dump at JVM exit).
+          continue;
+        }
+        Set<String> coveredClasses = new TreeSet<>();
+        Set<String> coveredMethods = new TreeSet<>();
+        CoverageBuilder builder = new CoverageBuilder();
+        Analyzer analyzer = new Analyzer(session.getValue(), builder);
+        for (ExecutionData data : session.getValue().getContents()) {
+          File classFile = new File(classes, data.getName() + ".class");
+          if (data.hasHits() && classFile.isFile()) {
+            coveredClasses.add(data.getName().replace('/', '.'));
+            try (InputStream in = Files.newInputStream(classFile.toPath())) {
+              analyzer.analyzeClass(in, classFile.getPath());
+            }
+          }
+        }
+        for (IClassCoverage classCoverage : builder.getClasses()) {
+          for (IMethodCoverage method : classCoverage.getMethods()) {
+            if (method.getInstructionCounter().getCoveredCount() > 0) {
+              coveredMethods.add(
+                  classCoverage.getName().replace('/', '.')
+                      + "#"
+                      + method.getName()
+                      + method.getDesc());
+            }
+          }
+        }
+        if (verbose) {
+          getLog()
+              .debug(
+                  String.format(
+                      "Test '%s' covered %d classes and %d methods.",
+                      test, coveredClasses.size(), coveredMethods.size()));
+        }
+        index.update(test, coveredClasses, coveredMethods);
+      }
+      Set<String> removed = removeDeletedTests(index, testClasses);
+      if (!removed.isEmpty()) {
+        getLog()
+            .info(
+                String.format(
+                    "Removed %d deleted test classes from the coverage index.", removed.size()));
+        if (verbose) {
+          removed.forEach(test -> getLog().debug(String.format("Removed '%s'.", test)));
+        }
+      }
+      index.write(coverageIndexFile);
+      getLog().info(String.format("Coverage index updated in '%s'.", coverageIndexFile));
+    } catch (IOException ex) {
+      throw new MojoExecutionException("Unable to record coverage!", ex);
+    }
+  }
+
+  /**
+   * Removes the test classes deleted or renamed since they were recorded, so they are no longer
+   * selected.
+   *
+   * @param index coverage index.
+   * @param testClasses test output directory.
+   * @return names of the removed test classes, none if the directory doesn't exist.
+   */
+  static Set<String> removeDeletedTests(CoverageIndex index, File testClasses) {
+    if (!testClasses.isDirectory()) {
+      // Not compiled, nothing to compare with
+      return new TreeSet<>();
+    }
+    return index.retainTests(
+        test -> new File(testClasses, test.replace('.', '/') + ".class").isFile());
+  }
+
+  /**
+   * @param execFile JaCoCo execution data file.
+   * @return the execution data of each session, merged per session id, without the data recorded
+   *     between test classes.
+   * @throws IOException if the file can't be read.
+   */
+  static Map<String, ExecutionDataStore> readSessions(File execFile) throws IOException {
+    Map<String, ExecutionDataStore> sessions = new LinkedHashMap<>();
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(execFile.toPath()))) {
+      ExecutionDataReader reader = new ExecutionDataReader(in);
+      ExecutionDataStore[] current = new ExecutionDataStore[1];
+      // Execution data always follows the session it was dumped in.
+      // The constant is inlined, the listener and TestNG aren't loaded
+      reader.setSessionInfoVisitor(
+          info ->
+              current[0] =
+                  CoverageSessionListener.IDLE_SESSION.equals(info.getId())
+                      ? null
+                      : sessions.computeIfAbsent(info.getId(), k -> new ExecutionDataStore()));
+      reader.setExecutionDataVisitor(
+          data -> {
+            if (current[0] != null) {
+              current[0].put(data);
+            }
+          });
+      reader.read();
+    }
+    return sessions;
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Maps changed files matching a glob to the test classes that must run when they change.
+ *
+ * <pre>
+ * &lt;resourceRule&gt;
+ *   &lt;pattern&gt;src/main/resources/db/**&lt;/pattern&gt;
+ *   &lt;tests&gt;com.acme.db.*Test,com.acme.MigrationTest&lt;/tests&gt;
+ * &lt;/resourceRule&gt;
+ * </pre>
+ */
+public class ResourceRule {
+  /** Glob matched against the changed file path, relative to the project root. */
+  private String pattern;
+
+  /** Comma separated globs matched against test class names. */
+  private String tests;
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  public void setPattern(String pattern) {
+    this.pattern = pattern;
+  }
+
+  public String getTests() {
+    return tests;
+  }
+
+  public void setTests(String tests) {
+    this.tests = tests;
+  }
+
+  /**
+   * @param path changed file path.
+   * @return true if this rule applies to the path.
+   */
+  public boolean matchesPath(String path) {
+    return pattern != null && matcher(pattern).matches(Paths.get(path));
+  }
+
+  /**
+   * @param className test class name.
+   * @return true if the test class is selected by this rule.
+   */
+  public boolean matchesTest(String className) {
+    return tests != null
+        && Arrays.stream(tests.split(","))
+            .map(String::trim)
+            .filter(t -> !t.isEmpty())
+            .anyMatch(t -> matcher(t).matches(Paths.get(className)));
+  }
+
+  private static PathMatcher matcher(String glob) {
+    return FileSystems.getDefault().getPathMatcher("glob:" + glob);
+  }
+
+  @Override
+  public String toString() {
+    return pattern + " -> " + tests;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+
+/**
+ * Machine readable output of the {@code plan} goal. It holds everything needed to execute the
+ * selection elsewhere without recomputing the git diff, the merge request lookup or the class scan.
+ */
+@Data
+public class SelectionManifest {
+  public static final int FORMAT_VERSION = 1;
+
+  private int version = FORMAT_VERSION;
+  private String targetBranch;
+  private String head;
+  private boolean fullRun;
+  private String fullRunReason;
+  private long estimatedMillis;
+  private List<Module> modules = new ArrayList<>();
+
+  /** Selection for a single Maven module. */
+  @Data
+  public static class Module {
+    private String groupId;
+    private String artifactId;
+    /** Module directory relative to the execution root. */
+    private String baseDir;
+    /** Surefire includes file relative to the module directory. */
+    private String includesFile;
+
+    private long estimatedMillis;
+    private List<Test> tests = new ArrayList<>();
+  }
+
+  /** A selected test class. */
+  @Data
+  public static class Test {
+    private String className;
+    private List<String> reasons = new ArrayList<>();
+    private long estimatedMillis;
+  }
+
+  /**
+   * @param file manifest file.
+   * @return the manifest.
+   * @throws IOException if it can't be read or is from an incompatible version.
+   */
+  public static SelectionManifest read(File file) throws IOException {
+    SelectionManifest manifest =
+        new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .readValue(file, SelectionManifest.class);
+    if (manifest.getVersion() != FORMAT_VERSION) {
+      throw new IOException(
+          String.format(
+              "Unsupported manifest version %d in '%s'.", manifest.getVersion(), file));
+    }
+    return manifest;
+  }
+
+  /**
+   * @param file manifest file.
+   * @throws IOException if it can't be written.
+   */
+  public void write(File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, this);
+  }
+}
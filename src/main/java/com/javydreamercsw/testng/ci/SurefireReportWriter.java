@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Writes the results of a test class as a surefire {@code TEST-<class>.xml} report, so tools
+ * reading surefire reports, {@link TestDurationHistory} included, see the runs of the worker pool
+ * like any other.
+ */
+public final class SurefireReportWriter {
+  private SurefireReportWriter() {}
+
+  /**
+   * @param reportsDirectory surefire reports directory.
+   * @param className test class name.
+   * @param testCases results of the test methods of the class.
+   * @return the written report.
+   * @throws IOException if the report can't be written.
+   */
+  public static File write(
+      File reportsDirectory, String className, List<TestWorker.TestCase> testCases)
+      throws IOException {
+    Files.createDirectories(reportsDirectory.toPath());
+    File report = new File(reportsDirectory, "TEST-" + className + ".xml");
+    long millis = 0;
+    int failures = 0;
+    int skipped = 0;
+    for (TestWorker.TestCase testCase : testCases) {
+      millis += testCase.getMillis();
+      if (testCase.getStatus() == TestWorker.TestCase.Status.FAIL) {
+        failures++;
+      } else if (testCase.getStatus() == TestWorker.TestCase.Status.SKIP) {
+        skipped++;
+      }
+    }
+    try (OutputStream out = Files.newOutputStream(report.toPath())) {
+      XMLStreamWriter writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+      try {
+        writer.writeStartDocument("UTF-8", "1.0");
+        writer.writeStartElement("testsuite");
+        writer.writeAttribute("name", className);
+        writer.writeAttribute("time", seconds(millis));
+        writer.writeAttribute("tests", String.valueOf(testCases.size()));
+        writer.writeAttribute("errors", "0");
+        writer.writeAttribute("skipped", String.valueOf(skipped));
+        writer.writeAttribute("failures", String.valueOf(failures));
+        for (TestWorker.TestCase testCase : testCases) {
+          writer.writeStartElement("testcase");
+          writer.writeAttribute("name", testCase.getMethodName());
+          writer.writeAttribute("classname", className);
+          writer.writeAttribute("time", seconds(testCase.getMillis()));
+          if (testCase.getStatus() == TestWorker.TestCase.Status.FAIL) {
+            writer.writeStartElement("failure");
+            if (testCase.getMessage() != null) {
+              writer.writeAttribute("message", testCase.getMessage());
+            }
+            writer.writeEndElement();
+          } else if (testCase.getStatus() == TestWorker.TestCase.Status.SKIP) {
+            writer.writeEmptyElement("skipped");
+          }
+          writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndDocument();
+      } finally {
+        writer.close();
+      }
+    } catch (XMLStreamException ex) {
+      throw new IOException(String.format("Unable to write report '%s'!", report), ex);
+    }
+    return report;
+  }
+
+  private static String seconds(long millis) {
+    return String.format(Locale.ROOT, "%.3f", millis / 1000.0);
+  }
+}
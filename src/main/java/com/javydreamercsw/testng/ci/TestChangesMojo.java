@@ -7,180 +7,429 @@
  */
 package com.javydreamercsw.testng.ci;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.lang.reflect.Modifier;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLClassLoader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 import lombok.SneakyThrows;
-import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DependencyResolutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.shared.utils.cli.CommandLineException;
-import org.gitlab4j.api.GitLabApiException;
 
-@Mojo(name = "test-changes", defaultPhase = LifecyclePhase.VERIFY)
-public class TestChangesMojo extends AbstractGitMojo {
-  private final String TEST_PATH = "src/test/java/";
-  protected List<Class<?>> classesToTest = new ArrayList<>();
+/**
+ * Runs the test classes impacted by the changes in the current branch. It runs once per reactor:
+ * the change set is computed once, each module selects its tests and a single Maven execution runs
+ * them all.
+ */
+@Mojo(
+    name = "test-changes",
+    defaultPhase = LifecyclePhase.VERIFY,
+    aggregator = true,
+    threadSafe = true)
+public class TestChangesMojo extends AbstractSelectionMojo {
+  /**
+   * Manifest written by the {@code plan} goal. When it exists the selection in it is executed as
+   * is, skipping the git diff, the merge request lookup and the class scan.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "selectionManifest")
+  private File selectionManifest;
 
-  protected List<Class<?>> getClassesToTest() {
-    return Collections.unmodifiableList(classesToTest);
-  }
+  /**
+   * Above this number of selected classes they are passed to surefire through an includes file
+   * instead of the {@code test} property, to keep the command line short.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "includesFileThreshold", defaultValue = "50")
+  private int includesFileThreshold = 50;
+
+  /**
+   * Includes file used for big selections.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(defaultValue = "${project.build.directory}/testng-ci/includes.txt", readonly = true)
+  private File includesFile;
+
+  /**
+   * Whether to run the selected classes concurrently, with thread and fork counts derived from the
+   * available cores, the size of the selection and the durations of the previous run. Classes
+   * annotated with {@code @Test(singleThreaded = true)} or {@code NotThreadSafe}, or extending one,
+   * run afterwards in a serial lane. Surefire settings configured explicitly in the project take
+   * precedence.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "autoParallel", defaultValue = "false")
+  private boolean autoParallel;
+
+  /**
+   * Most threads to run in a single forked JVM when {@code autoParallel} is enabled; more
+   * concurrency is achieved with more forks.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "threadsPerFork", defaultValue = "4")
+  private int threadsPerFork = 4;
+
+  /**
+   * Estimated duration of the selected classes of a module, in milliseconds, below which they run
+   * with the project settings even when {@code autoParallel} is enabled.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "minParallelMillis", defaultValue = "10000")
+  private long minParallelMillis = 10000;
+
+  /**
+   * Includes file used for big selections of the serial lane.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(
+      defaultValue = "${project.build.directory}/testng-ci/includes-serial.txt",
+      readonly = true)
+  private File serialIncludesFile;
+
+  /**
+   * Number of worker JVMs running the selected classes on this machine, each reused for all the
+   * classes it runs, taking the longest classes first according to the previous run. Surefire
+   * reports are written for every class. When 0, or for modules without TestNG on their resolved
+   * test class path, surefire runs the tests.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "workers", defaultValue = "0")
+  private int workers;
+
+  /**
+   * Extra JVM arguments of the worker JVMs.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "workerArgLine")
+  private String workerArgLine;
 
   @Override
   @SneakyThrows
   public void execute() throws MojoExecutionException, MojoFailureException {
-    if (executeGitHasUncommitted()) {
-      throw new MojoExecutionException("Uncommited changes detected!");
-    } else {
-      classesToTest.clear();
-      try {
-        List<String> changesFromTargetBranch = getChangesFromTargetBranch();
-        if (changesFromTargetBranch.isEmpty()) {
-          if (verbose) {
-            getLog().info("No changes detected!");
+    try (PhaseMetrics.Phase phase = metrics.start("total")) {
+      if (selectionManifest != null && selectionManifest.isFile()) {
+        executeManifest();
+      } else if (executeGitHasUncommitted()) {
+        throw new MojoExecutionException("Uncommited changes detected!");
+      } else {
+        setClassesToTest(Collections.emptyList());
+        try {
+          String targetBranch = getTargetBranch();
+          List<FileChange> changesFromTargetBranch = getChangesFrom(targetBranch);
+          if (changesFromTargetBranch.isEmpty()) {
+            if (verbose) {
+              getLog().info("No changes detected!");
+            }
+            return;
+          } else if (verbose) {
+            getLog()
+                .info(
+                    String.format(
+                        "Detected changes in these files: '%s'.", changesFromTargetBranch));
           }
-          return;
-        } else if (verbose) {
-          getLog()
-              .info(
-                  String.format("Detected changes in these files: '%s'.", changesFromTargetBranch));
-        }
-        // Compile project
-        CommandResult installCommandResult =
-            executeMavenCommandExitCode("install", "-DskipTests=true");
-        if (installCommandResult.getExitCode() == SUCCESS_EXIT_CODE) {
-          ClassLoader projectClassLoader = getClassLoader(this.project);
-          for (String modifiedFile : changesFromTargetBranch) {
-            if (modifiedFile.endsWith(".java") && modifiedFile.startsWith(TEST_PATH)) {
-              String className =
-                  modifiedFile
-                      .substring(
-                          modifiedFile.indexOf(TEST_PATH) + TEST_PATH.length(),
-                          modifiedFile.lastIndexOf("."))
-                      .replaceAll("/", "\\.");
-              Class<?> loadedClass = projectClassLoader.loadClass(className);
-              if (verbose) {
-                getLog().debug(String.format("Loaded class '%s'!", loadedClass.toString()));
-              }
-              // Check if class is abstract
-              if (!Modifier.isAbstract(loadedClass.getModifiers())) {
-                addClassToTest(loadedClass);
-              }
-
-              // Mark all children as classes to test
-              for (Package pkg : projectClassLoader.getDefinedPackages()) {
-                String packageName = pkg.getName();
-                InputStream stream =
-                    projectClassLoader.getResourceAsStream(pkg.getName().replaceAll("[.]", "/"));
-                BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
-
-                List<Class> classesInPackage =
-                    reader
-                        .lines()
-                        .filter(line -> line.endsWith(".class"))
-                        .map(line -> getClass(line, packageName, projectClassLoader))
-                        .collect(Collectors.toList());
-                if (verbose) {
-                  getLog().debug(String.format("Searching package %s!", packageName));
-                }
-                for (Class<?> c : classesInPackage) {
-                  if (c != null) {
-                    if (verbose) {
-                      getLog()
-                          .debug(
-                              String.format(
-                                  "Checking if %s is a child of %s!",
-                                  c.toString(), loadedClass.toString()));
-                    }
-                    if (loadedClass.isAssignableFrom(c)
-                        && !c.equals(loadedClass)
-                        && !classesToTest.contains(c)) {
-                      addClassToTest(c, loadedClass);
-                    }
-                  }
-                }
+          List<ModuleSelection> selections =
+              computeSelection(targetBranch, changesFromTargetBranch);
+          if (selections != null && !getClassesToTest().isEmpty()) {
+            // Run the tests next
+            Map<MavenProject, List<String>> tests = new LinkedHashMap<>();
+            for (ModuleSelection selection : selections) {
+              if (!selection.getClasses().isEmpty()) {
+                tests.put(selection.getProject(), selection.getClassNames());
               }
             }
+            runTests(tests);
           }
-        } else {
-          getLog().error("Error compiling project!");
+        } catch (CommandLineException ex) {
+          getLog().error(ex);
         }
-        if (!classesToTest.isEmpty()) {
-          // Run the tests next
-          CommandResult testCommandResult =
-              executeMavenCommandExitCode(
-                  "test",
-                  "-DskipTests=false",
-                  "-Dtest="
-                      + classesToTest.stream()
-                          .map(c -> c.getCanonicalName())
-                          .collect(Collectors.joining(",")));
-          if (testCommandResult.getExitCode() == SUCCESS_EXIT_CODE) {
-          } else {
-            getLog().error("Error testing changes!");
-          }
+      }
+    } finally {
+      writeMetrics("test-changes");
+    }
+  }
+
+  private void executeManifest() throws Exception {
+    SelectionManifest manifest = SelectionManifest.read(selectionManifest);
+    getLog().info(String.format("Running selection from manifest '%s'.", selectionManifest));
+    List<Class<?>> classes = new ArrayList<>();
+    Map<MavenProject, List<String>> tests = new LinkedHashMap<>();
+    try (ProjectClassLoaders loaders = newClassLoaders()) {
+      for (SelectionManifest.Module module : manifest.getModules()) {
+        MavenProject moduleProject = findModule(module.getGroupId(), module.getArtifactId());
+        if (moduleProject == null) {
+          getLog()
+              .warn(
+                  String.format(
+                      "Module '%s:%s' is not part of this build, skipping it.",
+                      module.getGroupId(), module.getArtifactId()));
+          continue;
+        }
+        ClassLoader projectClassLoader = getClassLoader(loaders, moduleProject);
+        for (SelectionManifest.Test test : module.getTests()) {
+          Class<?> c = getClass(test.getClassName(), projectClassLoader);
+          addClassToTest(classes, c, String.join("; ", test.getReasons()));
+          tests.computeIfAbsent(moduleProject, k -> new ArrayList<>()).add(test.getClassName());
         }
-      } catch (CommandLineException | GitLabApiException ex) {
-        getLog().error(ex);
       }
     }
+    setClassesToTest(classes);
+    if (!tests.isEmpty()) {
+      runTests(tests);
+    }
+  }
+
+  private MavenProject findModule(String groupId, String artifactId) {
+    for (MavenProject module : mavenSession.getProjects()) {
+      if (module.getArtifactId().equals(artifactId) && module.getGroupId().equals(groupId)) {
+        return module;
+      }
+    }
+    return null;
   }
 
-  protected void addClassToTest(Class<?> c) {
-    addClassToTest(c, null);
+  /**
+   * Runs the selected test classes, concurrently when {@code autoParallel} is enabled.
+   *
+   * @param tests selected test classes of each module.
+   */
+  private void runTests(Map<MavenProject, List<String>> tests) throws Exception {
+    if (workers > 0) {
+      tests = runOnWorkers(tests);
+      if (tests.isEmpty()) {
+        return;
+      }
+    }
+    if (!autoParallel) {
+      runTests(tests, includesFile, Collections.emptyList());
+      return;
+    }
+    List<Map<String, Long>> estimates = new ArrayList<>();
+    Set<String> singleThreaded = new HashSet<>();
+    for (Map.Entry<MavenProject, List<String>> module : tests.entrySet()) {
+      TestDurationHistory history = readDurationHistory(module.getKey());
+      Map<String, Long> moduleEstimates = new LinkedHashMap<>();
+      for (String test : module.getValue()) {
+        moduleEstimates.put(test, history.estimateMillis(test));
+        if (isSingleThreaded(module.getKey(), test)) {
+          singleThreaded.add(test);
+        }
+      }
+      estimates.add(moduleEstimates);
+    }
+    ParallelPlan plan =
+        ParallelPlan.plan(
+            estimates,
+            singleThreaded,
+            Runtime.getRuntime().availableProcessors(),
+            Math.max(threadsPerFork, 1),
+            minParallelMillis);
+    getLog().info(String.format("Running the selected test classes with %s.", plan));
+    Map<MavenProject, List<String>> parallel = new LinkedHashMap<>();
+    Map<MavenProject, List<String>> serial = new LinkedHashMap<>();
+    for (Map.Entry<MavenProject, List<String>> module : tests.entrySet()) {
+      for (String test : module.getValue()) {
+        (singleThreaded.contains(test) ? serial : parallel)
+            .computeIfAbsent(module.getKey(), k -> new ArrayList<>())
+            .add(test);
+      }
+    }
+    if (!parallel.isEmpty()) {
+      runTests(parallel, includesFile, plan.getParallelArguments());
+    }
+    if (!serial.isEmpty()) {
+      runTests(serial, serialIncludesFile, ParallelPlan.getSerialArguments());
+    }
   }
 
-  protected void addClassToTest(Class<?> c, Class<?> loadedClass) {
-    if (verbose) {
-      if (loadedClass != null) {
+  /**
+   * Runs the selected classes of each module on a pool of worker JVMs.
+   *
+   * @param tests selected test classes of each module.
+   * @return the selected test classes of the modules which couldn't run on workers.
+   */
+  private Map<MavenProject, List<String>> runOnWorkers(Map<MavenProject, List<String>> tests)
+      throws InterruptedException {
+    Map<MavenProject, List<String>> remaining = new LinkedHashMap<>();
+    List<String> jvmArgs = new ArrayList<>();
+    if (workerArgLine != null && !workerArgLine.trim().isEmpty()) {
+      jvmArgs.addAll(Arrays.asList(workerArgLine.trim().split("\\s+")));
+    }
+    TestWorker.Result total = new TestWorker.Result();
+    for (Map.Entry<MavenProject, List<String>> module : tests.entrySet()) {
+      MavenProject moduleProject = module.getKey();
+      List<String> jars = new ArrayList<>();
+      List<String> directories = new ArrayList<>();
+      try {
+        for (String element : testClasspath(moduleProject)) {
+          (new File(element).isDirectory() ? directories : jars).add(element);
+        }
+      } catch (DependencyResolutionException ex) {
         getLog()
-            .debug(
+            .warn(
                 String.format(
-                    "Marking class '%s' to be tested as a children of '%s'!",
-                    c.toString(), loadedClass.toString()));
-      } else {
-        getLog().debug(String.format("Marking class '%s' to be tested!", c.toString()));
+                    "Unable to resolve the test class path of '%s', running its tests with surefire.",
+                    moduleProject.getArtifactId()),
+                ex);
+        remaining.put(moduleProject, module.getValue());
+        continue;
+      }
+      if (!TestWorker.hasTestNg(jars)) {
+        getLog()
+            .warn(
+                String.format(
+                    "'%s' doesn't depend on TestNG, running its tests with surefire.",
+                    moduleProject.getArtifactId()));
+        remaining.put(moduleProject, module.getValue());
+        continue;
+      }
+      TestDurationHistory history = readDurationHistory(moduleProject);
+      Map<String, Long> estimates = new LinkedHashMap<>();
+      List<String> suiteClasses = new ArrayList<>();
+      for (String test : module.getValue()) {
+        estimates.put(test, history.estimateMillis(test));
+        BytecodeIndex.ClassInfo info = readTestClass(moduleProject, test);
+        if (info != null && info.isSuiteConfiguration()) {
+          suiteClasses.add(test);
+        }
       }
+      CdsArchive archive = getCdsArchive(jars);
+      WorkerPool pool =
+          new WorkerPool(
+              workers, () -> TestWorker.start(jars, directories, jvmArgs, archive, getLog()::info));
+      try (PhaseMetrics.Phase phase = metrics.start("workers")) {
+        total.merge(pool.run(estimates, suiteClasses, getReportsDirectory(moduleProject)));
+        metrics.increment("classes_stolen", pool.getStolen());
+        metrics.increment("classes_on_workers", estimates.size());
+      } catch (IOException ex) {
+        getLog()
+            .warn(
+                String.format(
+                    "Unable to run the tests of '%s' on workers, running them with surefire.",
+                    moduleProject.getArtifactId()),
+                ex);
+        remaining.put(moduleProject, module.getValue());
+      } finally {
+        // Every worker exited
+        publishCdsArchive(archive);
+      }
+    }
+    getLog()
+        .info(
+            String.format(
+                "Tests run on workers: %d, Failures: %d, Skipped: %d",
+                total.getPassed() + total.getFailed() + total.getSkipped(),
+                total.getFailed(),
+                total.getSkipped()));
+    if (total.getFailed() > 0) {
+      total.getFailures().forEach(getLog()::error);
+      getLog().error("Error testing changes!");
     }
-    classesToTest.add(c);
+    return remaining;
   }
 
-  private Class getClass(String className, String packageName, ClassLoader projectClassLoader) {
-    try {
-      return projectClassLoader.loadClass(
-          packageName + "." + className.substring(0, className.lastIndexOf('.')));
-    } catch (ClassNotFoundException e) {
-      getLog().error(e);
+  /**
+   * Whether a test class or one of its super classes in the test output directory must not run
+   * concurrently, as TestNG applies class level annotations of super classes.
+   */
+  private boolean isSingleThreaded(MavenProject module, String className) {
+    String name = className;
+    while (name != null) {
+      BytecodeIndex.ClassInfo info = readTestClass(module, name);
+      if (info == null) {
+        return false;
+      }
+      if (info.isSingleThreaded()) {
+        return true;
+      }
+      name = info.getSuperName();
     }
-    return null;
+    return false;
   }
 
-  @Override
-  public ClassLoader getClassLoader(MavenProject project) {
+  /**
+   * @return the class in the test output directory of the module, null if missing or unreadable.
+   */
+  private BytecodeIndex.ClassInfo readTestClass(MavenProject module, String className) {
+    Path classFile =
+        Paths.get(module.getBuild().getTestOutputDirectory())
+            .resolve(className.replace('.', '/') + ".class");
+    if (!Files.isRegularFile(classFile)) {
+      return null;
+    }
     try {
-      List classpathElements = project.getCompileClasspathElements();
-      classpathElements.add(project.getBuild().getOutputDirectory());
-      classpathElements.add(project.getBuild().getTestOutputDirectory());
-      URL urls[] = new URL[classpathElements.size()];
-      for (int i = 0; i < classpathElements.size(); ++i) {
-        urls[i] = new File((String) classpathElements.get(i)).toURI().toURL();
+      return BytecodeIndex.read(Files.readAllBytes(classFile));
+    } catch (IOException ex) {
+      getLog().warn(String.format("Unable to read '%s'!", classFile), ex);
+      return null;
+    }
+  }
+
+  /**
+   * Runs the selected test classes with a single Maven execution, restricted to the modules with a
+   * selection when running in a reactor.
+   *
+   * @param tests selected test classes of each module.
+   * @param includesFile includes file used for big selections.
+   * @param extraArgs additional Maven arguments.
+   */
+  private void runTests(
+      Map<MavenProject, List<String>> tests, File includesFile, List<String> extraArgs)
+      throws Exception {
+    List<String> args = new ArrayList<>(Arrays.asList("test", "-DskipTests=false"));
+    args.addAll(extraArgs);
+    boolean reactor = mavenSession.getProjects().size() > 1;
+    if (reactor) {
+      args.add("-pl");
+      args.add(
+          tests.keySet().stream()
+              .map(m -> m.getGroupId() + ":" + m.getArtifactId())
+              .collect(Collectors.joining(",")));
+      // Not every module has every selected class
+      args.add("-Dsurefire.failIfNoSpecifiedTests=false");
+    }
+    int selected = tests.values().stream().mapToInt(List::size).sum();
+    if (selected > includesFileThreshold) {
+      for (Map.Entry<MavenProject, List<String>> module : tests.entrySet()) {
+        writeIncludesFile(module.getValue(), moduleFile(includesFile, module.getKey()));
       }
-      return new URLClassLoader(urls, this.getClass().getClassLoader());
-    } catch (MalformedURLException | DependencyResolutionRequiredException e) {
-      getLog().debug("Couldn't get the classloader!");
-      return this.getClass().getClassLoader();
+      // Relative paths are resolved against each module directory
+      args.add(
+          "-Dsurefire.includesFile="
+              + (reactor
+                  ? project.getBasedir().toPath().relativize(includesFile.toPath())
+                  : includesFile.getAbsolutePath()));
+    } else {
+      args.add(
+          "-Dtest="
+              + tests.values().stream().flatMap(List::stream).collect(Collectors.joining(",")));
+    }
+    CommandResult testCommandResult = executeMavenCommandExitCode(args.toArray(new String[0]));
+    if (testCommandResult.getExitCode() != SUCCESS_EXIT_CODE) {
+      getLog().error("Error testing changes!");
     }
   }
 }
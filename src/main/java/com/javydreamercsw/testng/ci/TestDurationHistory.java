@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Per test class durations, and outcomes, taken from the surefire XML reports of previous runs.
+ */
+public class TestDurationHistory {
+  /** Estimate used when there is no history at all. */
+  public static final long DEFAULT_DURATION_MILLIS = 1000;
+
+  private final Map<String, Long> durations;
+  private final Map<String, Long> reportTimes;
+  private final Set<String> failed;
+  private final long averageMillis;
+
+  private TestDurationHistory(
+      Map<String, Long> durations, Map<String, Long> reportTimes, Set<String> failed) {
+    this.durations = durations;
+    this.reportTimes = reportTimes;
+    this.failed = failed;
+    this.averageMillis =
+        Math.round(
+            durations.values().stream()
+                .mapToLong(Long::longValue)
+                .average()
+                .orElse(DEFAULT_DURATION_MILLIS));
+  }
+
+  /**
+   * Reads the {@code TEST-*.xml} files of a surefire reports directory.
+   *
+   * @param reportsDirectory surefire reports directory.
+   * @return the history, empty if there are no reports.
+   */
+  public static TestDurationHistory read(File reportsDirectory) {
+    Map<String, Long> durations = new HashMap<>();
+    Map<String, Long> reportTimes = new HashMap<>();
+    Set<String> failed = new HashSet<>();
+    File[] reports =
+        reportsDirectory.listFiles(
+            (dir, name) -> name.startsWith("TEST-") && name.endsWith(".xml"));
+    if (reports != null) {
+      XMLInputFactory factory = XMLInputFactory.newInstance();
+      factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+      for (File report : reports) {
+        try (InputStream in = Files.newInputStream(report.toPath())) {
+          XMLStreamReader reader = factory.createXMLStreamReader(in);
+          try {
+            // Only the root element is needed.
+            while (reader.hasNext() && reader.next() != XMLStreamReader.START_ELEMENT) {}
+            boolean root = reader.getEventType() == XMLStreamReader.START_ELEMENT;
+            String name = root ? reader.getAttributeValue(null, "name") : null;
+            String time = root ? reader.getAttributeValue(null, "time") : null;
+            if (name != null && time != null) {
+              durations.merge(
+                  name,
+                  (long) (Double.parseDouble(time.replace(",", "")) * 1000),
+                  Math::max);
+            }
+            if (name != null) {
+              reportTimes.merge(name, report.lastModified(), Math::max);
+              if (count(reader, "failures") + count(reader, "errors") > 0) {
+                failed.add(name);
+              }
+            }
+          } finally {
+            reader.close();
+          }
+        } catch (IOException | XMLStreamException | NumberFormatException e) {
+          // Unreadable reports just don't contribute to the history.
+        }
+      }
+    }
+    return new TestDurationHistory(durations, reportTimes, failed);
+  }
+
+  private static int count(XMLStreamReader reader, String attribute) {
+    String value = reader.getAttributeValue(null, attribute);
+    return value == null ? 0 : Integer.parseInt(value.trim());
+  }
+
+  /**
+   * @param className test class name.
+   * @return true if the class has recorded history.
+   */
+  public boolean isKnown(String className) {
+    return durations.containsKey(className);
+  }
+
+  /**
+   * @param className test class name.
+   * @return the last duration of the class or the average of all known classes if unknown.
+   */
+  public long estimateMillis(String className) {
+    return durations.getOrDefault(className, averageMillis);
+  }
+
+  public Map<String, Long> getDurations() {
+    return Collections.unmodifiableMap(durations);
+  }
+
+  /**
+   * @return the last modification time of the report of each class.
+   */
+  public Map<String, Long> getReportTimes() {
+    return Collections.unmodifiableMap(reportTimes);
+  }
+
+  /**
+   * @param className test class name.
+   * @return whether a test of the class failed or errored in its report.
+   */
+  public boolean hasFailed(String className) {
+    return failed.contains(className);
+  }
+}
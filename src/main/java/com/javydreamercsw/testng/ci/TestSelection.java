@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/** Selected test classes together with the reasons each of them, and each change, was handled. */
+public class TestSelection {
+  private final Map<String, String> changes = new LinkedHashMap<>();
+  private final Map<String, List<String>> tests = new LinkedHashMap<>();
+  private final Map<String, String> deferred = new LinkedHashMap<>();
+  private String fullRunReason;
+
+  /**
+   * Records how a changed file was handled.
+   *
+   * @param path changed file path.
+   * @param decision explanation.
+   */
+  public void explainChange(String path, String decision) {
+    changes.merge(path, decision, (a, b) -> a + "; " + b);
+  }
+
+  /**
+   * Selects a test class, taking it back if deferred.
+   *
+   * @param className test class name.
+   * @param reason why it is selected.
+   */
+  public void select(String className, String reason) {
+    deferred.remove(className);
+    List<String> reasons = tests.computeIfAbsent(className, k -> new ArrayList<>());
+    if (!reasons.contains(reason)) {
+      reasons.add(reason);
+    }
+  }
+
+  /**
+   * Takes a selected test class out of this selection, to be run later.
+   *
+   * @param className test class name.
+   * @param reason why it can wait.
+   */
+  public void defer(String className, String reason) {
+    if (tests.remove(className) != null) {
+      deferred.put(className, reason);
+    }
+  }
+
+  /**
+   * Drops the selected classes which aren't tests, once they carried the impact to the ones which
+   * are.
+   *
+   * @param isTest tells whether a class is a test class.
+   */
+  public void retainTests(Predicate<String> isTest) {
+    tests.keySet().removeIf(isTest.negate());
+  }
+
+  /**
+   * Escalates to a run of every test class in the module.
+   *
+   * @param reason why.
+   */
+  public void escalate(String reason) {
+    if (fullRunReason == null) {
+      fullRunReason = reason;
+    }
+  }
+
+  public boolean isSelected(String className) {
+    return tests.containsKey(className);
+  }
+
+  public boolean isFullRun() {
+    return fullRunReason != null;
+  }
+
+  public String getFullRunReason() {
+    return fullRunReason;
+  }
+
+  public Map<String, String> getChanges() {
+    return Collections.unmodifiableMap(changes);
+  }
+
+  public Map<String, List<String>> getTests() {
+    return Collections.unmodifiableMap(tests);
+  }
+
+  public Map<String, String> getDeferred() {
+    return Collections.unmodifiableMap(deferred);
+  }
+
+  /**
+   * Writes this selection as a JSON report.
+   *
+   * @param file report file.
+   * @throws IOException if the file can't be written.
+   */
+  public void writeReport(File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, this);
+  }
+}
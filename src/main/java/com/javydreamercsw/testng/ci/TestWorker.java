@@ -0,0 +1,410 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.jar.JarFile;
+
+/**
+ * A forked JVM running TestNG classes on demand through {@link TestWorkerMain}. The JVM and the
+ * jars of the test class path stay loaded between runs, only the class directories are reloaded.
+ */
+public class TestWorker implements AutoCloseable {
+  /** TestNG isn't on the plugin class path, only its class file name can be used here. */
+  private static final String TESTNG_CLASS = "org/testng/TestNG.class";
+
+  /** How long a JVM dumping a class data sharing archive is given to exit. */
+  private static final long DUMP_TIMEOUT_MINUTES = 5;
+
+  private final Process process;
+  private final BufferedReader reader;
+  private final Writer writer;
+  private final Consumer<String> output;
+  private final Thread shutdownHook;
+  private final CdsArchive dumpArchive;
+
+  private TestWorker(Process process, Consumer<String> output, CdsArchive dumpArchive) {
+    this.process = process;
+    this.output = output;
+    this.dumpArchive = dumpArchive;
+    this.reader =
+        new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+    this.writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+    this.shutdownHook = new Thread(process::destroyForcibly);
+    Runtime.getRuntime().addShutdownHook(shutdownHook);
+  }
+
+  /**
+   * Starts a worker and waits until it is ready.
+   *
+   * @param jars class path entries loaded once, must include TestNG.
+   * @param directories class directories reloaded on every run.
+   * @param jvmArgs extra JVM arguments.
+   * @param archive AppCDS archive of the class path, null for none. If the worker can't start with
+   *     it, it is discarded and the worker started without it.
+   * @param output consumer of the output of the tests.
+   * @return the worker.
+   * @throws IOException if the JVM can't be started or exits right away.
+   */
+  public static TestWorker start(
+      List<String> jars,
+      List<String> directories,
+      List<String> jvmArgs,
+      CdsArchive archive,
+      Consumer<String> output)
+      throws IOException {
+    List<String> sharing = archive == null ? Collections.emptyList() : archive.jvmArgs();
+    boolean dumping = sharing.stream().anyMatch(arg -> arg.startsWith(CdsArchive.DUMP_OPTION));
+    try {
+      return start(jars, directories, jvmArgs, sharing, dumping ? archive : null, output);
+    } catch (IOException ex) {
+      if (sharing.stream().noneMatch(arg -> arg.startsWith(CdsArchive.SHARED_OPTION))) {
+        throw ex;
+      }
+      // i.e. a corrupted archive crashing the JVM
+      output.accept(
+          String.format(
+              "Test worker failed to start with AppCDS archive '%s', starting it without.",
+              archive.getArchive()));
+      archive.discard();
+      return start(jars, directories, jvmArgs, Collections.emptyList(), null, output);
+    }
+  }
+
+  private static TestWorker start(
+      List<String> jars,
+      List<String> directories,
+      List<String> jvmArgs,
+      List<String> sharing,
+      CdsArchive dumpArchive,
+      Consumer<String> output)
+      throws IOException {
+    List<String> classpath = classpath(jars);
+    List<String> command = new ArrayList<>();
+    command.add(
+        new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+    command.addAll(jvmArgs);
+    command.addAll(sharing);
+    command.add("-cp");
+    command.add(String.join(File.pathSeparator, classpath));
+    command.add(TestWorkerMain.class.getName());
+    command.addAll(directories);
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    TestWorker worker = new TestWorker(process, output, dumpArchive);
+    if (worker.readUntil(TestWorkerMain.READY, new Result()) == null) {
+      worker.close();
+      throw new IOException("Test worker exited before being ready!");
+    }
+    return worker;
+  }
+
+  /**
+   * @param jars class path entries loaded once.
+   * @return the class path of a worker JVM.
+   * @throws IOException if the plugin classes can't be located.
+   */
+  public static List<String> classpath(List<String> jars) throws IOException {
+    List<String> classpath = new ArrayList<>(jars);
+    classpath.add(pluginClasspath());
+    return classpath;
+  }
+
+  /**
+   * @param jars class path entries loaded once.
+   * @return whether TestNG is one of them, without it workers can't run tests.
+   */
+  public static boolean hasTestNg(List<String> jars) {
+    for (String jar : jars) {
+      try (JarFile file = new JarFile(jar)) {
+        if (file.getEntry(TESTNG_CLASS) != null) {
+          return true;
+        }
+      } catch (IOException ex) {
+        // Not a jar
+      }
+    }
+    return false;
+  }
+
+  /** The jar or directory the plugin classes are loaded from. */
+  private static String pluginClasspath() throws IOException {
+    try {
+      return new File(
+              TestWorkerMain.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+          .getAbsolutePath();
+    } catch (URISyntaxException ex) {
+      throw new IOException("Unable to locate the plugin classes!", ex);
+    }
+  }
+
+  /**
+   * Runs test classes and waits for them to finish.
+   *
+   * @param classNames test class names.
+   * @return the result.
+   * @throws IOException if the worker died.
+   */
+  public Result run(Collection<String> classNames) throws IOException {
+    return run(classNames, Collections.emptyList());
+  }
+
+  /**
+   * Runs test classes and waits for them to finish.
+   *
+   * @param classNames test class names.
+   * @param configurationClassNames classes run only for their configuration methods, i.e. {@code
+   *     BeforeSuite}, without their test methods.
+   * @return the result.
+   * @throws IOException if the worker died.
+   */
+  public synchronized Result run(
+      Collection<String> classNames, Collection<String> configurationClassNames)
+      throws IOException {
+    writer.write(
+        TestWorkerMain.RUN
+            + String.join(",", classNames)
+            + (configurationClassNames.isEmpty()
+                ? ""
+                : " " + String.join(",", configurationClassNames))
+            + "\n");
+    writer.flush();
+    Result result = new Result();
+    String done = readUntil(TestWorkerMain.DONE, result);
+    if (done == null) {
+      throw new IOException("Test worker exited unexpectedly!");
+    }
+    String[] counts = done.trim().split(" ");
+    result.passed = Integer.parseInt(counts[0]);
+    result.failed = Integer.parseInt(counts[1]);
+    result.skipped = Integer.parseInt(counts[2]);
+    return result;
+  }
+
+  /**
+   * Forwards the output until a protocol line with the given command.
+   *
+   * @return the rest of the line or null if the worker exited.
+   */
+  private String readUntil(String command, Result result) throws IOException {
+    String line;
+    while ((line = reader.readLine()) != null) {
+      if (!line.startsWith(TestWorkerMain.PREFIX)) {
+        output.accept(line);
+        continue;
+      }
+      String message = line.substring(TestWorkerMain.PREFIX.length());
+      if (message.startsWith(command)) {
+        return message.substring(command.length());
+      } else if (message.startsWith(TestWorkerMain.FAILED)) {
+        result.failures.add(message.substring(TestWorkerMain.FAILED.length()));
+      } else if (message.startsWith(TestWorkerMain.RESULT)) {
+        // status millis class method [message]
+        String[] fields = message.substring(TestWorkerMain.RESULT.length()).split(" ", 5);
+        result.testCases.add(
+            new TestCase(
+                fields[2],
+                fields[3],
+                TestCase.Status.valueOf(fields[0]),
+                Long.parseLong(fields[1]),
+                fields.length > 4 ? fields[4] : null));
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return whether the JVM is still running.
+   */
+  public boolean isAlive() {
+    return process.isAlive();
+  }
+
+  /**
+   * Asks the JVM to exit and waits for it, killing it if it doesn't. A JVM dumping an AppCDS
+   * archive at exit is given longer, and its archive is told how it exited.
+   */
+  @Override
+  public synchronized void close() {
+    try {
+      writer.write(TestWorkerMain.EXIT + "\n");
+      writer.flush();
+      if (dumpArchive == null) {
+        process.waitFor(10, TimeUnit.SECONDS);
+      } else {
+        process.waitFor(DUMP_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+      }
+    } catch (IOException ex) {
+      // Already gone
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (process.isAlive()) {
+        process.destroyForcibly();
+      }
+      if (dumpArchive != null) {
+        try {
+          // Killed JVMs exit with a signal
+          dumpArchive.exited(
+              process.waitFor(10, TimeUnit.SECONDS) ? process.exitValue() : Integer.MIN_VALUE);
+        } catch (InterruptedException ex) {
+          dumpArchive.exited(Integer.MIN_VALUE);
+          Thread.currentThread().interrupt();
+        }
+      }
+      try {
+        Runtime.getRuntime().removeShutdownHook(shutdownHook);
+      } catch (IllegalStateException ex) {
+        // Shutting down
+      }
+    }
+  }
+
+  /** Outcome of a run. */
+  public static final class Result {
+    private int passed;
+    private int failed;
+    private int skipped;
+    private final List<String> failures = new ArrayList<>();
+    private final List<TestCase> testCases = new ArrayList<>();
+
+    public int getPassed() {
+      return passed;
+    }
+
+    public int getFailed() {
+      return failed;
+    }
+
+    public int getSkipped() {
+      return skipped;
+    }
+
+    /**
+     * @return the failed tests with their error, as {@code class.method: error}.
+     */
+    public List<String> getFailures() {
+      return Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * @return the outcome of every test method run.
+     */
+    public List<TestCase> getTestCases() {
+      return Collections.unmodifiableList(testCases);
+    }
+
+    /**
+     * Counts the outcome of a test method.
+     *
+     * @param testCase the outcome.
+     */
+    void add(TestCase testCase) {
+      testCases.add(testCase);
+      switch (testCase.getStatus()) {
+        case PASS:
+          passed++;
+          break;
+        case FAIL:
+          failed++;
+          failures.add(
+              testCase.getClassName()
+                  + "."
+                  + testCase.getMethodName()
+                  + ": "
+                  + testCase.getMessage());
+          break;
+        default:
+          skipped++;
+      }
+    }
+
+    /**
+     * Counts a failure outside of any test method, e.g. a class which couldn't be loaded.
+     *
+     * @param failure the failure, as {@code class: error}.
+     */
+    void fail(String failure) {
+      failed++;
+      failures.add(failure);
+    }
+
+    /**
+     * Adds the outcome of another run to this one.
+     *
+     * @param other result of another run.
+     */
+    void merge(Result other) {
+      passed += other.passed;
+      failed += other.failed;
+      skipped += other.skipped;
+      failures.addAll(other.failures);
+      testCases.addAll(other.testCases);
+    }
+  }
+
+  /** Outcome of a test method. */
+  public static final class TestCase {
+    /** How the test method ended. */
+    public enum Status {
+      PASS,
+      FAIL,
+      SKIP
+    }
+
+    private final String className;
+    private final String methodName;
+    private final Status status;
+    private final long millis;
+    private final String message;
+
+    public TestCase(
+        String className, String methodName, Status status, long millis, String message) {
+      this.className = className;
+      this.methodName = methodName;
+      this.status = status;
+      this.millis = millis;
+      this.message = message;
+    }
+
+    public String getClassName() {
+      return className;
+    }
+
+    public String getMethodName() {
+      return methodName;
+    }
+
+    public Status getStatus() {
+      return status;
+    }
+
+    public long getMillis() {
+      return millis;
+    }
+
+    /**
+     * @return the error of a failed or skipped test, null if none.
+     */
+    public String getMessage() {
+      return message;
+    }
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.testng.ITestResult;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+
+/**
+ * Entry point of the JVM kept warm by {@link TestWorker}. Jars are on the JVM class path and loaded
+ * once; the class directories given as arguments are loaded by a new class loader on every run, so
+ * recompiled classes are picked up.
+ *
+ * <p>Commands are read from the standard input, one per line: {@code RUN a.Test,b.Test c.Config} or
+ * {@code EXIT}. The optional second list holds classes run only for their configuration methods,
+ * i.e. {@code @BeforeSuite}, their test methods are left out. Results are written to the standard
+ * output as lines starting with {@link #PREFIX}, one {@code RESULT status millis class method
+ * message} line per test method or failed configuration method and a {@code DONE} line per run; the
+ * rest of the output belongs to the tests.
+ *
+ * <p>Only TestNG and the JDK may be used here, the plugin dependencies aren't on the class path.
+ */
+public final class TestWorkerMain {
+  /** Prefix of the protocol lines. */
+  public static final String PREFIX = "@@testng-ci ";
+
+  static final String RUN = "RUN ";
+  static final String EXIT = "EXIT";
+  static final String READY = "READY";
+  static final String FAILED = "FAILED ";
+  static final String RESULT = "RESULT ";
+  static final String DONE = "DONE ";
+
+  private TestWorkerMain() {}
+
+  /**
+   * @param args class directories to reload on every run.
+   * @throws IOException if the standard input can't be read.
+   */
+  public static void main(String[] args) throws IOException {
+    URL[] urls = new URL[args.length];
+    for (int i = 0; i < args.length; i++) {
+      urls[i] = new File(args[i]).toURI().toURL();
+    }
+    PrintStream out = System.out;
+    BufferedReader in =
+        new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    out.println(PREFIX + READY);
+    out.flush();
+    String line;
+    while ((line = in.readLine()) != null && !line.equals(EXIT)) {
+      if (line.startsWith(RUN)) {
+        String[] lists = line.substring(RUN.length()).split(" ", 2);
+        run(urls, lists[0].split(","), lists.length > 1 ? lists[1].split(",") : new String[0], out);
+      }
+    }
+  }
+
+  private static void run(
+      URL[] urls, String[] testClassNames, String[] configurationClassNames, PrintStream out) {
+    List<String> classNames = new ArrayList<>(Arrays.asList(testClassNames));
+    classNames.addAll(Arrays.asList(configurationClassNames));
+    Set<String> configurationOnly = new HashSet<>(Arrays.asList(configurationClassNames));
+    Thread thread = Thread.currentThread();
+    ClassLoader previous = thread.getContextClassLoader();
+    try (URLClassLoader loader = new URLClassLoader(urls, TestWorkerMain.class.getClassLoader())) {
+      thread.setContextClassLoader(loader);
+      List<Class<?>> classes = new ArrayList<>();
+      for (String className : classNames) {
+        try {
+          classes.add(Class.forName(className, false, loader));
+        } catch (ClassNotFoundException | LinkageError ex) {
+          out.println(PREFIX + FAILED + className + ": " + ex);
+        }
+      }
+      TestListenerAdapter listener = new TestListenerAdapter();
+      TestNG testng = new TestNG();
+      testng.setUseDefaultListeners(false);
+      testng.setVerbose(0);
+      testng.addListener(listener);
+      testng.setMethodInterceptor(
+          (methods, context) ->
+              methods.stream()
+                  .filter(m -> !configurationOnly.contains(m.getMethod().getTestClass().getName()))
+                  .collect(Collectors.toList()));
+      testng.setTestClasses(classes.toArray(new Class[0]));
+      testng.run();
+      report(listener.getPassedTests(), "PASS", out);
+      report(listener.getFailedTests(), "FAIL", out);
+      report(listener.getSkippedTests(), "SKIP", out);
+      // Failed hooks are failures of the run, not only skips of the tests depending on them
+      report(listener.getConfigurationFailures(), "FAIL", out);
+      List<ITestResult> failures = new ArrayList<>(listener.getFailedTests());
+      failures.addAll(listener.getConfigurationFailures());
+      for (ITestResult result : failures) {
+        out.println(
+            PREFIX
+                + FAILED
+                + result.getTestClass().getName()
+                + "."
+                + result.getMethod().getMethodName()
+                + ": "
+                + String.valueOf(result.getThrowable()).replace('\n', ' '));
+      }
+      out.println(
+          PREFIX
+              + DONE
+              + listener.getPassedTests().size()
+              + " "
+              + (failures.size() + classNames.size() - classes.size())
+              + " "
+              + listener.getSkippedTests().size());
+    } catch (IOException | RuntimeException ex) {
+      out.println(PREFIX + FAILED + String.join(",", classNames) + ": " + ex);
+      out.println(PREFIX + DONE + "0 " + classNames.size() + " 0");
+    } finally {
+      thread.setContextClassLoader(previous);
+      out.flush();
+    }
+  }
+
+  private static void report(List<ITestResult> results, String status, PrintStream out) {
+    for (ITestResult result : results) {
+      Throwable error = result.getThrowable();
+      out.println(
+          PREFIX
+              + RESULT
+              + status
+              + " "
+              + Math.max(result.getEndMillis() - result.getStartMillis(), 0)
+              + " "
+              + result.getTestClass().getName()
+              + " "
+              + result.getMethod().getMethodName()
+              + (error == null ? "" : " " + String.valueOf(error).replace('\n', ' ')));
+    }
+  }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable type dependency graph. Type names are interned to dense int ids and edges are kept in
+ * compressed sparse row (CSR) layout in both directions so closures can be computed as {@link
+ * BitSet} traversals without boxing.
+ *
+ * <p>An edge {@code from -> to} means {@code from} depends on {@code to} (e.g. extends or
+ * implements it), so {@link #descendants(BitSet)} answers "what is impacted when these types
+ * change".
+ */
+public final class TypeGraph {
+  private final String[] names;
+  private final Map<String, Integer> ids;
+  /** Dependencies of each node (out edges). */
+  private final int[] outOffsets;
+
+  private final int[] outTargets;
+  /** Dependents of each node (in edges). */
+  private final int[] inOffsets;
+
+  private final int[] inTargets;
+
+  private TypeGraph(
+      String[] names,
+      Map<String, Integer> ids,
+      int[] outOffsets,
+      int[] outTargets,
+      int[] inOffsets,
+      int[] inTargets) {
+    this.names = names;
+    this.ids = ids;
+    this.outOffsets = outOffsets;
+    this.outTargets = outTargets;
+    this.inOffsets = inOffsets;
+    this.inTargets = inTargets;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * @return the number of nodes in this graph.
+   */
+  public int size() {
+    return names.length;
+  }
+
+  /**
+   * @param name type name.
+   * @return the id of the type or -1 if it is not part of this graph.
+   */
+  public int idOf(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @param id node id.
+   * @return the type name for the id.
+   */
+  public String nameOf(int id) {
+    return names[id];
+  }
+
+  /**
+   * Computes all the types that directly or transitively depend on any of the seeds.
+   *
+   * @param seeds ids of the changed types.
+   * @return closure including the seeds themselves.
+   */
+  public BitSet descendants(BitSet seeds) {
+    return closure(seeds, inOffsets, inTargets);
+  }
+
+  /**
+   * Computes all the types any of the seeds directly or transitively depend on.
+   *
+   * @param seeds ids of the starting types.
+   * @return closure including the seeds themselves.
+   */
+  public BitSet reachable(BitSet seeds) {
+    return closure(seeds, outOffsets, outTargets);
+  }
+
+  private BitSet closure(BitSet seeds, int[] offsets, int[] targets) {
+    BitSet visited = new BitSet(names.length);
+    int[] stack = new int[Math.max(1, seeds.cardinality())];
+    int top = 0;
+    for (int i = seeds.nextSetBit(0); i >= 0 && i < names.length; i = seeds.nextSetBit(i + 1)) {
+      visited.set(i);
+      stack[top++] = i;
+    }
+    while (top > 0) {
+      int node = stack[--top];
+      for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+        int next = targets[e];
+        if (!visited.get(next)) {
+          visited.set(next);
+          if (top == stack.length) {
+            stack = Arrays.copyOf(stack, Math.min(names.length, stack.length * 2));
+          }
+          stack[top++] = next;
+        }
+      }
+    }
+    return visited;
+  }
+
+  /** Collects nodes and edges before laying them out in CSR form. */
+  public static final class Builder {
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[16];
+    private int[] edgeFrom = new int[16];
+    private int[] edgeTo = new int[16];
+    private int edgeCount;
+
+    private Builder() {}
+
+    /**
+     * Interns a type name.
+     *
+     * @param name type name.
+     * @return dense id for the name.
+     */
+    public int intern(String name) {
+      Integer id = ids.get(name);
+      if (id == null) {
+        id = ids.size();
+        if (id == names.length) {
+          names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[id] = name;
+        ids.put(name, id);
+      }
+      return id;
+    }
+
+    /**
+     * Records that {@code from} depends on {@code to}.
+     *
+     * @param from dependent type.
+     * @param to dependency type.
+     * @return this builder.
+     */
+    public Builder addEdge(String from, String to) {
+      int f = intern(from);
+      int t = intern(to);
+      if (edgeCount == edgeFrom.length) {
+        edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+        edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+      }
+      edgeFrom[edgeCount] = f;
+      edgeTo[edgeCount] = t;
+      edgeCount++;
+      return this;
+    }
+
+    public TypeGraph build() {
+      int n = ids.size();
+      int[] outOffsets = new int[n + 1];
+      int[] inOffsets = new int[n + 1];
+      for (int e = 0; e < edgeCount; e++) {
+        outOffsets[edgeFrom[e] + 1]++;
+        inOffsets[edgeTo[e] + 1]++;
+      }
+      for (int i = 0; i < n; i++) {
+        outOffsets[i + 1] += outOffsets[i];
+        inOffsets[i + 1] += inOffsets[i];
+      }
+      int[] outTargets = new int[edgeCount];
+      int[] inTargets = new int[edgeCount];
+      int[] outFill = Arrays.copyOf(outOffsets, n);
+      int[] inFill = Arrays.copyOf(inOffsets, n);
+      for (int e = 0; e < edgeCount; e++) {
+        outTargets[outFill[edgeFrom[e]]++] = edgeTo[e];
+        inTargets[inFill[edgeTo[e]]++] = edgeFrom[e];
+      }
+      return new TypeGraph(
+          Arrays.copyOf(names, n),
+          new HashMap<>(ids),
+          outOffsets,
+          outTargets,
+          inOffsets,
+          inTargets);
+    }
+  }
+}
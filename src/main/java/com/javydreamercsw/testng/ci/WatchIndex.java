@@ -0,0 +1,206 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of the compiled classes of a module, kept up to date from the files changed in
+ * its output directories. Class files are compared by checksum, so a recompilation producing the
+ * same bytecode doesn't select anything.
+ */
+public class WatchIndex {
+  private final Path testOutput;
+  private final Path output;
+  private final CoverageIndex coverageIndex;
+  private final BytecodeIndex tests;
+  private final Map<String, Long> mainChecksums = new HashMap<>();
+  private TypeGraph graph;
+
+  private WatchIndex(
+      Path testOutput, Path output, CoverageIndex coverageIndex, BytecodeIndex tests) {
+    this.testOutput = testOutput;
+    this.output = output;
+    this.coverageIndex = coverageIndex;
+    this.tests = tests;
+    this.graph = tests.impactGraph();
+  }
+
+  /**
+   * Reads the output directories of a module.
+   *
+   * @param testOutput test class output directory.
+   * @param output class output directory.
+   * @param coverageIndex coverage index to select tests for production changes, may be null.
+   * @return the index.
+   * @throws IOException if a class file can't be read.
+   */
+  public static WatchIndex build(Path testOutput, Path output, CoverageIndex coverageIndex)
+      throws IOException {
+    WatchIndex index =
+        new WatchIndex(testOutput, output, coverageIndex, BytecodeIndex.scan(testOutput));
+    for (Path classFile : classFiles(output)) {
+      BytecodeIndex.ClassInfo info = BytecodeIndex.read(Files.readAllBytes(classFile));
+      index.mainChecksums.put(info.getName(), info.getChecksum());
+    }
+    return index;
+  }
+
+  private static List<Path> classFiles(Path root) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return new ArrayList<>();
+    }
+    try (Stream<Path> files = Files.walk(root)) {
+      return files.filter(f -> f.toString().endsWith(".class")).collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * @return the number of indexed test classes.
+   */
+  public int size() {
+    return tests.getClasses().size();
+  }
+
+  /**
+   * @return every file in the output directories, to refresh the index after lost events.
+   * @throws IOException if the directories can't be walked.
+   */
+  public List<Path> allFiles() throws IOException {
+    List<Path> files = new ArrayList<>();
+    for (Path root : new Path[] {testOutput, output}) {
+      if (Files.isDirectory(root)) {
+        try (Stream<Path> walk = Files.walk(root)) {
+          walk.filter(Files::isRegularFile).forEach(files::add);
+        }
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Updates the index with changed files and selects the test classes they impact.
+   *
+   * @param changedFiles created, modified or deleted files; only those in the output directories
+   *     are considered.
+   * @return the selection, including abstract classes.
+   * @throws IOException if a class file can't be read.
+   */
+  public TestSelection update(Collection<Path> changedFiles) throws IOException {
+    TestSelection selection = new TestSelection();
+    List<String> changedTests = new ArrayList<>();
+    List<String> changedMain = new ArrayList<>();
+    List<Path> changedResources = new ArrayList<>();
+    boolean graphChanged = false;
+    for (Path file : changedFiles) {
+      Path root = rootOf(file);
+      if (root == null) {
+        continue;
+      }
+      String relative = relativize(root, file);
+      if (!relative.endsWith(".class")) {
+        changedResources.add(file);
+        selection.explainChange(relative, "resource");
+        continue;
+      }
+      String name = relative.substring(0, relative.length() - ".class".length()).replace('/', '.');
+      if (!Files.isRegularFile(file)) {
+        if (root == testOutput ? tests.remove(name) != null : mainChecksums.remove(name) != null) {
+          graphChanged |= root == testOutput;
+          selection.explainChange(relative, "deleted class");
+        }
+        continue;
+      }
+      BytecodeIndex.ClassInfo info = BytecodeIndex.read(Files.readAllBytes(file));
+      if (root == testOutput) {
+        BytecodeIndex.ClassInfo previous = tests.get(info.getName());
+        if (previous == null || previous.getChecksum() != info.getChecksum()) {
+          tests.put(info);
+          graphChanged = true;
+          changedTests.add(info.getName());
+          selection.explainChange(relative, "changed test class");
+        }
+      } else {
+        Long previous = mainChecksums.put(info.getName(), info.getChecksum());
+        if (previous == null || previous != info.getChecksum()) {
+          changedMain.add(info.getName());
+          selection.explainChange(relative, "changed production class");
+        }
+      }
+    }
+    if (graphChanged) {
+      graph = tests.impactGraph();
+    }
+    BitSet seeds = new BitSet(graph.size());
+    for (String test : changedTests) {
+      seed(test, "changed", seeds, selection);
+    }
+    for (String className : changedMain) {
+      if (coverageIndex != null) {
+        for (String test : coverageIndex.testsForClass(className)) {
+          seed(test, String.format("executed changed class '%s'", className), seeds, selection);
+        }
+      }
+    }
+    for (Path resource : changedResources) {
+      Path root = rootOf(resource);
+      String name = relativize(root, resource);
+      for (BytecodeIndex.ClassInfo info : tests.getClasses()) {
+        String constant = info.findResourceReference(name, resource.getFileName().toString());
+        if (constant != null) {
+          seed(
+              info.getName(),
+              String.format("references changed resource '%s'", constant),
+              seeds,
+              selection);
+        }
+      }
+    }
+    tests.propagate(graph, seeds, selection);
+    return selection;
+  }
+
+  private Path rootOf(Path file) {
+    if (file.startsWith(testOutput)) {
+      return testOutput;
+    }
+    return file.startsWith(output) ? output : null;
+  }
+
+  private static String relativize(Path root, Path file) {
+    return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+  }
+
+  private void seed(String className, String reason, BitSet seeds, TestSelection selection) {
+    int id = graph.idOf(className);
+    if (id >= 0 && tests.get(className) != null) {
+      seeds.set(id);
+      selection.select(className, reason);
+    }
+  }
+
+  /**
+   * @param selection selection returned by {@link #update(Collection)}.
+   * @return the selected classes that can be run, i.e. top level concrete test classes.
+   */
+  public List<String> runnable(TestSelection selection) {
+    return selection.getTests().keySet().stream()
+        .filter(tests::isTestClass)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.shared.utils.StringUtils;
+import org.apache.maven.shared.utils.cli.CommandLineException;
+
+/**
+ * Watches the sources and classes of a module and, on every change, runs the impacted test classes
+ * in a JVM kept warm between runs. The module is indexed once; changes update the index instead of
+ * scanning again. Meant for a single module, i.e. {@code mvn -pl module testng-ci:watch}, and runs
+ * until interrupted.
+ */
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
+public class WatchMojo extends AbstractSelectionMojo {
+  /**
+   * Milliseconds without file events before acting on the changes, so a save or a compilation
+   * touching many files triggers a single run.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "quietPeriod", defaultValue = "300")
+  private long quietPeriod = 300;
+
+  /**
+   * Whether to compile the module when a source or resource changes, in process when only Java
+   * sources changed and {@code incrementalCompile} is enabled. Disable it when the IDE already
+   * compiles into the output directories.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "compileOnSourceChange", defaultValue = "true")
+  private boolean compileOnSourceChange = true;
+
+  /**
+   * JVM arguments of the test JVM.
+   *
+   * @since 1.0.0
+   */
+  @Parameter(property = "watchArgLine")
+  private String watchArgLine;
+
+  private final Map<WatchKey, Path> directories = new HashMap<>();
+  private final List<String> jars = new ArrayList<>();
+  private final List<String> classDirectories = new ArrayList<>();
+  private final List<String> jvmArgs = new ArrayList<>();
+  private TestWorker worker;
+  private CdsArchive archive;
+
+  @Override
+  public void execute() throws MojoExecutionException, MojoFailureException {
+    Path testOutput = Paths.get(project.getBuild().getTestOutputDirectory());
+    Path output = Paths.get(project.getBuild().getOutputDirectory());
+    try {
+      for (Object element : project.getTestClasspathElements()) {
+        (new File((String) element).isDirectory() ? classDirectories : jars).add((String) element);
+      }
+    } catch (DependencyResolutionRequiredException ex) {
+      throw new MojoExecutionException("Unable to resolve the test class path!", ex);
+    }
+    if (StringUtils.isNotBlank(watchArgLine)) {
+      jvmArgs.addAll(Arrays.asList(watchArgLine.trim().split("\\s+")));
+    }
+    archive = getCdsArchive(jars);
+    try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+      // Started before indexing, so the JVM warms up meanwhile
+      startWorker();
+      Files.createDirectories(testOutput);
+      Files.createDirectories(output);
+      WatchIndex index;
+      try (PhaseMetrics.Phase phase = metrics.start("scan")) {
+        index =
+            WatchIndex.build(
+                testOutput, output, isUseCoverageIndex() ? loadCoverageIndex(project) : null);
+      }
+      Set<Path> sourceRoots = new LinkedHashSet<>();
+      for (Object root : project.getCompileSourceRoots()) {
+        sourceRoots.add(Paths.get((String) root));
+      }
+      for (Object root : project.getTestCompileSourceRoots()) {
+        sourceRoots.add(Paths.get((String) root));
+      }
+      for (Resource resource : project.getBuild().getResources()) {
+        sourceRoots.add(Paths.get(resource.getDirectory()));
+      }
+      for (Resource resource : project.getBuild().getTestResources()) {
+        sourceRoots.add(Paths.get(resource.getDirectory()));
+      }
+      for (Path root : sourceRoots) {
+        register(watcher, root, null);
+      }
+      register(watcher, testOutput, null);
+      register(watcher, output, null);
+      getLog()
+          .info(
+              String.format(
+                  "Watching '%s' (%d test classes), press Ctrl+C to stop.",
+                  project.getArtifactId(), index.size()));
+      watch(watcher, index, testOutput, output);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    } catch (IOException ex) {
+      throw new MojoExecutionException("Unable to watch the project!", ex);
+    } finally {
+      if (worker != null) {
+        worker.close();
+        publishCdsArchive(archive);
+      }
+    }
+  }
+
+  private void startWorker() throws IOException {
+    // Published once the worker dumping it exits
+    publishCdsArchive(archive);
+    worker = TestWorker.start(jars, classDirectories, jvmArgs, archive, getLog()::info);
+  }
+
+  private void watch(WatchService watcher, WatchIndex index, Path testOutput, Path output)
+      throws InterruptedException, IOException, MojoFailureException {
+    while (true) {
+      Set<Path> changes = new LinkedHashSet<>();
+      WatchKey key = watcher.take();
+      while (key != null) {
+        if (collect(watcher, key, changes)) {
+          changes.addAll(index.allFiles());
+        }
+        key = watcher.poll(quietPeriod, TimeUnit.MILLISECONDS);
+      }
+      List<Path> classChanges = new ArrayList<>();
+      List<Path> sourceChanges = new ArrayList<>();
+      for (Path change : changes) {
+        if (change.startsWith(testOutput) || change.startsWith(output)) {
+          classChanges.add(change);
+        } else {
+          sourceChanges.add(change);
+        }
+      }
+      if (!sourceChanges.isEmpty() && compileOnSourceChange) {
+        // The resulting class files are picked up as the next changes
+        compile(sourceChanges);
+      }
+      if (!classChanges.isEmpty()) {
+        runImpactedTests(index, classChanges);
+      }
+    }
+  }
+
+  /**
+   * Adds the changed files of a key to the changes, registering created directories.
+   *
+   * @return whether events were lost.
+   */
+  private boolean collect(WatchService watcher, WatchKey key, Set<Path> changes)
+      throws IOException {
+    Path directory = directories.get(key);
+    boolean overflow = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        overflow = true;
+        continue;
+      }
+      Path file = directory.resolve((Path) event.context());
+      if (event.kind() == ENTRY_CREATE && Files.isDirectory(file)) {
+        // Files created before the directory is registered have no events
+        register(watcher, file, changes);
+      } else {
+        changes.add(file);
+      }
+    }
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+    return overflow;
+  }
+
+  private void register(WatchService watcher, Path root, Set<Path> files) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    try (Stream<Path> walk = Files.walk(root)) {
+      for (Path path : (Iterable<Path>) walk::iterator) {
+        if (Files.isDirectory(path)) {
+          directories.put(path.register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+        } else if (files != null) {
+          files.add(path);
+        }
+      }
+    }
+  }
+
+  private void compile(List<Path> sources) throws MojoFailureException, IOException {
+    getLog().info("Compiling...");
+    if (isIncrementalCompile()) {
+      Path baseDir = project.getBasedir().toPath();
+      List<FileChange> fileChanges = new ArrayList<>();
+      for (Path source : sources) {
+        fileChanges.add(
+            new FileChange(
+                Files.exists(source) ? FileChange.Status.MODIFIED : FileChange.Status.DELETED,
+                baseDir.relativize(source).toString().replace(File.separatorChar, '/'),
+                null,
+                0));
+      }
+      String reason =
+          compileInProcess(
+              project,
+              new ReactorLayout(Collections.singletonList(project))
+                  .assign(baseDir, fileChanges)
+                  .getOrDefault(project, Collections.emptyList()));
+      if (reason == null) {
+        return;
+      }
+      if (verbose) {
+        getLog().info(String.format("Compiling with Maven: %s.", reason));
+      }
+    }
+    try {
+      CommandResult result =
+          executeMavenCommandExitCode(
+              "test-compile", "-pl", project.getGroupId() + ":" + project.getArtifactId());
+      if (result.getExitCode() != SUCCESS_EXIT_CODE) {
+        getLog().error("Error compiling project!");
+      }
+    } catch (CommandLineException ex) {
+      getLog().error(ex);
+    }
+  }
+
+  private void runImpactedTests(WatchIndex index, List<Path> changes) throws IOException {
+    TestSelection selection;
+    try (PhaseMetrics.Phase phase = metrics.start("select")) {
+      selection = index.update(changes);
+    }
+    List<String> tests = index.runnable(selection);
+    if (tests.isEmpty()) {
+      getLog().info("No test classes impacted.");
+      return;
+    }
+    if (verbose) {
+      selection
+          .getTests()
+          .forEach(
+              (test, reasons) ->
+                  getLog()
+                      .info(
+                          String.format(
+                              "Marking class '%s' to be tested (%s)!",
+                              test, String.join("; ", reasons))));
+    }
+    getLog().info(String.format("Running %d test class(es)...", tests.size()));
+    if (!worker.isAlive()) {
+      // i.e. a test called System.exit()
+      getLog().warn("Test JVM exited, starting a new one.");
+      worker.close();
+      startWorker();
+    }
+    TestWorker.Result result;
+    try (PhaseMetrics.Phase phase = metrics.start("test")) {
+      result = worker.run(tests);
+    }
+    for (String failure : result.getFailures()) {
+      getLog().error(failure);
+    }
+    getLog()
+        .info(
+            String.format(
+                "Tests run: %d, Failures: %d, Skipped: %d",
+                result.getPassed() + result.getFailed() + result.getSkipped(),
+                result.getFailed(),
+                result.getSkipped()));
+  }
+}
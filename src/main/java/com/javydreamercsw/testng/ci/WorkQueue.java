@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distributes test classes to the lanes of a worker pool, longest first. The lanes are seeded
+ * greedily, the longest remaining class going to the least loaded lane. A lane running out of work
+ * steals the shortest class of the lane with the most estimated work left, so estimates off by a
+ * lot don't leave workers idle. Safe for concurrent use.
+ */
+public final class WorkQueue {
+  private final List<Deque<String>> lanes = new ArrayList<>();
+  private final Map<String, Long> estimates;
+  private final long[] remaining;
+  private int stolen;
+
+  /**
+   * @param estimates estimated duration of each class, in milliseconds.
+   * @param laneCount number of lanes.
+   */
+  public WorkQueue(Map<String, Long> estimates, int laneCount) {
+    this.estimates = estimates;
+    this.remaining = new long[laneCount];
+    for (int i = 0; i < laneCount; i++) {
+      lanes.add(new ArrayDeque<>());
+    }
+    List<String> classes = new ArrayList<>(estimates.keySet());
+    classes.sort(Comparator.comparing(estimates::get).reversed());
+    for (String className : classes) {
+      int lane = 0;
+      for (int i = 1; i < laneCount; i++) {
+        if (remaining[i] < remaining[lane]) {
+          lane = i;
+        }
+      }
+      lanes.get(lane).addLast(className);
+      remaining[lane] += estimates.get(className);
+    }
+  }
+
+  /**
+   * @param lane lane asking for work.
+   * @return the next class to run on the lane, null once every class was handed out.
+   */
+  public synchronized String next(int lane) {
+    String next = lanes.get(lane).pollFirst();
+    int from = lane;
+    if (next == null) {
+      from = -1;
+      for (int i = 0; i < lanes.size(); i++) {
+        if (!lanes.get(i).isEmpty() && (from < 0 || remaining[i] > remaining[from])) {
+          from = i;
+        }
+      }
+      if (from < 0) {
+        return null;
+      }
+      next = lanes.get(from).pollLast();
+      stolen++;
+    }
+    remaining[from] -= estimates.get(next);
+    return next;
+  }
+
+  /**
+   * @return the number of classes run by another lane than the one they were assigned to.
+   */
+  public synchronized int getStolen() {
+    return stolen;
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs test classes on a pool of {@link TestWorker} JVMs on this machine. Each lane owns a JVM,
+ * reused for every class it runs, and takes its classes from a {@link WorkQueue}. Every class runs
+ * alone in its JVM, so classes with static state never share a JVM concurrently. The suite
+ * configuration classes are queued like the others; every run also loads them without their test
+ * methods, as its classes are freshly loaded and need their {@code BeforeSuite} methods. A JVM
+ * dying fails the class it was running and is replaced.
+ */
+public class WorkerPool {
+  private final int size;
+  private final WorkerFactory factory;
+  private volatile int stolen;
+
+  /** Starts worker JVMs. */
+  @FunctionalInterface
+  public interface WorkerFactory {
+    /**
+     * @return a new worker, ready to run classes.
+     * @throws IOException if the worker can't be started.
+     */
+    TestWorker start() throws IOException;
+  }
+
+  /**
+   * @param size most worker JVMs to run at once.
+   * @param factory starts the worker JVMs.
+   */
+  public WorkerPool(int size, WorkerFactory factory) {
+    this.size = Math.max(size, 1);
+    this.factory = factory;
+  }
+
+  /**
+   * Runs test classes, the longest first, and waits for all of them.
+   *
+   * @param estimates estimated duration of each class to run, in milliseconds.
+   * @param suiteClasses classes declaring suite configuration. Their tests run once, like any other
+   *     class, and their configuration methods run along with every class.
+   * @param reportsDirectory where to write a surefire report per class, null for none.
+   * @return the merged result of every class.
+   * @throws IOException if a worker can't be started or a report can't be written.
+   * @throws InterruptedException if interrupted while waiting for the workers.
+   */
+  public TestWorker.Result run(
+      Map<String, Long> estimates, Collection<String> suiteClasses, File reportsDirectory)
+      throws IOException, InterruptedException {
+    int lanes = Math.max(Math.min(size, estimates.size()), 1);
+    WorkQueue queue = new WorkQueue(estimates, lanes);
+    ExecutorService executor = Executors.newFixedThreadPool(lanes);
+    TestWorker.Result total = new TestWorker.Result();
+    try {
+      List<Future<TestWorker.Result>> futures = new ArrayList<>();
+      for (int i = 0; i < lanes; i++) {
+        int lane = i;
+        futures.add(executor.submit(() -> runLane(queue, lane, suiteClasses, reportsDirectory)));
+      }
+      for (Future<TestWorker.Result> future : futures) {
+        try {
+          total.merge(future.get());
+        } catch (ExecutionException ex) {
+          if (ex.getCause() instanceof IOException) {
+            throw (IOException) ex.getCause();
+          }
+          throw new IOException("Unable to run the tests on the workers!", ex.getCause());
+        }
+      }
+    } finally {
+      executor.shutdownNow();
+      stolen = queue.getStolen();
+    }
+    return total;
+  }
+
+  private TestWorker.Result runLane(
+      WorkQueue queue, int lane, Collection<String> suiteClasses, File reportsDirectory)
+      throws IOException {
+    TestWorker.Result laneResult = new TestWorker.Result();
+    TestWorker worker = null;
+    try {
+      String className;
+      while ((className = queue.next(lane)) != null) {
+        if (worker == null || !worker.isAlive()) {
+          if (worker != null) {
+            worker.close();
+          }
+          worker = factory.start();
+        }
+        List<String> configurationClasses = new ArrayList<>(suiteClasses);
+        configurationClasses.remove(className);
+        TestWorker.Result result;
+        try {
+          result = worker.run(Collections.singletonList(className), configurationClasses);
+        } catch (IOException ex) {
+          laneResult.fail(className + ": worker JVM died, " + ex.getMessage());
+          continue;
+        }
+        // Failed suite hooks of every run are reported with the class they ran for
+        List<TestWorker.TestCase> testCases = result.getTestCases();
+        testCases.forEach(laneResult::add);
+        if (reportsDirectory != null && !testCases.isEmpty()) {
+          SurefireReportWriter.write(reportsDirectory, className, testCases);
+        }
+        if (testCases.isEmpty() && result.getFailed() > 0) {
+          // Not even loaded
+          laneResult.fail(className + ": " + String.join("; ", result.getFailures()));
+        }
+      }
+    } finally {
+      if (worker != null) {
+        worker.close();
+      }
+    }
+    return laneResult;
+  }
+
+  /**
+   * @return the number of classes run by another lane than the one first assigned, in the last run.
+   */
+  public int getStolen() {
+    return stolen;
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+public class BytecodeIndexTest {
+  private static final String TESTNG = "Lorg/testng/annotations/";
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private BytecodeIndex index;
+
+  @Before
+  public void setUp() throws Exception {
+    Path root = folder.getRoot().toPath();
+    writeClass(root, "a/Listener", null);
+    writeClass(root, "a/Data", null);
+    writeClass(root, "a/Created", null);
+    writeClass(
+        root,
+        "a/ListenedTest",
+        cw -> {
+          AnnotationVisitor listeners = cw.visitAnnotation(TESTNG + "Listeners;", true);
+          AnnotationVisitor value = listeners.visitArray("value");
+          value.visit(null, Type.getObjectType("a/Listener"));
+          value.visitEnd();
+          listeners.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/DataDrivenTest",
+        cw -> {
+          MethodVisitor method = cw.visitMethod(Opcodes.ACC_PUBLIC, "test", "()V", null, null);
+          AnnotationVisitor test = method.visitAnnotation(TESTNG + "Test;", true);
+          test.visit("dataProviderClass", Type.getObjectType("a/Data"));
+          test.visitEnd();
+          method.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/FactoryTest",
+        cw -> {
+          MethodVisitor method =
+              cw.visitMethod(Opcodes.ACC_PUBLIC, "create", "()[Ljava/lang/Object;", null, null);
+          method.visitAnnotation(TESTNG + "Factory;", true).visitEnd();
+          method.visitCode();
+          method.visitTypeInsn(Opcodes.NEW, "a/Created");
+          method.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/SuiteSetup",
+        cw -> {
+          MethodVisitor method = cw.visitMethod(Opcodes.ACC_PUBLIC, "setUp", "()V", null, null);
+          method.visitAnnotation(TESTNG + "BeforeSuite;", true).visitEnd();
+          method.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/DatabaseTest",
+        cw -> {
+          AnnotationVisitor test = cw.visitAnnotation(TESTNG + "Test;", true);
+          AnnotationVisitor groups = test.visitArray("groups");
+          groups.visit(null, "db");
+          groups.visitEnd();
+          test.visit("singleThreaded", true);
+          test.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/ApiTest",
+        cw -> {
+          MethodVisitor method = cw.visitMethod(Opcodes.ACC_PUBLIC, "test", "()V", null, null);
+          AnnotationVisitor test = method.visitAnnotation(TESTNG + "Test;", true);
+          AnnotationVisitor groups = test.visitArray("dependsOnGroups");
+          groups.visit(null, "db");
+          groups.visitEnd();
+          test.visitEnd();
+          method.visitCode();
+          method.visitFieldInsn(Opcodes.GETSTATIC, "a/SuiteSetup", "url", "Ljava/lang/String;");
+          method.visitEnd();
+        });
+    // Compiled from a single source file
+    writeClass(
+        root,
+        "a/OuterTest",
+        cw -> {
+          cw.visitSource("OuterTest.java", null);
+          cw.visitInnerClass("a/OuterTest$Inner", "a/OuterTest", "Inner", Opcodes.ACC_STATIC);
+          MethodVisitor method = cw.visitMethod(Opcodes.ACC_PUBLIC, "test", "()V", null, null);
+          method.visitAnnotation("Lorg/junit/Test;", true).visitEnd();
+          method.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/OuterTest$Inner",
+        cw -> {
+          cw.visitSource("OuterTest.java", null);
+          cw.visitInnerClass("a/OuterTest$Inner", "a/OuterTest", "Inner", Opcodes.ACC_STATIC);
+          MethodVisitor method = cw.visitMethod(Opcodes.ACC_PUBLIC, "test", "()V", null, null);
+          method.visitAnnotation("Lorg/junit/Test;", true).visitEnd();
+          method.visitEnd();
+        });
+    writeClass(
+        root,
+        "a/OuterTest$1",
+        cw -> {
+          cw.visitSource("OuterTest.java", null);
+          cw.visitOuterClass("a/OuterTest", "test", "()V");
+          cw.visitInnerClass("a/OuterTest$1", null, null, 0);
+        });
+    writeClass(root, "a/Secondary", cw -> cw.visitSource("OuterTest.java", null));
+    // Kotlin doesn't require the directory to match the package
+    writeClass(root, "b/SpecsKt", cw -> cw.visitSource("Specs.kt", null));
+    index = BytecodeIndex.scan(root);
+  }
+
+  private static void writeClass(Path root, String name, Consumer<ClassWriter> body)
+      throws Exception {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+    if (body != null) {
+      body.accept(writer);
+    }
+    writer.visitEnd();
+    Path file = root.resolve(name + ".class");
+    Files.createDirectories(file.getParent());
+    Files.write(file, writer.toByteArray());
+  }
+
+  private TestSelection propagate(String changed) {
+    TypeGraph graph = index.impactGraph();
+    BitSet seeds = new BitSet(graph.size());
+    seeds.set(graph.idOf(changed));
+    TestSelection selection = new TestSelection();
+    selection.select(changed, "changed");
+    index.propagate(graph, seeds, selection);
+    return selection;
+  }
+
+  @Test
+  public void testAnnotations() {
+    assertThat(index.get("a.ListenedTest").getDependencies())
+        .containsEntry("a.Listener", "uses listener");
+    assertThat(index.get("a.DataDrivenTest").getDependencies())
+        .containsEntry("a.Data", "uses data provider class");
+    assertThat(index.get("a.FactoryTest").getDependencies()).containsEntry("a.Created", "creates");
+    assertThat(index.get("a.SuiteSetup").isSuiteConfiguration()).isTrue();
+    assertThat(index.get("a.DatabaseTest").getGroups()).containsExactly("db");
+    assertThat(index.get("a.DatabaseTest").isSingleThreaded()).isTrue();
+    assertThat(index.get("a.ApiTest").getDependsOnGroups()).containsExactly("db");
+  }
+
+  @Test
+  public void testImpactWithoutInheritance() {
+    assertThat(propagate("a.Listener").getTests()).containsOnlyKeys("a.Listener", "a.ListenedTest");
+    assertThat(propagate("a.Data").getTests()).containsOnlyKeys("a.Data", "a.DataDrivenTest");
+    assertThat(propagate("a.Created").getTests()).containsOnlyKeys("a.Created", "a.FactoryTest");
+
+    TestSelection selection = propagate("a.SuiteSetup");
+    assertThat(selection.getTests())
+        .containsOnlyKeys("a.SuiteSetup", "a.ApiTest", "a.DatabaseTest");
+    assertThat(selection.getTests().get("a.ApiTest"))
+        .containsExactly("uses the suite configuration of 'a.SuiteSetup', which is impacted");
+    // The group ApiTest depends on must run along
+    assertThat(selection.getTests().get("a.DatabaseTest"))
+        .containsExactly("required by 'a.ApiTest'");
+  }
+
+  @Test
+  public void testDeferredRequirements() {
+    TestSelection selection = propagate("a.SuiteSetup");
+    selection.defer("a.DatabaseTest", "predicted score 0.010 below 0.1");
+    assertThat(selection.getDeferred()).containsOnlyKeys("a.DatabaseTest");
+
+    // ApiTest depends on the group DatabaseTest declares, so it can't be deferred alone
+    index.selectRequirements(selection);
+    assertThat(selection.getTests())
+        .containsOnlyKeys("a.SuiteSetup", "a.ApiTest", "a.DatabaseTest");
+    assertThat(selection.getDeferred()).isEmpty();
+
+    selection.defer("a.ApiTest", "predicted score 0.010 below 0.1");
+    selection.defer("a.DatabaseTest", "predicted score 0.010 below 0.1");
+    index.selectRequirements(selection);
+    assertThat(selection.getTests()).containsOnlyKeys("a.SuiteSetup");
+    assertThat(selection.getDeferred()).containsOnlyKeys("a.ApiTest", "a.DatabaseTest");
+  }
+
+  @Test
+  public void testClassesCompiledFrom() {
+    assertThat(index.classesCompiledFrom("a/OuterTest.java"))
+        .containsExactlyInAnyOrder(
+            "a.OuterTest", "a.OuterTest$Inner", "a.OuterTest$1", "a.Secondary");
+    assertThat(index.classesCompiledFrom("specs/Specs.kt")).containsExactly("b.SpecsKt");
+    assertThat(index.classesCompiledFrom("a/Listener.java")).isEmpty();
+
+    index.remove("a.Secondary");
+    assertThat(index.classesCompiledFrom("a/OuterTest.java")).hasSize(3);
+  }
+
+  @Test
+  public void testTestClasses() {
+    assertThat(index.isTestClass("a.OuterTest")).isTrue();
+    assertThat(index.isTestClass("a.DataDrivenTest")).isTrue();
+    assertThat(index.isTestClass("a.FactoryTest")).isTrue();
+    // Suite configuration runs even without tests
+    assertThat(index.isTestClass("a.SuiteSetup")).isTrue();
+    // Nested and anonymous classes, even with tests, and helpers only carry the impact
+    assertThat(index.get("a.OuterTest$Inner").isNested()).isTrue();
+    assertThat(index.isTestClass("a.OuterTest$Inner")).isFalse();
+    assertThat(index.get("a.OuterTest$1").isNested()).isTrue();
+    assertThat(index.isTestClass("a.OuterTest$1")).isFalse();
+    assertThat(index.isTestClass("a.Secondary")).isFalse();
+    assertThat(index.isTestClass("a.Data")).isFalse();
+    assertThat(index.isTestClass("a.Listener")).isFalse();
+    assertThat(index.isTestClass("unknown.Test")).isFalse();
+
+    TestSelection selection = propagate("a.OuterTest$1");
+    assertThat(selection.getTests()).containsOnlyKeys("a.OuterTest$1");
+    selection.select("a.OuterTest", "changed");
+    selection.retainTests(index::isTestClass);
+    assertThat(selection.getTests()).containsOnlyKeys("a.OuterTest");
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    File file = folder.newFile("index-snapshot.bin");
+    IndexSnapshot.of(index, "abc123").write(file);
+    IndexSnapshot snapshot = IndexSnapshot.read(file);
+    assertThat(snapshot.getCommit()).isEqualTo("abc123");
+    assertThat(snapshot.classesCompiledFrom("a/OuterTest.java")).hasSize(4);
+    // Deleted classes are still resolved to their former dependents
+    assertThat(snapshot.dependentsOf(Collections.singletonList("a.SuiteSetup")))
+        .containsExactly("a.ApiTest");
+    assertThat(snapshot.dependentsOf(Collections.singletonList("a.Listener")))
+        .containsExactly("a.ListenedTest");
+  }
+}
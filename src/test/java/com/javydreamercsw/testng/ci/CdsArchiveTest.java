@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CdsArchiveTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testKeyedByClasspath() throws Exception {
+    File jar = folder.newFile("dependency.jar");
+    List<String> classpath = Collections.singletonList(jar.getAbsolutePath());
+    String key = CdsArchive.key(classpath);
+    assertThat(CdsArchive.key(classpath)).isEqualTo(key);
+
+    Files.write(jar.toPath(), new byte[] {1, 2, 3});
+    assertThat(CdsArchive.key(classpath)).isNotEqualTo(key);
+    assertThat(CdsArchive.key(Arrays.asList(jar.getAbsolutePath(), "other.jar"))).isNotEqualTo(key);
+  }
+
+  @Test
+  public void testSingleDumpingJvm() throws Exception {
+    Assume.assumeTrue(CdsArchive.isSupported());
+    File directory = folder.newFolder("cds");
+    List<String> classpath = classpath();
+    CdsArchive archive = CdsArchive.forClasspath(directory, classpath);
+    List<String> dumping = archive.jvmArgs();
+    assertThat(dumping).hasSize(1);
+    assertThat(dumping.get(0)).startsWith("-XX:ArchiveClassesAtExit=");
+    // Other JVMs don't wait for the dump
+    assertThat(CdsArchive.forClasspath(directory, classpath).jvmArgs()).isEmpty();
+
+    archive.exited(runJvm(dumping, classpath));
+    assertThat(archive.publish()).isTrue();
+    assertThat(CdsArchive.forClasspath(directory, classpath).jvmArgs())
+        .containsExactly("-XX:SharedArchiveFile=" + archive.getArchive().getAbsolutePath());
+
+    // A JVM failed to start with it
+    archive.discard();
+    assertThat(archive.getArchive()).doesNotExist();
+    assertThat(CdsArchive.forClasspath(directory, classpath).jvmArgs().get(0))
+        .startsWith("-XX:ArchiveClassesAtExit=");
+
+    // Classes in directories can't be archived
+    assertThat(
+            CdsArchive.forClasspath(directory, Collections.singletonList(directory.getPath()))
+                .jvmArgs())
+        .isEmpty();
+  }
+
+  @Test
+  public void testKilledWhileDumping() throws Exception {
+    Assume.assumeTrue(CdsArchive.isSupported());
+    File directory = folder.newFolder("cds");
+    List<String> classpath = classpath();
+    CdsArchive archive = CdsArchive.forClasspath(directory, classpath);
+    File dump = dump(archive);
+    assertThat(runJvm(archive.jvmArgs(), classpath)).isZero();
+    assertThat(dump).isFile();
+
+    // i.e. killed after the timeout
+    archive.exited(137);
+    assertThat(archive.publish()).isFalse();
+    assertThat(dump).doesNotExist();
+    assertThat(archive.getArchive()).doesNotExist();
+  }
+
+  @Test
+  public void testTruncatedDump() throws Exception {
+    Assume.assumeTrue(CdsArchive.isSupported());
+    File directory = folder.newFolder("cds");
+    List<String> classpath = classpath();
+    CdsArchive archive = CdsArchive.forClasspath(directory, classpath);
+    File dump = dump(archive);
+    archive.exited(runJvm(archive.jvmArgs(), classpath));
+    byte[] content = Files.readAllBytes(dump.toPath());
+    Files.write(dump.toPath(), Arrays.copyOf(content, content.length / 2));
+
+    // Mapping it would crash every JVM
+    assertThat(CdsArchive.isValid(dump, classpath)).isFalse();
+    assertThat(archive.publish()).isFalse();
+    assertThat(dump).doesNotExist();
+    assertThat(archive.getArchive()).doesNotExist();
+  }
+
+  private static File dump(CdsArchive archive) {
+    return new File(archive.getArchive().getParentFile(), archive.getArchive().getName() + ".tmp");
+  }
+
+  /**
+   * @return a class path made of a jar.
+   */
+  private List<String> classpath() throws Exception {
+    File jar = folder.newFile("dependency.jar");
+    try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+      out.putNextEntry(new JarEntry("resource.txt"));
+      out.write(1);
+    }
+    return Collections.singletonList(jar.getAbsolutePath());
+  }
+
+  /**
+   * @return the exit code of a JVM started with the arguments and the class path.
+   */
+  private static int runJvm(List<String> args, List<String> classpath) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add(
+        new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath());
+    command.addAll(args);
+    command.add("-cp");
+    command.add(String.join(File.pathSeparator, classpath));
+    command.add("-version");
+    return new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+        .start()
+        .waitFor();
+  }
+}
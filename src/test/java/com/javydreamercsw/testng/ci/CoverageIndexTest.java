@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CoverageIndexTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testIncrementalUpdate() throws Exception {
+    File file = new File(folder.getRoot(), "testng-ci/coverage.idx");
+    CoverageIndex index = CoverageIndex.read(file);
+    assertThat(index.isEmpty()).isTrue();
+
+    index.update(
+        "basic.project.ATest",
+        Arrays.asList("basic.project.A", "basic.project.A$Inner"),
+        Collections.singletonList("basic.project.A#run()V"));
+    index.update(
+        "basic.project.BTest",
+        Collections.singletonList("basic.project.B"),
+        Collections.emptyList());
+    index.write(file);
+
+    index = CoverageIndex.read(file);
+    assertThat(index.testsForClass("basic.project.A")).containsExactly("basic.project.ATest");
+    assertThat(index.testsForMethod("basic.project.A#run()V"))
+        .containsExactly("basic.project.ATest");
+    assertThat(index.getTests()).containsExactly("basic.project.ATest", "basic.project.BTest");
+
+    // A partial run only replaces the tests it executed.
+    index.update(
+        "basic.project.ATest",
+        Collections.singletonList("basic.project.B"),
+        Collections.emptyList());
+
+    assertThat(index.testsForClass("basic.project.A")).isEmpty();
+    assertThat(index.testsForMethod("basic.project.A#run()V")).isEmpty();
+    assertThat(index.testsForClass("basic.project.B"))
+        .containsExactly("basic.project.ATest", "basic.project.BTest");
+  }
+
+  @Test
+  public void testRetainTests() throws Exception {
+    CoverageIndex index = new CoverageIndex();
+    index.update(
+        "basic.project.ATest",
+        Collections.singletonList("basic.project.A"),
+        Collections.singletonList("basic.project.A#run()V"));
+    index.update(
+        "basic.project.BTest",
+        Arrays.asList("basic.project.A", "basic.project.B"),
+        Collections.emptyList());
+    index.update(
+        "basic.project.CTest",
+        Collections.singletonList("basic.project.C"),
+        Collections.emptyList());
+
+    // ATest was renamed to RenamedTest, CTest deleted
+    assertThat(index.retainTests("basic.project.BTest"::equals))
+        .containsExactly("basic.project.ATest", "basic.project.CTest");
+    assertThat(index.retainTests(test -> true)).isEmpty();
+    index.update(
+        "basic.project.RenamedTest",
+        Collections.singletonList("basic.project.A"),
+        Collections.emptyList());
+
+    File file = new File(folder.getRoot(), "coverage.idx");
+    index.write(file);
+    index = CoverageIndex.read(file);
+    assertThat(index.getTests())
+        .containsExactly("basic.project.BTest", "basic.project.RenamedTest");
+    assertThat(index.testsForClass("basic.project.A"))
+        .containsExactly("basic.project.BTest", "basic.project.RenamedTest");
+    assertThat(index.testsForClass("basic.project.B")).containsExactly("basic.project.BTest");
+    assertThat(index.testsForClass("basic.project.C")).isEmpty();
+    assertThat(index.testsForMethod("basic.project.A#run()V")).isEmpty();
+  }
+}
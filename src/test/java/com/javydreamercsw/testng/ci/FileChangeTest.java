@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+import org.junit.Test;
+
+public class FileChangeTest {
+  @Test
+  public void testParse() {
+    assertThat(
+            FileChange.parse(
+                "M\0src/main/java/a/Changed.java\0"
+                    + "A\0src/test/java/a/NewTest.java\0"
+                    + "D\0src/test/java/a/OldTest.java\0"
+                    + "R087\0src/test/java/a/Base.java\0src/test/java/b/Base.java\0"
+                    + "C100\0pom.xml\0core/pom.xml\0\n"))
+        .extracting(
+            FileChange::getStatus,
+            FileChange::getPath,
+            FileChange::getPreviousPath,
+            FileChange::getSimilarity)
+        .containsExactly(
+            tuple(FileChange.Status.MODIFIED, "src/main/java/a/Changed.java", null, 100),
+            tuple(FileChange.Status.ADDED, "src/test/java/a/NewTest.java", null, 100),
+            tuple(FileChange.Status.DELETED, "src/test/java/a/OldTest.java", null, 100),
+            tuple(
+                FileChange.Status.RENAMED,
+                "src/test/java/b/Base.java",
+                "src/test/java/a/Base.java",
+                87),
+            tuple(FileChange.Status.ADDED, "core/pom.xml", null, 100));
+    assertThat(FileChange.parse("")).isEmpty();
+    assertThat(FileChange.parse("\n")).isEmpty();
+  }
+
+  @Test
+  public void testUnusualPaths() {
+    // Quoted and escaped by git without -z
+    assertThat(
+            FileChange.parse(
+                "M\0docs/ñandú.md\0"
+                    + "A\0with space/and\ttab.txt\0"
+                    + "R100\0quote\"d.txt\0new\nline.txt\0"))
+        .extracting(FileChange::getStatus, FileChange::getPath, FileChange::getPreviousPath)
+        .containsExactly(
+            tuple(FileChange.Status.MODIFIED, "docs/ñandú.md", null),
+            tuple(FileChange.Status.ADDED, "with space/and\ttab.txt", null),
+            tuple(FileChange.Status.RENAMED, "new\nline.txt", "quote\"d.txt"));
+  }
+
+  @Test
+  public void testTruncated() {
+    assertThatThrownBy(() -> FileChange.parse("R100\0old.txt\0"))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("R100");
+  }
+}
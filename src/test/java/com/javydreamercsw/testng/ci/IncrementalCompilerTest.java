@@ -0,0 +1,185 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.ToolProvider;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IncrementalCompilerTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final IncrementalCompiler compiler = new IncrementalCompiler();
+  private Path sources;
+  private Path output;
+  private IncrementalCompiler.Unit unit;
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeTrue(compiler.isAvailable());
+    sources = folder.newFolder("src").toPath();
+    output = folder.newFolder("classes").toPath();
+    unit =
+        new IncrementalCompiler.Unit(
+            Collections.singletonList(sources),
+            output,
+            Collections.emptyList(),
+            Collections.singletonList("-g"));
+    write("p/A.java", "package p; public class A { public int value() { return 1; } }");
+    write("p/B.java", "package p; public class B { int value = new A().value(); }");
+    write("p/C.java", "package p; public class C {}");
+    write("p/D.java", "package p; public class D { public static final String NAME = \"d\"; }");
+    write("p/G.java", "package p; public class G { public int size() { return 1; } }");
+    write("p/H.java", "package p; public class H extends G {}");
+    write("p/I.java", "package p; public class I { int size = new H().size(); }");
+    List<String> arguments = new ArrayList<>();
+    arguments.add("-g");
+    arguments.add("-d");
+    arguments.add(output.toString());
+    try (Stream<Path> walk = Files.walk(sources)) {
+      arguments.addAll(
+          walk.filter(Files::isRegularFile).map(Path::toString).collect(Collectors.toList()));
+    }
+    assertThat(
+            ToolProvider.getSystemJavaCompiler()
+                .run(null, null, null, arguments.toArray(new String[0])))
+        .isZero();
+    // Compiled after the last edit
+    FileTime past = FileTime.fromMillis(System.currentTimeMillis() - 60_000);
+    try (Stream<Path> walk = Files.walk(sources)) {
+      for (Path file : walk.filter(Files::isRegularFile).collect(Collectors.toList())) {
+        Files.setLastModifiedTime(file, past);
+      }
+    }
+  }
+
+  @Test
+  public void testCompilesDependents() throws Exception {
+    write("p/A.java", "package p; public class A { public int value() { return 2; } }");
+    IncrementalCompiler.Outcome outcome =
+        compiler.compile(
+            unit,
+            Collections.singletonList("p/A.java"),
+            Collections.emptyList(),
+            Collections.emptyList());
+    assertThat(outcome.isTrusted()).isTrue();
+    assertThat(outcome.getCompiled())
+        .extracting(File::getName)
+        .containsExactlyInAnyOrder("A.java", "B.java");
+    assertThat(outcome.getChangedClasses()).containsExactly("p.A");
+
+    // Up to date
+    assertThat(
+            compiler
+                .compile(
+                    unit, Collections.emptyList(), Collections.emptyList(), Collections.emptyList())
+                .getCompiled())
+        .isEmpty();
+  }
+
+  @Test
+  public void testUpstreamChanges() throws Exception {
+    IncrementalCompiler.Outcome outcome =
+        compiler.compile(
+            unit,
+            Collections.emptyList(),
+            Collections.emptyList(),
+            Collections.singletonList("p.A"));
+    assertThat(outcome.isTrusted()).isTrue();
+    assertThat(outcome.getCompiled()).extracting(File::getName).containsExactly("B.java");
+  }
+
+  @Test
+  public void testDeletedSource() throws Exception {
+    Files.delete(sources.resolve("p/C.java"));
+    IncrementalCompiler.Outcome outcome =
+        compiler.compile(
+            unit,
+            Collections.emptyList(),
+            Collections.singletonList("p/C.java"),
+            Collections.emptyList());
+    assertThat(outcome.isTrusted()).isTrue();
+    assertThat(outcome.getChangedClasses()).containsExactly("p.C");
+    assertThat(output.resolve("p/C.class")).doesNotExist();
+  }
+
+  @Test
+  public void testUntrusted() throws Exception {
+    write("p/A.java", "package p; public class A { public int other() { return 1; } }");
+    assertThat(
+            compiler
+                .compile(
+                    unit,
+                    Collections.singletonList("p/A.java"),
+                    Collections.emptyList(),
+                    Collections.emptyList())
+                .getUntrustedReason())
+        .startsWith("compilation failed");
+
+    // Dependents may have copied the constant
+    write("p/D.java", "package p; public class D { public static final String NAME = \"e\"; }");
+    assertThat(
+            compiler
+                .compile(
+                    unit,
+                    Collections.singletonList("p/D.java"),
+                    Collections.emptyList(),
+                    Collections.emptyList())
+                .getUntrustedReason())
+        .contains("p.D");
+  }
+
+  @Test
+  public void testApiChange() throws Exception {
+    // I only names H, compiled against the inherited size()
+    write("p/G.java", "package p; public class G { public long size() { return 1; } }");
+    IncrementalCompiler.Outcome outcome =
+        compiler.compile(
+            unit,
+            Collections.singletonList("p/G.java"),
+            Collections.emptyList(),
+            Collections.emptyList());
+    assertThat(outcome.getUntrustedReason()).contains("API of 'p.G' changed");
+
+    // Private members aren't part of the API
+    write(
+        "p/A.java",
+        "package p; public class A { public int value() { return one(); }"
+            + " private int one() { return 1; } }");
+    assertThat(
+            compiler
+                .compile(
+                    unit,
+                    Collections.singletonList("p/A.java"),
+                    Collections.emptyList(),
+                    Collections.emptyList())
+                .isTrusted())
+        .isTrue();
+  }
+
+  private void write(String sourcePath, String content) throws Exception {
+    Path file = sources.resolve(sourcePath);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
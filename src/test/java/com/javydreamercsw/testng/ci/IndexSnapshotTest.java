@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class IndexSnapshotTest {
+  private static final String COMMIT = "0123456789abcdef0123456789abcdef01234567";
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private Path classes;
+
+  @Before
+  public void setUp() throws Exception {
+    classes = folder.newFolder("test-classes").toPath();
+    writeClass("a/BaseTest", "java/lang/Object", "BaseTest.java");
+    writeClass("a/BaseTest$Helper", "java/lang/Object", "BaseTest.java");
+    writeClass("a/ChildTest", "a/BaseTest", "ChildTest.java");
+    writeClass("a/GrandChildTest", "a/ChildTest", "GrandChildTest.java");
+    writeClass("a/HelperUserTest", "a/BaseTest$Helper", "HelperUserTest.java");
+    writeClass("a/OtherTest", "java/lang/Object", "OtherTest.java");
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    BytecodeIndex index = BytecodeIndex.scan(classes);
+    IndexSnapshot snapshot = IndexSnapshot.of(index, COMMIT);
+    File file = new File(folder.getRoot(), "testng-ci/index-snapshot.bin");
+    snapshot.write(file);
+
+    IndexSnapshot read = IndexSnapshot.read(file);
+    assertThat(read.getCommit()).isEqualTo(COMMIT);
+    assertThat(read.getClassNames()).isEqualTo(snapshot.getClassNames()).hasSize(6);
+    assertThat(read.classesCompiledFrom("a/BaseTest.java"))
+        .containsExactlyInAnyOrder("a.BaseTest", "a.BaseTest$Helper");
+    assertThat(read.classesCompiledFrom("a/OtherTest.java")).containsExactly("a.OtherTest");
+    assertThat(read.dependentsOf(Collections.singletonList("a.ChildTest")))
+        .isEqualTo(snapshot.dependentsOf(Collections.singletonList("a.ChildTest")))
+        .containsExactly("a.GrandChildTest");
+  }
+
+  @Test
+  public void testMissingOrInvalidFile() throws Exception {
+    assertThat(IndexSnapshot.read(new File(folder.getRoot(), "missing.bin"))).isNull();
+
+    File invalid = folder.newFile("invalid.bin");
+    try (GZIPOutputStream out = new GZIPOutputStream(Files.newOutputStream(invalid.toPath()))) {
+      out.write(new byte[] {0, 0, 0, 1, 0, 0, 0, 1});
+    }
+    assertThatThrownBy(() -> IndexSnapshot.read(invalid))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("is not an index snapshot");
+  }
+
+  @Test
+  public void testDependentsOfDeletedBaseClass() throws Exception {
+    File file = new File(folder.getRoot(), "index-snapshot.bin");
+    IndexSnapshot.of(BytecodeIndex.scan(classes), COMMIT).write(file);
+
+    // The base class is deleted and its former subclass no longer extends it
+    Files.delete(classes.resolve("a/BaseTest.class"));
+    Files.delete(classes.resolve("a/BaseTest$Helper.class"));
+    Files.delete(classes.resolve("a/HelperUserTest.class"));
+    writeClass("a/ChildTest", "java/lang/Object", "ChildTest.java");
+    BytecodeIndex current = BytecodeIndex.scan(classes);
+    assertThat(current.classesCompiledFrom("a/BaseTest.java")).isEmpty();
+    TypeGraph graph = current.impactGraph();
+    assertThat(graph.idOf("a.BaseTest")).isNegative();
+
+    // The previous run's snapshot still knows who depended on it, nested classes included
+    IndexSnapshot previous = IndexSnapshot.read(file);
+    List<String> deleted = previous.classesCompiledFrom("a/BaseTest.java");
+    assertThat(previous.dependentsOf(deleted))
+        .containsExactly("a.ChildTest", "a.GrandChildTest", "a.HelperUserTest");
+    assertThat(previous.dependentsOf(Collections.singletonList("a.BaseTest")))
+        .containsExactly("a.ChildTest", "a.GrandChildTest", "a.HelperUserTest");
+
+    // Only the dependents still indexed are selected, along with what depends on them now
+    BitSet seeds = new BitSet(graph.size());
+    TestSelection selection = new TestSelection();
+    for (String dependent : previous.dependentsOf(deleted)) {
+      if (current.get(dependent) != null) {
+        seeds.set(graph.idOf(dependent));
+        selection.select(dependent, "depended on deleted 'a/BaseTest.java'");
+      }
+    }
+    current.propagate(graph, seeds, selection);
+    assertThat(selection.getTests().keySet())
+        .containsExactlyInAnyOrder("a.ChildTest", "a.GrandChildTest");
+  }
+
+  private void writeClass(String name, String superName, String source) throws Exception {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+    writer.visitSource(source, null);
+    writer.visitEnd();
+    Path file = classes.resolve(name + ".class");
+    Files.createDirectories(file.getParent());
+    Files.write(file, writer.toByteArray());
+  }
+}
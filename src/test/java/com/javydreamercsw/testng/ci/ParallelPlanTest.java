@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class ParallelPlanTest {
+  private static Map<String, Long> estimates(long... millis) {
+    Map<String, Long> estimates = new LinkedHashMap<>();
+    for (int i = 0; i < millis.length; i++) {
+      estimates.put("a.Test" + i, millis[i]);
+    }
+    return estimates;
+  }
+
+  @Test
+  public void testSmallSelection() {
+    ParallelPlan plan =
+        ParallelPlan.plan(
+            Collections.singletonList(estimates(1000, 2000)),
+            Collections.emptySet(),
+            8,
+            4,
+            10000);
+    assertThat(plan.isParallel()).isFalse();
+    assertThat(plan.getParallelArguments()).isEmpty();
+  }
+
+  @Test
+  public void testConcurrencyBoundByCores() {
+    ParallelPlan plan =
+        ParallelPlan.plan(
+            Collections.singletonList(
+                estimates(2000, 2000, 2000, 2000, 2000, 2000, 2000, 2000, 2000, 2000)),
+            Collections.emptySet(),
+            8,
+            4,
+            10000);
+    assertThat(plan.getForkCount()).isEqualTo(2);
+    assertThat(plan.getThreadCount()).isEqualTo(4);
+    assertThat(plan.getParallelArguments())
+        .containsExactly(
+            "-Dparallel=classes", "-DthreadCount=4", "-DforkCount=2", "-DreuseForks=true");
+  }
+
+  @Test
+  public void testConcurrencyBoundByLongestClass() {
+    ParallelPlan plan =
+        ParallelPlan.plan(
+            Arrays.asList(estimates(1000), estimates(20000, 1000, 1000, 1000, 1000)),
+            Collections.emptySet(),
+            8,
+            4,
+            10000);
+    assertThat(plan.getForkCount()).isEqualTo(1);
+    assertThat(plan.getThreadCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSerialLane() {
+    ParallelPlan plan =
+        ParallelPlan.plan(
+            Collections.singletonList(estimates(30000, 30000, 30000)),
+            Collections.singleton("a.Test1"),
+            8,
+            4,
+            10000);
+    assertThat(plan.getSerialClasses()).containsExactly("a.Test1");
+    assertThat(plan.getThreadCount()).isEqualTo(2);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PhaseMetricsTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testJson() throws Exception {
+    PhaseMetrics metrics = sampleMetrics();
+    File file = new File(folder.getRoot(), "metrics/metrics.json");
+    metrics.writeJson(file, labels());
+
+    JsonNode report = new ObjectMapper().readTree(file);
+    assertThat(report.get("goal").asText()).isEqualTo("test-changes");
+    assertThat(report.get("project").asText()).isEqualTo("my \"project\"\\\nnext");
+    assertThat(report.get("phases").get("scan").get("calls").asLong()).isEqualTo(2);
+    assertThat(report.get("phases").get("select").get("calls").asLong()).isEqualTo(1);
+    assertThat(report.get("counters").get("selection_size").asLong()).isEqualTo(5);
+  }
+
+  @Test
+  public void testPrometheus() throws Exception {
+    PhaseMetrics metrics = sampleMetrics();
+    File file = new File(folder.getRoot(), "metrics/metrics.prom");
+    metrics.writePrometheus(file, labels());
+
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    String common = "goal=\"test-changes\",project=\"my \\\"project\\\"\\\\\\nnext\"";
+    assertThat(lines)
+        .containsSubsequence(
+            "# HELP testng_ci_phase_calls_total Number of times a phase ran.",
+            "# TYPE testng_ci_phase_calls_total counter",
+            "testng_ci_phase_calls_total{" + common + ",phase=\"scan\"} 2",
+            "testng_ci_phase_calls_total{" + common + ",phase=\"select\"} 1",
+            "# HELP testng_ci_phase_wall_seconds Wall time spent in a phase.",
+            "# TYPE testng_ci_phase_wall_seconds gauge",
+            "# HELP testng_ci_phase_cpu_seconds CPU time of the mojo thread spent in a phase.",
+            "# TYPE testng_ci_phase_cpu_seconds gauge",
+            "# TYPE testng_ci_selection_size gauge",
+            "testng_ci_selection_size{" + common + "} 5");
+    // One sample per phase, same-name phases accumulated
+    assertThat(lines).filteredOn(l -> l.startsWith("testng_ci_phase_wall_seconds{")).hasSize(2);
+
+    metrics.writePrometheus(file, new LinkedHashMap<>());
+    assertThat(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8))
+        .contains("testng_ci_phase_calls_total{phase=\"scan\"} 2", "testng_ci_selection_size 5");
+  }
+
+  @Test
+  public void testSameNamePhasesAccumulate() throws Exception {
+    PhaseMetrics metrics = new PhaseMetrics();
+    assertThat(metrics.getWallNanos("scan")).isZero();
+    try (PhaseMetrics.Phase phase = metrics.start("scan")) {
+      Thread.sleep(5);
+    }
+    long first = metrics.getWallNanos("scan");
+    assertThat(first).isGreaterThan(0);
+    try (PhaseMetrics.Phase phase = metrics.start("scan")) {
+      Thread.sleep(5);
+    }
+    assertThat(metrics.getWallNanos("scan")).isGreaterThan(first);
+
+    metrics.increment("selection_size", 2);
+    metrics.increment("selection_size", 3);
+    assertThat(metrics.getCounter("selection_size")).isEqualTo(5);
+    assertThat(metrics.getCounter("unknown")).isZero();
+  }
+
+  private static PhaseMetrics sampleMetrics() {
+    PhaseMetrics metrics = new PhaseMetrics();
+    metrics.start("scan").close();
+    metrics.start("select").close();
+    metrics.start("scan").close();
+    metrics.increment("selection_size", 5);
+    return metrics;
+  }
+
+  /**
+   * @return labels with the characters Prometheus needs escaped.
+   */
+  private static Map<String, String> labels() {
+    Map<String, String> labels = new LinkedHashMap<>();
+    labels.put("goal", "test-changes");
+    labels.put("project", "my \"project\"\\\nnext");
+    return labels;
+  }
+}
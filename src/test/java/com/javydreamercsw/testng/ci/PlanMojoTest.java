@@ -0,0 +1,108 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FileUtils;
+
+@Slf4j
+public class PlanMojoTest extends TestChangesMojoTest {
+
+  /**
+   * Test of execute method, of class plan mojo, then of test-changes running its manifest.
+   *
+   * @throws java.lang.Exception when something goes wrong.
+   */
+  public void testPlanGoal() throws Exception {
+    // Modify a file.
+    File modifiedFile = new File(projectRoot, "src/test/java/basic/project/ParentClassTest.java");
+    assertTrue(modifiedFile.exists());
+    FileWriter fw = new FileWriter(modifiedFile, true);
+    try (BufferedWriter bw = new BufferedWriter(fw)) {
+      bw.write("//Comment");
+      bw.newLine();
+    }
+
+    // Commit the change
+    jGit.add().addFilepattern(".").call();
+    jGit.commit()
+        .setCommitter(gitIdentity)
+        .setAuthor(gitIdentity)
+        .setAll(true)
+        .setMessage("Add comment")
+        .call();
+    String head = jGit.getRepository().resolve("HEAD").name();
+
+    PlanMojo plan = (PlanMojo) lookupConfiguredMojo(getSession(pom), newMojoExecution("plan"));
+    plan.setMergeRequestProvider(branch -> "master");
+    plan.execute();
+
+    File manifestFile = new File(projectRoot, "target/testng-ci/selection-manifest.json");
+    SelectionManifest manifest = SelectionManifest.read(manifestFile);
+    assertThat(manifest.getTargetBranch()).isEqualTo("master");
+    assertThat(manifest.getHead()).isEqualTo(head);
+    assertThat(manifest.isFullRun()).isFalse();
+    assertThat(manifest.getModules()).hasSize(1);
+    SelectionManifest.Module module = manifest.getModules().get(0);
+    assertThat(module.getArtifactId()).isEqualTo("project-to-test");
+    assertThat(module.getBaseDir()).isEqualTo(".");
+    assertThat(module.getIncludesFile()).isEqualTo("target/testng-ci/includes.txt");
+    // ParentClassTest has no tests of its own, only its children run
+    assertThat(module.getTests())
+        .extracting(SelectionManifest.Test::getClassName)
+        .containsExactlyInAnyOrder(
+            "basic.project.ChildrenClass1Test", "basic.project.ChildrenClass2Test");
+    assertThat(module.getTests()).allSatisfy(test -> assertThat(test.getReasons()).isNotEmpty());
+
+    // One line per selected class
+    assertThat(
+            Files.readAllLines(
+                new File(projectRoot, module.getIncludesFile()).toPath(), StandardCharsets.UTF_8))
+        .containsExactlyInAnyOrderElementsOf(
+            module.getTests().stream()
+                .map(test -> test.getClassName().replace('.', '/') + ".java")
+                .collect(Collectors.toList()));
+
+    // Round trip
+    File copy = new File(projectRoot, "target/copy.json");
+    manifest.write(copy);
+    assertThat(SelectionManifest.read(copy)).isEqualTo(manifest);
+
+    // Manifests of another format version are rejected
+    manifest.setVersion(SelectionManifest.FORMAT_VERSION + 1);
+    manifest.write(copy);
+    assertThatThrownBy(() -> SelectionManifest.read(copy))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("Unsupported manifest version");
+
+    // The manifest runs without git nor GitLab
+    jGit.close();
+    FileUtils.deleteDirectory(new File(projectRoot, ".git"));
+    instance.setMergeRequestProvider(
+        branch -> {
+          throw new IOException("GitLab must not be queried!");
+        });
+    setVariableValueToObject(instance, "selectionManifest", manifestFile);
+    instance.execute();
+
+    assertThat(instance.getClassesToTest())
+        .extracting(Class::getName)
+        .containsExactlyInAnyOrder(
+            "basic.project.ChildrenClass1Test", "basic.project.ChildrenClass2Test");
+  }
+}
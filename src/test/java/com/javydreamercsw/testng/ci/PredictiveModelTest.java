@@ -0,0 +1,217 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PredictiveModelTest {
+  private static final String CORE = "core/src/main/java/Core.java";
+  private static final String CORE_TEST = "core/src/test/java/CoreTest.java";
+  private static final String OTHER_TEST = "core/src/test/java/OtherTest.java";
+  private static final String MASTER = "master";
+  private static final PersonIdent IDENTITY = new PersonIdent("John Doe", "john.doe@example.org");
+
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private long commitMillis = 1_600_000_000_000L;
+
+  @Test
+  public void testCoChange() {
+    PredictiveModel model = new PredictiveModel();
+    model.addCommit(Arrays.asList(CORE, CORE_TEST));
+    model.addCommit(Arrays.asList(CORE, CORE_TEST));
+    model.addCommit(Arrays.asList(CORE, OTHER_TEST));
+    model.addCommit(Collections.singletonList(CORE));
+
+    List<String> changes = Collections.singletonList(CORE);
+    assertThat(model.coChange(CORE_TEST, changes)).isCloseTo(0.5, within(0.001));
+    assertThat(model.coChange(OTHER_TEST, changes)).isCloseTo(0.25, within(0.001));
+    assertThat(model.coChange("Unknown.java", changes)).isZero();
+    assertThat(model.knows(CORE)).isTrue();
+    assertThat(model.knows("Unknown.java")).isFalse();
+  }
+
+  @Test
+  public void testLargeCommitsAreIgnored() {
+    PredictiveModel model = new PredictiveModel();
+    String[] files = new String[PredictiveModel.MAX_FILES_PER_COMMIT + 1];
+    files[0] = CORE;
+    files[1] = CORE_TEST;
+    for (int i = 2; i < files.length; i++) {
+      files[i] = "File" + i + ".java";
+    }
+    model.addCommit(Arrays.asList(files));
+    assertThat(model.knows(CORE_TEST)).isFalse();
+    assertThat(model.coChange(CORE_TEST, Collections.singletonList(CORE))).isZero();
+
+    // Nor do they lower the co-change of the files they touch
+    model.addCommit(Arrays.asList(CORE, CORE_TEST));
+    model.addCommit(Arrays.asList(files));
+    assertThat(model.coChange(CORE_TEST, Collections.singletonList(CORE)))
+        .isCloseTo(1.0, within(0.001));
+  }
+
+  @Test
+  public void testRepositoryKey() throws Exception {
+    try (Git first = Git.init().setDirectory(folder.newFolder("first", "project")).call();
+        Git second = Git.init().setDirectory(folder.newFolder("second", "project")).call()) {
+      String local = PredictiveModel.repositoryKey(first.getRepository());
+      assertThat(local).startsWith("project-");
+      assertThat(PredictiveModel.repositoryKey(second.getRepository())).isNotEqualTo(local);
+
+      // Checkouts of the same remote share the key
+      for (Git git : Arrays.asList(first, second)) {
+        StoredConfig config = git.getRepository().getConfig();
+        config.setString("remote", "origin", "url", "https://example.org/group/project.git");
+        config.save();
+      }
+      assertThat(PredictiveModel.repositoryKey(first.getRepository()))
+          .isNotEqualTo(local)
+          .isEqualTo(PredictiveModel.repositoryKey(second.getRepository()));
+    }
+  }
+
+  @Test
+  public void testIncrementalMining() throws Exception {
+    File repository = folder.newFolder("repository");
+    try (Git git = Git.init().setInitialBranch(MASTER).setDirectory(repository).call()) {
+      commit(git, CORE, CORE_TEST);
+      PredictiveModel model = new PredictiveModel();
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isEqualTo(1);
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isZero();
+
+      commit(git, CORE, OTHER_TEST);
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isEqualTo(1);
+      assertThat(model.coChange(CORE_TEST, Collections.singletonList(CORE)))
+          .isCloseTo(0.5, within(0.001));
+
+      File file = folder.newFile("model.bin");
+      model.write(file);
+      PredictiveModel read = PredictiveModel.read(file);
+      assertThat(read.getLastCommit()).isEqualTo(model.getLastCommit());
+      assertThat(read.coChange(OTHER_TEST, Collections.singletonList(CORE)))
+          .isCloseTo(0.5, within(0.001));
+      assertThat(read.mine(git.getRepository(), MASTER, 100)).isZero();
+    }
+  }
+
+  @Test
+  public void testMinesTargetBranchOnly() throws Exception {
+    File repository = folder.newFolder("repository");
+    try (Git git = Git.init().setInitialBranch(MASTER).setDirectory(repository).call()) {
+      commit(git, CORE, CORE_TEST);
+      git.checkout().setCreateBranch(true).setName("feature").call();
+      commit(git, CORE, OTHER_TEST);
+      PredictiveModel model = new PredictiveModel();
+      // The feature commit isn't merged
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isEqualTo(1);
+      assertThat(model.knows(OTHER_TEST)).isFalse();
+
+      git.checkout().setName(MASTER).call();
+      RevCommit master = commit(git, CORE, CORE_TEST);
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isEqualTo(1);
+      assertThat(model.getLastCommit()).isEqualTo(master.name());
+
+      // Back on the older branch, nothing is mined again nor forgotten
+      git.checkout().setName("feature").call();
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isZero();
+      assertThat(model.mine(git.getRepository(), "feature", 100)).isEqualTo(1);
+      git.checkout().setName(MASTER).call();
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isZero();
+      assertThat(model.coChange(CORE_TEST, Collections.singletonList(CORE)))
+          .isCloseTo(2 / 3.0, within(0.001));
+      assertThat(model.coChange(OTHER_TEST, Collections.singletonList(CORE)))
+          .isCloseTo(1 / 3.0, within(0.001));
+    }
+  }
+
+  @Test
+  public void testRewrittenHistory() throws Exception {
+    File repository = folder.newFolder("repository");
+    try (Git git = Git.init().setInitialBranch(MASTER).setDirectory(repository).call()) {
+      RevCommit first = commit(git, CORE, CORE_TEST);
+      RevCommit rewritten = commit(git, CORE, CORE_TEST);
+      PredictiveModel model = new PredictiveModel();
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isEqualTo(2);
+
+      // Force pushed, the mined head is gone
+      git.reset().setMode(ResetCommand.ResetType.HARD).setRef(first.name()).call();
+      String name = rewritten.name();
+      Files.delete(
+          new File(
+                  git.getRepository().getDirectory(),
+                  "objects/" + name.substring(0, 2) + "/" + name.substring(2))
+              .toPath());
+      commit(git, CORE, OTHER_TEST);
+
+      // Only the new commit is mined, the history is kept
+      assertThat(model.mine(git.getRepository(), MASTER, 100)).isEqualTo(1);
+      assertThat(model.coChange(CORE_TEST, Collections.singletonList(CORE)))
+          .isCloseTo(2 / 3.0, within(0.001));
+      assertThat(model.coChange(OTHER_TEST, Collections.singletonList(CORE)))
+          .isCloseTo(1 / 3.0, within(0.001));
+    }
+  }
+
+  @Test
+  public void testScore() throws Exception {
+    File reports = folder.newFolder("reports");
+    File report = new File(reports, "TEST-com.example.CoreTest.xml");
+    Files.write(
+        report.toPath(),
+        "<testsuite name=\"com.example.CoreTest\" time=\"1.0\" failures=\"1\" errors=\"0\"/>"
+            .getBytes(StandardCharsets.UTF_8));
+    PredictiveModel model = new PredictiveModel();
+    model.addCommit(Arrays.asList(CORE, CORE_TEST));
+    model.addCommit(Collections.singletonList(CORE));
+    List<TestDurationHistory> histories =
+        Collections.singletonList(TestDurationHistory.read(reports));
+    assertThat(model.recordResults(histories)).isEqualTo(1);
+    // Already recorded
+    assertThat(model.recordResults(histories)).isZero();
+    assertThat(model.failureRate("com.example.CoreTest")).isCloseTo(1, within(0.001));
+    assertThat(model.score(CORE_TEST, "com.example.Other", Collections.singletonList(CORE)))
+        .isCloseTo(0.5, within(0.001));
+    assertThat(model.score(CORE_TEST, "com.example.CoreTest", Collections.singletonList(CORE)))
+        .isCloseTo(1, within(0.001));
+  }
+
+  private RevCommit commit(Git git, String... paths) throws Exception {
+    for (String path : paths) {
+      File file = new File(git.getRepository().getWorkTree(), path);
+      file.getParentFile().mkdirs();
+      Files.write(
+          file.toPath(), String.valueOf(System.nanoTime()).getBytes(StandardCharsets.UTF_8));
+      git.add().addFilepattern(path).call();
+    }
+    // A minute apart
+    commitMillis += 60_000;
+    PersonIdent identity = new PersonIdent(IDENTITY, new Date(commitMillis));
+    return git.commit()
+        .setCommitter(identity)
+        .setAuthor(identity)
+        .setMessage("Change " + String.join(", ", paths))
+        .call();
+  }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+public class ProjectClassLoadersTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private File jar;
+  private final List<String> resolved = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    jar = folder.newFile("dependency.jar");
+    writeJar("a/First", "a/Second");
+  }
+
+  private void writeJar(String... names) throws Exception {
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+      for (String name : names) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        writer.visitEnd();
+        out.putNextEntry(new JarEntry(name + ".class"));
+        out.write(writer.toByteArray());
+        out.closeEntry();
+      }
+    }
+  }
+
+  private MavenProject project(String artifactId) throws Exception {
+    MavenProject project = new MavenProject();
+    project.setArtifactId(artifactId);
+    project.getBuild().setTestOutputDirectory(folder.newFolder(artifactId).getAbsolutePath());
+    return project;
+  }
+
+  /** Resolves the jar as the only dependency, as Maven didn't resolve the projects. */
+  private List<String> resolve(MavenProject project) {
+    resolved.add(project.getArtifactId());
+    return Arrays.asList(project.getBuild().getTestOutputDirectory(), jar.getAbsolutePath());
+  }
+
+  @Test
+  public void testSharedClassBytes() throws Exception {
+    MavenProject core = project("core");
+    MavenProject web = project("web");
+    ProjectClassLoaders loaders =
+        new ProjectClassLoaders(ClassLoader.getPlatformClassLoader(), this::resolve);
+    ClassLoader coreLoader = loaders.get(core);
+    assertThat(loaders.get(core)).isSameAs(coreLoader);
+    assertThat(loaders.get(web)).isNotSameAs(coreLoader);
+
+    Class<?> first = coreLoader.loadClass("a.First");
+    assertThat(loaders.get(web).loadClass("a.First")).isNotSameAs(first);
+    assertThat(loaders.getCachedClasses()).isEqualTo(1);
+    assertThat(first.getPackage().getName()).isEqualTo("a");
+    // Once per project
+    assertThat(resolved).containsExactly("core", "web");
+
+    loaders.close();
+    assertThat(first.getName()).isEqualTo("a.First");
+    assertThatThrownBy(() -> coreLoader.loadClass("a.Second"))
+        .isInstanceOf(ClassNotFoundException.class);
+    assertThatThrownBy(() -> loaders.get(core)).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void testSessionCache() throws Exception {
+    MavenProject core = project("core");
+    JarClassCache cache = new JarClassCache();
+    try (ProjectClassLoaders loaders =
+        new ProjectClassLoaders(ClassLoader.getPlatformClassLoader(), this::resolve, cache)) {
+      loaders.get(core).loadClass("a.First");
+    }
+    // The class bytes outlive the loaders of a goal
+    assertThat(cache.size()).isEqualTo(1);
+    try (ProjectClassLoaders loaders =
+        new ProjectClassLoaders(ClassLoader.getPlatformClassLoader(), this::resolve, cache)) {
+      loaders.get(core).loadClass("a.First");
+      loaders.get(core).loadClass("a.Second");
+      assertThat(loaders.getCachedClasses()).isEqualTo(2);
+    }
+
+    // A packaged again jar is read again
+    writeJar("a/First", "a/Second", "a/Third");
+    assertThat(jar.setLastModified(jar.lastModified() - 2000)).isTrue();
+    try (ProjectClassLoaders loaders =
+        new ProjectClassLoaders(ClassLoader.getPlatformClassLoader(), this::resolve, cache)) {
+      loaders.get(core).loadClass("a.Third");
+      assertThat(loaders.getCachedClasses()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void testUnresolvedDependency() throws Exception {
+    MavenProject core = project("core");
+    // A test class extending a class of the dependency
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "b/SomeTest", null, "a/First", null);
+    writer.visitEnd();
+    File testClass = new File(core.getBuild().getTestOutputDirectory(), "b/SomeTest.class");
+    testClass.getParentFile().mkdirs();
+    Files.write(testClass.toPath(), writer.toByteArray());
+
+    try (ProjectClassLoaders loaders =
+        new ProjectClassLoaders(
+            ClassLoader.getPlatformClassLoader(),
+            p -> Collections.singletonList(p.getBuild().getTestOutputDirectory()))) {
+      ClassLoader loader = loaders.get(core);
+      assertThatThrownBy(() -> loader.loadClass("b.SomeTest"))
+          .isInstanceOf(NoClassDefFoundError.class);
+    }
+    try (ProjectClassLoaders loaders =
+        new ProjectClassLoaders(ClassLoader.getPlatformClassLoader(), this::resolve)) {
+      assertThat(loaders.get(core).loadClass("b.SomeTest").getSuperclass().getName())
+          .isEqualTo("a.First");
+    }
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.groups.Tuple.tuple;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.apache.maven.model.Resource;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReactorLayoutTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private MavenProject root;
+  private MavenProject core;
+  private MavenProject web;
+
+  @Before
+  public void setUp() throws Exception {
+    root = project(folder.getRoot(), "root");
+    core = project(folder.newFolder("core"), "core");
+    web = project(folder.newFolder("web"), "web");
+    // A non default test source root
+    web.addTestCompileSourceRoot(new File(web.getBasedir(), "src/it/java").getAbsolutePath());
+  }
+
+  private static MavenProject project(File baseDir, String artifactId) {
+    MavenProject project = new MavenProject();
+    project.setGroupId("com.example");
+    project.setArtifactId(artifactId);
+    project.setFile(new File(baseDir, "pom.xml"));
+    project.addCompileSourceRoot(new File(baseDir, "src/main/java").getAbsolutePath());
+    project.addTestCompileSourceRoot(new File(baseDir, "src/test/java").getAbsolutePath());
+    Resource resources = new Resource();
+    resources.setDirectory(new File(baseDir, "src/test/resources").getAbsolutePath());
+    project.getBuild().addTestResource(resources);
+    return project;
+  }
+
+  private Map<MavenProject, List<ReactorLayout.Change>> assign(String... changes) {
+    return assign(
+        Arrays.stream(changes).map(FileChange::modified).toArray(FileChange[]::new));
+  }
+
+  private Map<MavenProject, List<ReactorLayout.Change>> assign(FileChange... changes) {
+    return new ReactorLayout(Arrays.asList(root, core, web))
+        .assign(folder.getRoot().toPath(), Arrays.asList(changes));
+  }
+
+  @Test
+  public void testNestedModules() {
+    Map<MavenProject, List<ReactorLayout.Change>> changes =
+        assign(
+            "core/src/test/java/com/example/CoreTest.java",
+            "web/src/it/java/com/example/WebIT.java",
+            "web/src/main/java/com/example/Web.java",
+            "README.md");
+
+    assertThat(changes).containsOnlyKeys(root, core, web);
+    ReactorLayout.Change coreTest = changes.get(core).get(0);
+    assertThat(coreTest.getKind()).isEqualTo(ReactorLayout.Kind.TEST_SOURCE);
+    assertThat(coreTest.getName()).isEqualTo("com.example.CoreTest");
+    assertThat(coreTest.getModulePath()).isEqualTo("src/test/java/com/example/CoreTest.java");
+    assertThat(coreTest.getSourcePath()).isEqualTo("com/example/CoreTest.java");
+
+    assertThat(changes.get(web))
+        .extracting(ReactorLayout.Change::getKind, ReactorLayout.Change::getName)
+        .containsExactly(
+            tuple(ReactorLayout.Kind.TEST_SOURCE, "com.example.WebIT"),
+            tuple(ReactorLayout.Kind.MAIN_SOURCE, "com.example.Web"));
+    assertThat(changes.get(root))
+        .extracting(ReactorLayout.Change::getKind)
+        .containsExactly(ReactorLayout.Kind.OTHER);
+  }
+
+  @Test
+  public void testBuildFiles() {
+    Map<MavenProject, List<ReactorLayout.Change>> changes = assign("pom.xml");
+    assertThat(changes).containsOnlyKeys(root, core, web);
+
+    changes = assign("core/pom.xml", "web/src/test/resources/fixture/pom.xml");
+    assertThat(changes).containsOnlyKeys(core, web);
+    assertThat(changes.get(core).get(0).getKind()).isEqualTo(ReactorLayout.Kind.POM);
+    ReactorLayout.Change fixture = changes.get(web).get(0);
+    assertThat(fixture.getKind()).isEqualTo(ReactorLayout.Kind.RESOURCE);
+    assertThat(fixture.getName()).isEqualTo("fixture/pom.xml");
+  }
+
+  @Test
+  public void testOtherLanguages() {
+    core.addTestCompileSourceRoot(new File(core.getBasedir(), "src/test/kotlin").getAbsolutePath());
+    Map<MavenProject, List<ReactorLayout.Change>> changes =
+        assign("core/src/test/kotlin/com/example/Specs.kt");
+    ReactorLayout.Change specs = changes.get(core).get(0);
+    assertThat(specs.getKind()).isEqualTo(ReactorLayout.Kind.TEST_SOURCE);
+    assertThat(specs.getSourcePath()).isEqualTo("com/example/Specs.kt");
+  }
+
+  @Test
+  public void testRenameAcrossModules() {
+    Map<MavenProject, List<ReactorLayout.Change>> changes =
+        assign(
+            new FileChange(
+                FileChange.Status.RENAMED,
+                "web/src/test/java/com/example/BaseTest.java",
+                "core/src/test/java/com/example/BaseTest.java",
+                92));
+    assertThat(changes).containsOnlyKeys(core, web);
+    ReactorLayout.Change deleted = changes.get(core).get(0);
+    assertThat(deleted.isDeleted()).isTrue();
+    assertThat(deleted.getSourcePath()).isEqualTo("com/example/BaseTest.java");
+    assertThat(changes.get(web).get(0).getStatus()).isEqualTo(FileChange.Status.RENAMED);
+  }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.jacoco.core.data.SessionInfo;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RecordCoverageMojoTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReadSessions() throws Exception {
+    File exec = folder.newFile("jacoco-testng.exec");
+    try (OutputStream out = new FileOutputStream(exec)) {
+      ExecutionDataWriter writer = new ExecutionDataWriter(out);
+      // The class ran twice, e.g. in two test tags
+      session(writer, "basic.project.ATest", 1, "basic/project/A", true, false);
+      // What ran after the last class, dumped at JVM exit
+      session(writer, CoverageSessionListener.IDLE_SESSION, 2, "basic/project/B", true, true);
+      session(writer, "basic.project.ATest", 3, "basic/project/A", false, true);
+    }
+
+    Map<String, ExecutionDataStore> sessions = RecordCoverageMojo.readSessions(exec);
+    assertThat(sessions).containsOnlyKeys("basic.project.ATest");
+    ExecutionDataStore store = sessions.get("basic.project.ATest");
+    assertThat(store.getContents())
+        .extracting(ExecutionData::getName)
+        .containsExactly("basic/project/A");
+    assertThat(store.getContents().iterator().next().getProbes()).containsExactly(true, true);
+  }
+
+  @Test
+  public void testRemoveDeletedTests() throws Exception {
+    File testClasses = folder.newFolder("test-classes");
+    new File(testClasses, "basic/project").mkdirs();
+    new File(testClasses, "basic/project/ATest.class").createNewFile();
+    new File(testClasses, "basic/project/ATest$Nested.class").createNewFile();
+    CoverageIndex index = new CoverageIndex();
+    for (String test :
+        Arrays.asList("basic.project.ATest", "basic.project.ATest$Nested", "basic.project.BTest")) {
+      index.update(test, Collections.singletonList("basic.project.A"), Collections.emptyList());
+    }
+
+    assertThat(RecordCoverageMojo.removeDeletedTests(index, testClasses))
+        .containsExactly("basic.project.BTest");
+    assertThat(index.testsForClass("basic.project.A"))
+        .containsExactly("basic.project.ATest", "basic.project.ATest$Nested");
+
+    // Tests not compiled, i.e. skipped, aren't taken as deleted
+    assertThat(RecordCoverageMojo.removeDeletedTests(index, new File(folder.getRoot(), "missing")))
+        .isEmpty();
+    assertThat(index.getTests()).hasSize(2);
+  }
+
+  private static void session(
+      ExecutionDataWriter writer, String id, long time, String className, boolean... probes)
+      throws Exception {
+    writer.visitSessionInfo(new SessionInfo(id, time, time));
+    writer.visitClassExecution(new ExecutionData(className.hashCode(), className, probes));
+  }
+}
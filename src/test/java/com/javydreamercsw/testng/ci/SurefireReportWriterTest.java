@@ -0,0 +1,40 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SurefireReportWriterTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testReadAsHistory() throws Exception {
+    File report =
+        SurefireReportWriter.write(
+            folder.getRoot(),
+            "a.SlowTest",
+            Arrays.asList(
+                new TestWorker.TestCase(
+                    "a.SlowTest", "fast", TestWorker.TestCase.Status.PASS, 200, null),
+                new TestWorker.TestCase(
+                    "a.SlowTest", "slow", TestWorker.TestCase.Status.FAIL, 1300, "<expected>")));
+    assertThat(report).hasName("TEST-a.SlowTest.xml");
+    assertThat(new String(Files.readAllBytes(report.toPath()), StandardCharsets.UTF_8))
+        .contains("failures=\"1\"", "message=\"&lt;expected&gt;\"");
+    assertThat(TestDurationHistory.read(folder.getRoot()).estimateMillis("a.SlowTest"))
+        .isEqualTo(1500);
+  }
+}
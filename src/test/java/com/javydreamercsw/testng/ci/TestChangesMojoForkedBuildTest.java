@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.maven.execution.MavenExecutionRequest;
+
+@Slf4j
+public class TestChangesMojoForkedBuildTest extends TestChangesMojoTest {
+
+  /**
+   * Test of the command line of the forked Maven builds, configured like the invoking build.
+   *
+   * @throws java.lang.Exception when something goes wrong.
+   */
+  public void testForkedBuildArguments() throws Exception {
+    File alternatePom = new File(projectRoot, "alternate-pom.xml");
+    Files.copy(pom.toPath(), alternatePom.toPath());
+    File globalSettings = new File(projectRoot, "global-settings.xml");
+    File toolchains = new File(projectRoot, "toolchains.xml");
+    for (File file : Arrays.asList(globalSettings, toolchains)) {
+      Files.write(file.toPath(), Collections.singletonList("<settings/>"));
+    }
+    MavenExecutionRequest request = instance.mavenSession.getRequest();
+    request.setPom(alternatePom);
+    request.setActiveProfiles(Arrays.asList("ci", "integration"));
+    request.setInactiveProfiles(Collections.singletonList("local"));
+    request.getUserProperties().setProperty("db.url", "jdbc:h2:mem:test");
+    request.getUserProperties().setProperty("skipTests", "true");
+    request.setGlobalSettingsFile(globalSettings);
+    request.setUserToolchainsFile(toolchains);
+    // Missing files aren't passed on
+    request.setGlobalToolchainsFile(new File(projectRoot, "missing.xml"));
+
+    List<String> arguments = instance.mavenArguments("test", "-DskipTests=false");
+
+    // Goals first, the given properties win over the session ones
+    assertThat(arguments).startsWith("test", "-DskipTests=false");
+    assertThat(arguments)
+        .containsSubsequence("--file", alternatePom.getAbsolutePath())
+        .containsSubsequence("--activate-profiles", "ci,integration,!local")
+        .containsSubsequence("--global-settings", globalSettings.getAbsolutePath())
+        .containsSubsequence("--toolchains", toolchains.getAbsolutePath())
+        .contains("--batch-mode", "-Ddb.url=jdbc:h2:mem:test")
+        .doesNotContain("-DskipTests=true", "--global-toolchains");
+    assertThat(arguments).filteredOn(a -> a.startsWith("-Dmaven.repo.local=")).hasSize(1);
+  }
+}
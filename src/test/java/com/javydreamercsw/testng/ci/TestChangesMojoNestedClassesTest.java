@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class TestChangesMojoNestedClassesTest extends TestChangesMojoTest {
+  private static final String NESTED_TEST = "src/test/java/basic/project/NestedClassesTest.java";
+
+  /** A test source compiled to a nested, an anonymous and a local class besides the test. */
+  @Override
+  protected void prepareProject() throws Exception {
+    Files.write(
+        new File(projectRoot, NESTED_TEST).toPath(),
+        ("package basic.project;\n\n"
+                + "import org.junit.Test;\n\n"
+                + "public class NestedClassesTest {\n\n"
+                + "  @Test\n"
+                + "  public void nestedClassesTest() {\n"
+                + "    class Local {}\n"
+                + "    new Local();\n"
+                + "    new Runnable() {\n"
+                + "      @Override\n"
+                + "      public void run() {}\n"
+                + "    }.run();\n"
+                + "    new Builder().build();\n"
+                + "  }\n\n"
+                + "  static class Builder {\n"
+                + "    Object build() {\n"
+                + "      return new Object();\n"
+                + "    }\n"
+                + "  }\n"
+                + "}\n")
+            .getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Test of execute method, of class test-changes mojo, selecting only the test class of a source
+   * compiled to several classes.
+   *
+   * @throws java.lang.Exception when something goes wrong.
+   */
+  public void testTestChangesGoal() throws Exception {
+    // Modify a file.
+    File modifiedFile = new File(projectRoot, NESTED_TEST);
+    FileWriter fw = new FileWriter(modifiedFile, true);
+    try (BufferedWriter bw = new BufferedWriter(fw)) {
+      bw.write("//Comment");
+      bw.newLine();
+    }
+
+    // Commit the change
+    jGit.add().addFilepattern(".").call();
+    jGit.commit()
+        .setCommitter(gitIdentity)
+        .setAuthor(gitIdentity)
+        .setAll(true)
+        .setMessage("Add comment")
+        .call();
+
+    instance.execute();
+
+    // Every class of the source is compiled
+    assertTrue(
+        new File(projectRoot, "target/test-classes/basic/project/NestedClassesTest$Builder.class")
+            .exists());
+    assertTrue(
+        new File(projectRoot, "target/test-classes/basic/project/NestedClassesTest$1.class")
+            .exists());
+    List<String> selected = new ArrayList<>();
+    instance.getClassesToTest().forEach(c -> selected.add(c.getName()));
+    assertThat(selected).containsExactly("basic.project.NestedClassesTest");
+
+    JsonNode report =
+        new ObjectMapper()
+            .readTree(new File(projectRoot, "target/testng-ci/selection-report.json"));
+    List<String> reported = new ArrayList<>();
+    report.get("tests").fieldNames().forEachRemaining(reported::add);
+    assertThat(reported).containsExactly("basic.project.NestedClassesTest");
+  }
+}
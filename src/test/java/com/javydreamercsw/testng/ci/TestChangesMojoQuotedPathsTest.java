@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class TestChangesMojoQuotedPathsTest extends TestChangesMojoTest {
+  private static final String RESOURCES = "src/test/resources/basic/project/";
+
+  /**
+   * Test of the changes from the target branch, for paths git quotes unless NUL terminated.
+   *
+   * @throws java.lang.Exception when something goes wrong.
+   */
+  public void testChangedPaths() throws Exception {
+    List<String> names = new ArrayList<>();
+    names.add("with space.txt");
+    names.add("tab\there.txt");
+    names.add("quote\"d.txt");
+    // Only where the file system encoding can name it
+    if (Charset.forName(System.getProperty("sun.jnu.encoding", "UTF-8"))
+        .newEncoder()
+        .canEncode("ñandú")) {
+      names.add("ñandú.txt");
+    }
+    for (String name : names) {
+      Files.write(
+          new File(projectRoot, RESOURCES + name).toPath(), name.getBytes(StandardCharsets.UTF_8));
+    }
+    File renamed = new File(projectRoot, RESOURCES + "renamed\tdata.txt");
+    Files.move(new File(projectRoot, RESOURCES + "data.txt").toPath(), renamed.toPath());
+
+    // Commit the change
+    jGit.add().addFilepattern(".").call();
+    jGit.commit()
+        .setCommitter(gitIdentity)
+        .setAuthor(gitIdentity)
+        .setAll(true)
+        .setMessage("Add unusual names")
+        .call();
+
+    List<FileChange> changes = instance.getChangesFrom("master");
+
+    assertThat(changes)
+        .filteredOn(c -> c.getStatus() == FileChange.Status.ADDED)
+        .extracting(FileChange::getPath)
+        .containsExactlyInAnyOrderElementsOf(
+            names.stream().map(n -> RESOURCES + n).collect(Collectors.toList()));
+    assertThat(changes)
+        .filteredOn(c -> c.getStatus() == FileChange.Status.RENAMED)
+        .extracting(FileChange::getPreviousPath, FileChange::getPath)
+        .containsExactly(tuple(RESOURCES + "data.txt", RESOURCES + "renamed\tdata.txt"));
+  }
+}
@@ -93,6 +93,13 @@ public abstract class TestChangesMojoTest extends AbstractMojoTestCase {
     }
   }
 
+  /**
+   * Adjusts the copied test project before its first commit.
+   *
+   * @throws Exception when something goes wrong.
+   */
+  protected void prepareProject() throws Exception {}
+
   /** {@inheritDoc} */
   @Override
   @SneakyThrows
@@ -108,6 +115,7 @@ public abstract class TestChangesMojoTest extends AbstractMojoTestCase {
     copyDir("src/test/resources/unit/project-to-test", projectRoot.getAbsolutePath(), true);
     pom = new File(projectRoot, "/pom.xml");
     assertTrue(pom.exists());
+    prepareProject();
     jGit = Git.init().setDirectory(projectRoot).call();
     jGit.add().addFilepattern(".").call();
     jGit.commit()
@@ -128,7 +136,7 @@ public abstract class TestChangesMojoTest extends AbstractMojoTestCase {
     MavenSession session = getSession(pom);
     instance = (TestChangesMojo) lookupConfiguredMojo(session, newMojoExecution("test-changes"));
     assertNotNull(instance);
-    instance.setGitLabApi(api);
+    instance.setMergeRequestProvider(new GitLabMergeRequestProvider(api, 1));
 
     // Mock the GitLab API calls we need.
     Mockito.doAnswer(
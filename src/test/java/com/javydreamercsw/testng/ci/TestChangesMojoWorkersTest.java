@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import lombok.extern.slf4j.Slf4j;
+
+@Slf4j
+public class TestChangesMojoWorkersTest extends TestChangesMojoTest {
+  private static final String WORKER_TEST = "src/test/java/basic/project/WorkerTest.java";
+
+  /** Workers run TestNG, the test project only depends on JUnit. */
+  @Override
+  protected void prepareProject() throws Exception {
+    String content = new String(Files.readAllBytes(pom.toPath()), StandardCharsets.UTF_8);
+    Files.write(
+        pom.toPath(),
+        content
+            .replace(
+                "  </dependencies>",
+                "    <dependency>\n"
+                    + "      <groupId>org.testng</groupId>\n"
+                    + "      <artifactId>testng</artifactId>\n"
+                    + "      <version>7.7.1</version>\n"
+                    + "      <scope>test</scope>\n"
+                    + "    </dependency>\n"
+                    + "  </dependencies>")
+            .getBytes(StandardCharsets.UTF_8));
+    Files.write(
+        new File(projectRoot, WORKER_TEST).toPath(),
+        ("package basic.project;\n\n"
+                + "import org.testng.annotations.Test;\n\n"
+                + "public class WorkerTest {\n\n"
+                + "  @Test\n"
+                + "  public void workerTest() {}\n"
+                + "}\n")
+            .getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Test of execute method, of class test-changes mojo, running the selection on workers.
+   *
+   * @throws java.lang.Exception when something goes wrong.
+   */
+  public void testTestChangesGoal() throws Exception {
+    // Modify a file.
+    File modifiedFile = new File(projectRoot, WORKER_TEST);
+    FileWriter fw = new FileWriter(modifiedFile, true);
+    try (BufferedWriter bw = new BufferedWriter(fw)) {
+      bw.write("//Comment");
+      bw.newLine();
+    }
+
+    // Commit the change
+    jGit.add().addFilepattern(".").call();
+    jGit.commit()
+        .setCommitter(gitIdentity)
+        .setAuthor(gitIdentity)
+        .setAll(true)
+        .setMessage("Add comment")
+        .call();
+
+    setVariableValueToObject(instance, "workers", 1);
+    instance.execute();
+
+    assertEquals(1, instance.getClassesToTest().size());
+    assertEquals(
+        "The selected class should have run on a worker",
+        1,
+        instance.metrics.getCounter("classes_on_workers"));
+    assertTrue(
+        new File(projectRoot, "target/surefire-reports/TEST-basic.project.WorkerTest.xml")
+            .exists());
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.junit.Test;
+
+public class TypeGraphTest {
+
+  private static List<String> names(TypeGraph graph, BitSet ids) {
+    List<String> result = new ArrayList<>();
+    ids.stream().forEach(id -> result.add(graph.nameOf(id)));
+    return result;
+  }
+
+  @Test
+  public void testDescendantsAndReachable() {
+    TypeGraph graph =
+        TypeGraph.builder()
+            .addEdge("ParentClassTest", "GrandParentClassTest")
+            .addEdge("ChildrenClass1Test", "ParentClassTest")
+            .addEdge("ChildrenClass2Test", "ParentClassTest")
+            .addEdge("ParentlessTest", "java.lang.Object")
+            .build();
+
+    assertThat(graph.size()).isEqualTo(6);
+    assertThat(graph.idOf("Missing")).isEqualTo(-1);
+
+    BitSet seeds = new BitSet();
+    seeds.set(graph.idOf("ParentClassTest"));
+    assertThat(names(graph, graph.descendants(seeds)))
+        .containsExactlyInAnyOrder("ParentClassTest", "ChildrenClass1Test", "ChildrenClass2Test");
+    assertThat(names(graph, graph.reachable(seeds)))
+        .containsExactlyInAnyOrder("ParentClassTest", "GrandParentClassTest");
+  }
+
+  @Test
+  public void testLargeChain() {
+    TypeGraph.Builder builder = TypeGraph.builder();
+    int size = 100_000;
+    for (int i = 1; i < size; i++) {
+      builder.addEdge("C" + i, "C" + (i - 1));
+    }
+    TypeGraph graph = builder.build();
+    BitSet seeds = new BitSet();
+    seeds.set(graph.idOf("C0"));
+
+    assertThat(graph.descendants(seeds).cardinality()).isEqualTo(size);
+  }
+}
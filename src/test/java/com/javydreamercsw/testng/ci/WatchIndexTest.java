@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+public class WatchIndexTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+  private Path testOutput;
+  private Path output;
+  private CoverageIndex coverage;
+
+  @Before
+  public void setUp() throws Exception {
+    testOutput = folder.newFolder("test-classes").toPath();
+    output = folder.newFolder("classes").toPath();
+    writeClass(testOutput, "a/BaseTest", "java/lang/Object", Opcodes.ACC_ABSTRACT, null);
+    writeClass(testOutput, "a/ChildTest", "a/BaseTest", 0, null);
+    writeClass(testOutput, "a/OtherTest", "java/lang/Object", 0, "data/input.json");
+    writeClass(output, "a/Service", "java/lang/Object", 0, null);
+    coverage = CoverageIndex.read(new File(folder.getRoot(), "coverage.idx"));
+    coverage.update("a.OtherTest", Collections.singletonList("a.Service"), Collections.emptyList());
+  }
+
+  private static Path writeClass(Path root, String name, String superName, int access, String ldc)
+      throws Exception {
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | access, name, null, superName, null);
+    if (name.endsWith("Test")) {
+      MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "test", "()V", null, null);
+      method.visitAnnotation("Lorg/testng/annotations/Test;", true).visitEnd();
+      method.visitEnd();
+    }
+    if (ldc != null) {
+      writer
+          .visitField(
+              Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "RESOURCE", "Ljava/lang/String;", null, ldc)
+          .visitEnd();
+    }
+    writer.visitEnd();
+    Path file = root.resolve(name + ".class");
+    Files.createDirectories(file.getParent());
+    Files.write(file, writer.toByteArray());
+    return file;
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    WatchIndex index = WatchIndex.build(testOutput, output, coverage);
+    assertThat(index.size()).isEqualTo(3);
+
+    // Same bytecode written again
+    Path base =
+        writeClass(testOutput, "a/BaseTest", "java/lang/Object", Opcodes.ACC_ABSTRACT, null);
+    assertThat(index.update(Collections.singletonList(base)).getTests()).isEmpty();
+
+    base = writeClass(testOutput, "a/BaseTest", "java/lang/Object", 0, null);
+    TestSelection selection = index.update(Collections.singletonList(base));
+    assertThat(selection.getTests()).containsOnlyKeys("a.BaseTest", "a.ChildTest");
+    assertThat(index.runnable(selection)).containsExactlyInAnyOrder("a.BaseTest", "a.ChildTest");
+
+    Path service = writeClass(output, "a/Service", "java/lang/Runnable", 0, null);
+    Path resource = output.resolve("data/input.json");
+    Files.createDirectories(resource.getParent());
+    Files.write(resource, new byte[] {'{', '}'});
+    selection = index.update(Arrays.asList(service, resource));
+    assertThat(selection.getTests()).containsOnlyKeys("a.OtherTest");
+    assertThat(selection.getTests().get("a.OtherTest"))
+        .containsExactly(
+            "executed changed class 'a.Service'", "references changed resource 'data/input.json'");
+  }
+
+  @Test
+  public void testDeletedClass() throws Exception {
+    WatchIndex index = WatchIndex.build(testOutput, output, coverage);
+    Path child = testOutput.resolve("a/ChildTest.class");
+    Files.delete(child);
+
+    TestSelection selection = index.update(Collections.singletonList(child));
+    assertThat(selection.getTests()).isEmpty();
+    assertThat(selection.getChanges()).containsEntry("a/ChildTest.class", "deleted class");
+    assertThat(index.size()).isEqualTo(2);
+  }
+}
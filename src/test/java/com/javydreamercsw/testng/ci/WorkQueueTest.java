@@ -0,0 +1,50 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class WorkQueueTest {
+  private static Map<String, Long> estimates(long... millis) {
+    Map<String, Long> estimates = new LinkedHashMap<>();
+    for (int i = 0; i < millis.length; i++) {
+      estimates.put("a.Test" + i, millis[i]);
+    }
+    return estimates;
+  }
+
+  @Test
+  public void testLongestFirst() {
+    WorkQueue queue = new WorkQueue(estimates(100, 5000, 3000, 2000, 1000), 2);
+    assertThat(queue.next(0)).isEqualTo("a.Test1");
+    assertThat(queue.next(1)).isEqualTo("a.Test2");
+    assertThat(queue.next(1)).isEqualTo("a.Test3");
+    assertThat(queue.getStolen()).isZero();
+  }
+
+  @Test
+  public void testStealing() {
+    WorkQueue queue = new WorkQueue(estimates(100, 5000, 3000, 2000, 1000), 2);
+    assertThat(queue.next(0)).isEqualTo("a.Test1");
+    // Lane 0 is busy with the longest class, lane 1 runs everything else
+    List<String> lane = new ArrayList<>();
+    String next;
+    while ((next = queue.next(1)) != null) {
+      lane.add(next);
+    }
+    assertThat(lane).containsExactly("a.Test2", "a.Test3", "a.Test0", "a.Test4");
+    assertThat(queue.getStolen()).isEqualTo(1);
+    assertThat(queue.next(0)).isNull();
+  }
+}
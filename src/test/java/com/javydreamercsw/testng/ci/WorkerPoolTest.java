@@ -0,0 +1,134 @@
+/*
+ * Copyright 2023 Javier A. Ortiz Bultron javier.ortiz.78@gmail.com - All Rights Reserved.
+ *
+ * Unauthorized copying of this file, via any medium is strictly prohibited.
+ *
+ * Proprietary and confidential.
+ */
+package com.javydreamercsw.testng.ci;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.ToolProvider;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class WorkerPoolTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<String> jars;
+  private Path sources;
+  private Path classes;
+
+  @Before
+  public void setUp() throws Exception {
+    Assume.assumeNotNull(ToolProvider.getSystemJavaCompiler());
+    jars =
+        Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+            .filter(entry -> entry.endsWith(".jar"))
+            .collect(Collectors.toList());
+    Assume.assumeTrue(TestWorker.hasTestNg(jars));
+    sources = folder.newFolder("src").toPath();
+    classes = folder.newFolder("classes").toPath();
+    write(
+        "p/ATest.java",
+        "package p; import org.testng.annotations.*; public class ATest { @Test public void a() {} }");
+    write(
+        "p/BTest.java",
+        "package p; import org.testng.annotations.*; public class BTest { @Test public void b() {} }");
+  }
+
+  @Test
+  public void testSuiteClassesRunOnce() throws Exception {
+    write(
+        "p/SuiteSetup.java",
+        "package p; import org.testng.annotations.*; public class SuiteSetup {"
+            + " @BeforeSuite public void setUp() {}"
+            + " @Test public void setupTest() {} }");
+    compile();
+
+    TestWorker.Result result = run(new File(folder.getRoot(), "reports"));
+
+    // The tests of the suite configuration class aren't repeated with every class
+    assertThat(result.getTestCases())
+        .extracting(t -> t.getClassName() + "." + t.getMethodName())
+        .containsExactlyInAnyOrder("p.ATest.a", "p.BTest.b", "p.SuiteSetup.setupTest");
+    assertThat(result.getPassed()).isEqualTo(3);
+    assertThat(result.getFailed()).isZero();
+    assertThat(new File(folder.getRoot(), "reports/TEST-p.SuiteSetup.xml")).exists();
+  }
+
+  @Test
+  public void testSuiteHookFailures() throws Exception {
+    write(
+        "p/SuiteSetup.java",
+        "package p; import org.testng.annotations.*; public class SuiteSetup {"
+            + " @BeforeSuite public void setUp() { throw new IllegalStateException(\"down\"); }"
+            + " @Test public void setupTest() {} }");
+    compile();
+
+    TestWorker.Result result = run(null);
+
+    // Every class ran after a failed hook, every failure is kept
+    assertThat(result.getFailures())
+        .filteredOn(f -> f.startsWith("p.SuiteSetup.setUp: "))
+        .hasSize(3);
+    assertThat(result.getFailed()).isEqualTo(3);
+    assertThat(result.getPassed()).isZero();
+  }
+
+  private TestWorker.Result run(File reportsDirectory) throws Exception {
+    Map<String, Long> estimates = new LinkedHashMap<>();
+    estimates.put("p.ATest", 10L);
+    estimates.put("p.BTest", 10L);
+    estimates.put("p.SuiteSetup", 10L);
+    WorkerPool pool =
+        new WorkerPool(
+            1,
+            () ->
+                TestWorker.start(
+                    jars,
+                    Collections.singletonList(classes.toString()),
+                    Collections.emptyList(),
+                    null,
+                    line -> {}));
+    return pool.run(estimates, Collections.singletonList("p.SuiteSetup"), reportsDirectory);
+  }
+
+  private void compile() throws Exception {
+    List<String> arguments = new ArrayList<>();
+    arguments.add("-cp");
+    arguments.add(String.join(File.pathSeparator, jars));
+    arguments.add("-d");
+    arguments.add(classes.toString());
+    try (Stream<Path> walk = Files.walk(sources)) {
+      arguments.addAll(
+          walk.filter(Files::isRegularFile).map(Path::toString).collect(Collectors.toList()));
+    }
+    assertThat(
+            ToolProvider.getSystemJavaCompiler()
+                .run(null, null, null, arguments.toArray(new String[0])))
+        .isZero();
+  }
+
+  private void write(String name, String content) throws Exception {
+    Path file = sources.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
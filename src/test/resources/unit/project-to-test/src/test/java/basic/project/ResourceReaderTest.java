@@ -0,0 +1,12 @@
+package basic.project;
+
+import java.io.InputStream;
+import org.junit.Test;
+
+public class ResourceReaderTest {
+
+  @Test
+  public void resourceReaderDummyTest() throws Exception {
+    try (InputStream in = getClass().getResourceAsStream("/basic/project/data.txt")) {}
+  }
+}